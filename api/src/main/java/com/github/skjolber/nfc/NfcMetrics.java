@@ -0,0 +1,98 @@
+package com.github.skjolber.nfc;
+
+/**
+ * Keys and constants for the tap metrics returned by {@linkplain com.github.skjolber.nfc.remote.INfcMetrics#getMetrics()}.<br>
+ * <br>
+ * A tap is split into phases, from the reader powering the tag until the tag is broadcast or delivered to bound listeners.
+ * Counters are longs. Distributions are long arrays indexed by the SUMMARY_ constants; percentiles are approximate (within a factor of two).
+ * Latencies are in nanoseconds.
+ */
+
+public class NfcMetrics {
+
+	/** Power up and Answer To Reset */
+	public static final int PHASE_POWER = 0;
+	/** Tag type identification, i.e. ATR classification, protocol negotiation and GET_VERSION or capability container read */
+	public static final int PHASE_IDENTIFY = 1;
+	/** UID, capability container, lock and application directory reads */
+	public static final int PHASE_CAPABILITY = 2;
+	/** NDEF message read */
+	public static final int PHASE_NDEF = 3;
+	/** Tag intent broadcast or direct delivery to bound listeners */
+	public static final int PHASE_BROADCAST = 4;
+
+	public static final int PHASES = 5;
+
+	private static final String[] PHASE_NAMES = new String[]{"power", "identify", "capability", "ndef", "broadcast"};
+
+	public static final int SUMMARY_COUNT = 0;
+	public static final int SUMMARY_MEAN = 1;
+	public static final int SUMMARY_P50 = 2;
+	public static final int SUMMARY_P90 = 3;
+	public static final int SUMMARY_P99 = 4;
+	public static final int SUMMARY_MAX = 5;
+
+	public static final int SUMMARY_LENGTH = 6;
+
+	/** boolean: whether metrics are being recorded */
+	public static final String KEY_ENABLED = "enabled";
+	/** long: number of completed taps */
+	public static final String KEY_TAPS = "taps";
+	/** long: number of APDUs */
+	public static final String KEY_APDUS = "apdus";
+	public static final String KEY_BYTES_SENT = "bytesSent";
+	public static final String KEY_BYTES_RECEIVED = "bytesReceived";
+	/** summary: APDU round-trip latency */
+	public static final String KEY_APDU_LATENCY = "apduLatency";
+	/** summary: total latency per tap */
+	public static final String KEY_TAP_LATENCY = "tapLatency";
+	/** summary: APDUs per tap */
+	public static final String KEY_TAP_APDUS = "tapApdus";
+	/** summary: bytes sent and received per tap */
+	public static final String KEY_TAP_BYTES = "tapBytes";
+
+	/** long: tag content cache lookups which found the content unchanged */
+	public static final String KEY_CONTENT_CACHE_HITS = "contentCacheHits";
+	/** long: tag content cache lookups which found no entry, or changed content */
+	public static final String KEY_CONTENT_CACHE_MISSES = "contentCacheMisses";
+
+	/** long: USB attach broadcasts */
+	public static final String KEY_USB_ATTACH_EVENTS = "usbAttachEvents";
+	/** long: USB device scans */
+	public static final String KEY_USB_SCANS = "usbScans";
+	/** long: USB device scans which found no reader, i.e. idle wakeups */
+	public static final String KEY_USB_IDLE_SCANS = "usbIdleScans";
+	/** long: CPU time of the idle USB device scans, in nanoseconds */
+	public static final String KEY_USB_IDLE_CPU_TIME = "usbIdleCpuTime";
+	/** summary: USB reader open latency, from the attach broadcast (or cold start scan) until the reader is open */
+	public static final String KEY_USB_READER_OPEN_LATENCY = "usbReaderOpenLatency";
+
+	/** int: commands queued or in flight to a Bluetooth reader */
+	public static final String KEY_READER_QUEUE_DEPTH = "readerQueueDepth";
+	/** int: max commands queued or in flight to a Bluetooth reader */
+	public static final String KEY_READER_MAX_QUEUE_DEPTH = "readerMaxQueueDepth";
+	/** summary: Bluetooth reader command latency, from submit to response */
+	public static final String KEY_READER_COMMAND_LATENCY = "readerCommandLatency";
+
+	/**
+	 * Signature permission for starting, stopping and reading the APDU trace, which holds the raw tag conversation.
+	 * Not required for the service's own application.
+	 */
+	public static final String PERMISSION_APDU_TRACE = "com.github.skjolber.nfc.permission.APDU_TRACE";
+
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+	/**
+	 * Get the key for the latency summary of a phase.
+	 *
+	 * @param phase one of the PHASE_ constants
+	 * @return key
+	 */
+
+	public static String getPhaseLatencyKey(int phase) {
+		return "phaseLatency." + PHASE_NAMES[phase];
+	}
+
+}
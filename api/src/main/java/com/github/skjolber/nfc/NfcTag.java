@@ -11,6 +11,15 @@ public interface NfcTag {
 	/** Action corresponding to hidden {@linkplain android.nfc.NfcAdapter#ACTION_TAG_LEFT_FIELD}. */
 	public static final String ACTION_TAG_LEFT_FIELD = NfcTag.class.getName() + ".action.TAG_LEFT_FIELD";
 
+	/** Action for binding to the service in order to register a {@linkplain com.github.skjolber.nfc.remote.INfcTagListener} (see {@linkplain com.github.skjolber.nfc.remote.INfcTagListenerRegistry}). */
+	public static final String ACTION_BIND_TAG_LISTENER = NfcTag.class.getName() + ".action.BIND_TAG_LISTENER";
+	/** Action for binding to the service for streaming NDEF read and write (see {@linkplain com.github.skjolber.nfc.remote.INfcNdefStream}), for messages too large for a single binder transaction. */
+	public static final String ACTION_BIND_NDEF_STREAM = NfcTag.class.getName() + ".action.BIND_NDEF_STREAM";
+	/** Action for binding to the service for sending a sequence of commands in a single call (see {@linkplain com.github.skjolber.nfc.remote.INfcTagBatch}). */
+	public static final String ACTION_BIND_TAG_BATCH = NfcTag.class.getName() + ".action.BIND_TAG_BATCH";
+	/** Action for binding to the service in order to query tap metrics (see {@linkplain com.github.skjolber.nfc.remote.INfcMetrics}). */
+	public static final String ACTION_BIND_METRICS = NfcTag.class.getName() + ".action.BIND_METRICS";
+
 	/** int value indicating the unique (within service lifecycle) tag service handle */
     public static final String EXTRA_TAG_SERVICE_HANDLE = NfcTag.class.getName() + ".extra.SERVICE_HANDLE";
     /** boolean value indicating whether the {@linkplain android.nfc.tech.IsoDep} target is an Host Card Emulation device */
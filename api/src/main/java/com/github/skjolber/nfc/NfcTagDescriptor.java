@@ -0,0 +1,249 @@
+package com.github.skjolber.nfc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Compact description of a discovered tag, delivered directly to bound {@linkplain com.github.skjolber.nfc.remote.INfcTagListener}s
+ * as an alternative to the tag broadcast {@linkplain android.content.Intent}.<br>
+ * <br>
+ * The descriptor is serialized once by the service (see {@linkplain #toByteArray()}) and passed as-is to each listener;
+ * use {@linkplain #parse(byte[])} to read it. The tag itself is accessed via the tag service and the {@linkplain #getServiceHandle()}.
+ */
+
+public class NfcTagDescriptor implements Parcelable {
+
+	public static final int VERSION = 1;
+
+	public static final int TYPE_UNKNOWN = 0;
+	public static final int TYPE_MIFARE_ULTRALIGHT = 1;
+	public static final int TYPE_MIFARE_CLASSIC = 2;
+	public static final int TYPE_MIFARE_DESFIRE = 3;
+	/** Host Card Emulation, i.e. another device */
+	public static final int TYPE_HOST_CARD_EMULATION = 4;
+
+	/** Not NDEF formatted, or NDEF state not read */
+	public static final int NDEF_MODE_NONE = 0;
+	public static final int NDEF_MODE_READ_ONLY = 1;
+	public static final int NDEF_MODE_READ_WRITE = 2;
+	public static final int NDEF_MODE_UNKNOWN = 3;
+
+	public static final Parcelable.Creator<NfcTagDescriptor> CREATOR = new Parcelable.Creator<NfcTagDescriptor>() {
+		@Override
+		public NfcTagDescriptor createFromParcel(Parcel in) {
+			return parse(in.createByteArray());
+		}
+
+		@Override
+		public NfcTagDescriptor[] newArray(int size) {
+			return new NfcTagDescriptor[size];
+		}
+	};
+
+	public static NfcTagDescriptor parse(byte[] bytes) {
+		try {
+			DataInputStream din = new DataInputStream(new ByteArrayInputStream(bytes));
+
+			int version = din.readUnsignedByte();
+			if(version != VERSION) {
+				throw new IllegalArgumentException("Unexpected version " + version);
+			}
+
+			int serviceHandle = din.readInt();
+			int slotNumber = din.readUnsignedByte();
+			int type = din.readUnsignedByte();
+			int subtype = din.readInt();
+
+			int[] techList = new int[din.readUnsignedByte()];
+			for(int i = 0; i < techList.length; i++) {
+				techList[i] = din.readUnsignedByte();
+			}
+
+			byte[] id = readBytes(din);
+			byte[] atr = readBytes(din);
+
+			int ndefMode = din.readUnsignedByte();
+			int maxNdefSize = din.readInt();
+			byte[] ndefMessage = readBytes(din);
+
+			return new NfcTagDescriptor(serviceHandle, slotNumber, type, subtype, techList, id, atr, ndefMode, maxNdefSize, ndefMessage);
+		} catch(IOException e) {
+			throw new IllegalArgumentException("Unable to parse tag descriptor", e);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream din) throws IOException {
+		int length = din.readInt();
+		if(length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		din.readFully(bytes);
+		return bytes;
+	}
+
+	private static void writeBytes(DataOutputStream dout, byte[] bytes) throws IOException {
+		if(bytes == null) {
+			dout.writeInt(-1);
+		} else {
+			dout.writeInt(bytes.length);
+			dout.write(bytes);
+		}
+	}
+
+	private final int serviceHandle;
+	private final int slotNumber;
+	private final int type;
+	private final int subtype;
+	private final int[] techList;
+	private final byte[] id;
+	private final byte[] atr;
+	private final int ndefMode;
+	private final int maxNdefSize;
+	private final byte[] ndefMessage;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param serviceHandle tag service handle
+	 * @param slotNumber reader slot
+	 * @param type tag type, i.e. one of the TYPE_ constants
+	 * @param subtype tag subtype; ultralight subtype (see {@linkplain NfcTag#EXTRA_ULTRALIGHT_TYPE}) or Mifare Classic size
+	 * @param techList tag technologies, as in {@linkplain android.nfc.Tag#getTechList()} but as the internal integer values
+	 * @param id tag id, if any
+	 * @param atr tag ATR
+	 * @param ndefMode one of the NDEF_MODE_ constants
+	 * @param maxNdefSize max NDEF message size, if NDEF formatted
+	 * @param ndefMessage raw NDEF message, if read
+	 */
+
+	public NfcTagDescriptor(int serviceHandle, int slotNumber, int type, int subtype, int[] techList, byte[] id, byte[] atr, int ndefMode, int maxNdefSize, byte[] ndefMessage) {
+		this.serviceHandle = serviceHandle;
+		this.slotNumber = slotNumber;
+		this.type = type;
+		this.subtype = subtype;
+		this.techList = techList;
+		this.id = id;
+		this.atr = atr;
+		this.ndefMode = ndefMode;
+		this.maxNdefSize = maxNdefSize;
+		this.ndefMessage = ndefMessage;
+	}
+
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(64 + (ndefMessage != null ? ndefMessage.length : 0));
+		try {
+			DataOutputStream dout = new DataOutputStream(bout);
+
+			dout.writeByte(VERSION);
+			dout.writeInt(serviceHandle);
+			dout.writeByte(slotNumber);
+			dout.writeByte(type);
+			dout.writeInt(subtype);
+
+			dout.writeByte(techList.length);
+			for(int tech : techList) {
+				dout.writeByte(tech);
+			}
+
+			writeBytes(dout, id);
+			writeBytes(dout, atr);
+
+			dout.writeByte(ndefMode);
+			dout.writeInt(maxNdefSize);
+			writeBytes(dout, ndefMessage);
+		} catch(IOException e) {
+			throw new RuntimeException(e); // should never happen
+		}
+		return bout.toByteArray();
+	}
+
+	/**
+	 * Get the action of the corresponding tag broadcast.
+	 *
+	 * @return {@linkplain NfcTag#ACTION_NDEF_DISCOVERED} if a NDEF message is present, otherwise {@linkplain NfcTag#ACTION_TAG_DISCOVERED}.
+	 */
+
+	public String getAction() {
+		if(ndefMessage != null) {
+			return NfcTag.ACTION_NDEF_DISCOVERED;
+		}
+		return NfcTag.ACTION_TAG_DISCOVERED;
+	}
+
+	public int getServiceHandle() {
+		return serviceHandle;
+	}
+
+	public int getSlotNumber() {
+		return slotNumber;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getSubtype() {
+		return subtype;
+	}
+
+	public int[] getTechList() {
+		return techList;
+	}
+
+	public boolean hasTech(int tech) {
+		for(int t : techList) {
+			if(t == tech) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public byte[] getId() {
+		return id;
+	}
+
+	public byte[] getAtr() {
+		return atr;
+	}
+
+	public int getNdefMode() {
+		return ndefMode;
+	}
+
+	public boolean isNdefFormatted() {
+		return ndefMode != NDEF_MODE_NONE;
+	}
+
+	public int getMaxNdefSize() {
+		return maxNdefSize;
+	}
+
+	/**
+	 * Get the raw NDEF message, for use with {@linkplain android.nfc.NdefMessage#NdefMessage(byte[])}.
+	 *
+	 * @return NDEF message bytes, or null if not read
+	 */
+
+	public byte[] getNdefMessage() {
+		return ndefMessage;
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeByteArray(toByteArray());
+	}
+
+}
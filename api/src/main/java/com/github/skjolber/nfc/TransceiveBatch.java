@@ -0,0 +1,172 @@
+package com.github.skjolber.nfc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A sequence of commands to be sent to a tag in a single binder call (see {@linkplain com.github.skjolber.nfc.remote.INfcTagBatch}).<br>
+ * <br>
+ * The sequence stops after a response which matches a stop rule, or, if continue rules are present, after a response
+ * which matches none of them. Rules are on the status word (last two bytes of the response) using a mask, so that
+ * for example 0x9100 with mask 0xFF00 matches all DESFire 91xx statuses.
+ */
+
+public class TransceiveBatch implements Parcelable {
+
+	public static final int VERSION = 1;
+
+	public static final Parcelable.Creator<TransceiveBatch> CREATOR = new Parcelable.Creator<TransceiveBatch>() {
+		@Override
+		public TransceiveBatch createFromParcel(Parcel in) {
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IllegalArgumentException("Unexpected version " + version);
+			}
+
+			TransceiveBatch batch = new TransceiveBatch(in.readInt() != 0);
+
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				batch.add(in.createByteArray());
+			}
+			batch.stopRules = in.createIntArray();
+			batch.continueRules = in.createIntArray();
+
+			return batch;
+		}
+
+		@Override
+		public TransceiveBatch[] newArray(int size) {
+			return new TransceiveBatch[size];
+		}
+	};
+
+	private static final int[] EMPTY = new int[0];
+
+	private final boolean raw;
+	private final List<byte[]> commands = new ArrayList<byte[]>();
+
+	// pairs of status and mask
+	private int[] stopRules = EMPTY;
+	private int[] continueRules = EMPTY;
+
+	public TransceiveBatch() {
+		this(false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param raw as for {@linkplain com.github.skjolber.android.nfc.INfcTag#transceive(int, byte[], boolean)}
+	 */
+
+	public TransceiveBatch(boolean raw) {
+		this.raw = raw;
+	}
+
+	public TransceiveBatch add(byte[] command) {
+		commands.add(command);
+
+		return this;
+	}
+
+	/**
+	 * Stop after a response with a matching status word.
+	 *
+	 * @param status status word
+	 * @param mask mask applied to the status word before comparing
+	 * @return this instance
+	 */
+
+	public TransceiveBatch stopOnStatus(int status, int mask) {
+		stopRules = append(stopRules, status, mask);
+
+		return this;
+	}
+
+	/**
+	 * Continue only after responses with a matching status word (or one of the other continue rules).
+	 *
+	 * @param status status word
+	 * @param mask mask applied to the status word before comparing
+	 * @return this instance
+	 */
+
+	public TransceiveBatch continueOnStatus(int status, int mask) {
+		continueRules = append(continueRules, status, mask);
+
+		return this;
+	}
+
+	private static int[] append(int[] rules, int status, int mask) {
+		int[] next = new int[rules.length + 2];
+		System.arraycopy(rules, 0, next, 0, rules.length);
+		next[rules.length] = status & mask;
+		next[rules.length + 1] = mask;
+		return next;
+	}
+
+	private static boolean matches(int[] rules, int status) {
+		for(int i = 0; i < rules.length; i += 2) {
+			if((status & rules[i + 1]) == rules[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine whether to stop after a response.
+	 *
+	 * @param response command response
+	 * @return true if no further commands are to be sent
+	 */
+
+	public boolean isStop(byte[] response) {
+		if(stopRules.length == 0 && continueRules.length == 0) {
+			return false;
+		}
+		if(response == null || response.length < 2) {
+			return true;
+		}
+		int status = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+
+		if(matches(stopRules, status)) {
+			return true;
+		}
+		return continueRules.length > 0 && !matches(continueRules, status);
+	}
+
+	public boolean isRaw() {
+		return raw;
+	}
+
+	public List<byte[]> getCommands() {
+		return commands;
+	}
+
+	public int size() {
+		return commands.size();
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeInt(VERSION);
+		dest.writeInt(raw ? 1 : 0);
+		dest.writeInt(commands.size());
+		for(byte[] command : commands) {
+			dest.writeByteArray(command);
+		}
+		dest.writeIntArray(stopRules);
+		dest.writeIntArray(continueRules);
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.github.skjolber.nfc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Responses to a {@linkplain TransceiveBatch}, in command order. If the batch was stopped, by a rule or a failure,
+ * there are fewer responses than commands.
+ */
+
+public class TransceiveBatchResult implements Parcelable {
+
+	/** Same values as for {@linkplain com.github.skjolber.android.nfc.TransceiveResult} */
+	public static final int RESULT_SUCCESS = 0;
+	public static final int RESULT_FAILURE = 1;
+	public static final int RESULT_TAGLOST = 2;
+	public static final int RESULT_EXCEEDED_LENGTH = 3;
+
+	public static final Parcelable.Creator<TransceiveBatchResult> CREATOR = new Parcelable.Creator<TransceiveBatchResult>() {
+		@Override
+		public TransceiveBatchResult createFromParcel(Parcel in) {
+			TransceiveBatchResult result = new TransceiveBatchResult();
+			result.result = in.readInt();
+			result.stopped = in.readInt() != 0;
+
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				result.responses.add(in.createByteArray());
+			}
+			return result;
+		}
+
+		@Override
+		public TransceiveBatchResult[] newArray(int size) {
+			return new TransceiveBatchResult[size];
+		}
+	};
+
+	private int result = RESULT_SUCCESS;
+	private boolean stopped;
+	private final List<byte[]> responses = new ArrayList<byte[]>();
+
+	public void add(byte[] response) {
+		responses.add(response);
+	}
+
+	/**
+	 * Get the result of the last command sent.
+	 *
+	 * @return one of the RESULT_ constants
+	 */
+
+	public int getResult() {
+		return result;
+	}
+
+	public void setResult(int result) {
+		this.result = result;
+	}
+
+	/**
+	 * Get whether the batch was stopped by a status rule.
+	 *
+	 * @return true if stopped by a rule
+	 */
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public void setStopped(boolean stopped) {
+		this.stopped = stopped;
+	}
+
+	public List<byte[]> getResponses() {
+		return responses;
+	}
+
+	public int size() {
+		return responses.size();
+	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeInt(result);
+		dest.writeInt(stopped ? 1 : 0);
+		dest.writeInt(responses.size());
+		for(byte[] response : responses) {
+			dest.writeByteArray(response);
+		}
+	}
+
+}
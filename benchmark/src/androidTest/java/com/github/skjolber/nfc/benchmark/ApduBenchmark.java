@@ -0,0 +1,111 @@
+package com.github.skjolber.nfc.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import custom.java.CommandAPDU;
+import custom.java.ResponseAPDU;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Encode and decode the APDUs exchanged with the reader for every page or block read: a READ_BINARY command
+ * and its 16-byte response, and a PN532 passthrough command as used for FAST_READ.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class ApduBenchmark {
+
+    private static final byte[] FAST_READ = new byte[]{(byte) 0xD4, 0x42, 0x3A, 0x04, 0x2C};
+
+    private static final byte[] READ_BINARY_RESPONSE = new byte[]{
+            0x03, 0x10, (byte) 0xD1, 0x01, 0x0C, 0x55, 0x01, 0x65, 0x78, 0x61, 0x6D, 0x70, 0x6C, 0x65, 0x2E, 0x63,
+            (byte) 0x90, 0x00
+    };
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void encodeReadBinary() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        byte[] bytes = null;
+        while (state.keepRunning()) {
+            bytes = new CommandAPDU(0xFF, 0xB0, 0x00, 0x04, 16).getBytes();
+        }
+        assertEquals(5, bytes.length);
+
+        BenchmarkReport.allocations("encodeReadBinary", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                new CommandAPDU(0xFF, 0xB0, 0x00, 0x04, 16).getBytes();
+            }
+        });
+    }
+
+    @Test
+    public void encodePassthrough() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        byte[] bytes = null;
+        while (state.keepRunning()) {
+            bytes = new CommandAPDU(0xFF, 0x00, 0x00, 0x00, FAST_READ, 0, FAST_READ.length).getBytes();
+        }
+        assertEquals(5 + FAST_READ.length, bytes.length);
+
+        BenchmarkReport.allocations("encodePassthrough", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                new CommandAPDU(0xFF, 0x00, 0x00, 0x00, FAST_READ, 0, FAST_READ.length).getBytes();
+            }
+        });
+    }
+
+    @Test
+    public void decodePassthrough() throws Exception {
+        final byte[] command = new CommandAPDU(0xFF, 0x00, 0x00, 0x00, FAST_READ, 0, FAST_READ.length).getBytes();
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        byte[] data = null;
+        while (state.keepRunning()) {
+            data = new CommandAPDU(command).getData();
+        }
+        assertEquals(FAST_READ.length, data.length);
+
+        BenchmarkReport.allocations("decodePassthrough", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                new CommandAPDU(command).getData();
+            }
+        });
+    }
+
+    @Test
+    public void decodeResponse() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        byte[] data = null;
+        int sw = 0;
+        while (state.keepRunning()) {
+            ResponseAPDU response = new ResponseAPDU(READ_BINARY_RESPONSE);
+            sw = response.getSW();
+            data = response.getData();
+        }
+        assertEquals(0x9000, sw);
+        assertEquals(16, data.length);
+
+        BenchmarkReport.allocations("decodeResponse", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                new ResponseAPDU(READ_BINARY_RESPONSE).getData();
+            }
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.skjolber.nfc.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.github.skjolber.nfc.service.AtrClassifier;
+import com.github.skjolber.nfc.service.ServiceUtil;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nfctools.api.TagType;
+import org.nfctools.utils.NfcUtils;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compare tag type identification via {@linkplain AtrClassifier} against the {@linkplain ServiceUtil#identifyTagType(String, byte[])} cascade.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class AtrClassifierBenchmark {
+
+    private static final String ACR_122 = "ACS ACR122U PICC Interface";
+    private static final String ACR_1252 = "ACS ACR1252 1S CL Reader PICC";
+
+    // ATRs for tags which the cascade identifies without logging
+    private static final byte[][] ATRS_122 = toBytes(
+            "3B8F8001804F0CA000000306030001000000006A", // Mifare Classic 1K
+            "3B8F8001804F0CA0000003060300020000000069", // Mifare Classic 4K
+            "3B8F8001804F0CA0000003060300030000000068", // Mifare Ultralight
+            "3B8F8001804F0CA00000030603FF88000000001C", // Infineon
+            "3B8180018080" // Desfire EV1
+    );
+
+    private static final byte[][] ATRS_1252 = toBytes(
+            "3B8F8001804F0CA000000306030001000000006A", // Mifare Classic 1K
+            "3B8F8001804F0CA0000003060300030000000068", // Mifare Ultralight
+            "3B8F8001804F0CA00000030603003A0000000051", // Mifare Ultralight C
+            "3B8F8001804F0CA000000306030036000000005D", // Mifare Plus SL1 2K
+            "3B8F8001804F0CA00000030611003B0000000042", // FeliCa 212K
+            "3B8180018080" // Desfire EV1
+    );
+
+    private static byte[][] toBytes(String... atrs) {
+        byte[][] bytes = new byte[atrs.length][];
+        for (int i = 0; i < atrs.length; i++) {
+            bytes[i] = NfcUtils.convertASCIIToBin(atrs[i]);
+        }
+        return bytes;
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void cascade122() {
+        cascade(ACR_122, ATRS_122);
+    }
+
+    @Test
+    public void cascade1252() {
+        cascade(ACR_1252, ATRS_1252);
+    }
+
+    @Test
+    public void classifier122() {
+        classifier(ACR_122, ATRS_122);
+    }
+
+    @Test
+    public void classifier1252() {
+        classifier(ACR_1252, ATRS_1252);
+    }
+
+    private void cascade(String readerName, byte[][] atrs) {
+        BenchmarkState state = benchmarkRule.getState();
+
+        TagType tagType = null;
+        int i = 0;
+        while (state.keepRunning()) {
+            tagType = ServiceUtil.identifyTagType(readerName, atrs[i]);
+
+            i++;
+            if (i == atrs.length) {
+                i = 0;
+            }
+        }
+        assertNotNull(tagType);
+    }
+
+    private void classifier(String readerName, byte[][] atrs) {
+        AtrClassifier classifier = AtrClassifier.newInstance(readerName);
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        TagType tagType = null;
+        int i = 0;
+        while (state.keepRunning()) {
+            tagType = classifier.identifyTagType(atrs[i]);
+
+            i++;
+            if (i == atrs.length) {
+                i = 0;
+            }
+        }
+        assertNotNull(tagType);
+    }
+}
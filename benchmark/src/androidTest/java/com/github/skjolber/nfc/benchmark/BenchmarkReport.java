@@ -0,0 +1,89 @@
+package com.github.skjolber.nfc.benchmark;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.github.skjolber.nfc.simulator.SimulatedTag;
+
+/**
+ * Figures which the benchmark library does not report: bytes allocated and simulated tag commands per operation.
+ * Printed to logcat, next to the timing output.
+ */
+
+public class BenchmarkReport {
+
+    private static final String TAG = BenchmarkReport.class.getName();
+
+    private static final String BYTES_ALLOCATED = "art.gc.bytes-allocated";
+
+    /** operations per allocation measurement */
+    public static final int ALLOCATION_ITERATIONS = 1000;
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Get the number of bytes allocated by the runtime so far.
+     *
+     * @return bytes allocated, or -1 if not supported
+     */
+
+    public static long getBytesAllocated() {
+        String value = Debug.getRuntimeStat(BYTES_ALLOCATED);
+        if (value == null) {
+            return -1;
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Measure the bytes allocated per operation, outside of the timed loop.
+     *
+     * @param name      benchmark name
+     * @param operation operation to measure
+     * @return bytes per operation, or -1 if not supported
+     */
+
+    public static long allocations(String name, Operation operation) throws Exception {
+        // warm up, so that one-time allocations (i.e. class loading) are not counted
+        operation.run();
+
+        long start = getBytesAllocated();
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            operation.run();
+        }
+        long end = getBytesAllocated();
+
+        if (start == -1 || end == -1) {
+            Log.i(TAG, name + ": allocations not available");
+
+            return -1;
+        }
+        long perOperation = (end - start) / ALLOCATION_ITERATIONS;
+
+        Log.i(TAG, name + ": " + perOperation + " bytes allocated per operation");
+
+        return perOperation;
+    }
+
+    /**
+     * Report the commands exchanged with a simulated tag per operation.
+     *
+     * @param name       benchmark name
+     * @param tag        simulated tag
+     * @param operations number of operations since the tag counters were reset
+     * @return commands per operation
+     */
+
+    public static long commands(String name, SimulatedTag tag, long operations) {
+        long perOperation = tag.getCommands() / operations;
+
+        Log.i(TAG, name + ": " + perOperation + " commands, "
+                + (tag.getBytesSent() / operations) + " bytes sent, "
+                + (tag.getBytesReceived() / operations) + " bytes received, "
+                + (tag.getSimulatedTime() / operations / 1000) + "us simulated (" + tag.getLatencyModel() + ") per operation");
+
+        return perOperation;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.skjolber.nfc.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.github.skjolber.nfc.simulator.MifareClassicSimulator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nfctools.mf.MfConstants;
+import org.nfctools.mf.NxpCrc;
+import org.nfctools.mf.classic.MfClassicNdefOperations;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.mf.mad.AbstractMad;
+import org.nfctools.mf.mad.ApplicationDirectory;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Mifare Application Directory: the CRC over the MAD sector, and reading and parsing the MAD from an
+ * NDEF-formatted simulated Classic 1K (MAD1) and 4K (MAD2) tag.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class MadBenchmark {
+
+    private static final byte[] UID = new byte[]{0x11, 0x22, 0x33, 0x44};
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void crc() throws Exception {
+        // MAD1 sector 0 blocks 1 and 2, starting with the CRC byte
+        final byte[] mad = new byte[32];
+        for (int i = 2; i < mad.length; i += 2) {
+            mad[i] = 0x03;
+            mad[i + 1] = (byte) 0xE1;
+        }
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        NxpCrc crc = new NxpCrc();
+        while (state.keepRunning()) {
+            crc.reset();
+            for (int x = 1; x < mad.length; x++) {
+                crc.add(mad[x]);
+            }
+            crc.getCrc();
+        }
+
+        BenchmarkReport.allocations("crc", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                NxpCrc crc = new NxpCrc();
+                for (int x = 1; x < mad.length; x++) {
+                    crc.add(mad[x]);
+                }
+                crc.getCrc();
+            }
+        });
+    }
+
+    @Test
+    public void readMad1() throws Exception {
+        readMad("readMad1", MifareClassicSimulator.newClassic1K(UID));
+    }
+
+    @Test
+    public void readMad2() throws Exception {
+        readMad("readMad2", MifareClassicSimulator.newClassic4K(UID));
+    }
+
+    private void readMad(String name, final MifareClassicSimulator tag) throws Exception {
+        MfClassicReaderWriter formatter = tag.newReaderWriter();
+        new MfClassicNdefOperations(formatter, formatter.getTagInfo(), false, true).format();
+
+        tag.resetCounters();
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        long operations = 0;
+        ApplicationDirectory applicationDirectory = null;
+        while (state.keepRunning()) {
+            // new reader/writer per iteration, so that the login state is not reused
+            applicationDirectory = AbstractMad.initInstance(tag.newReaderWriter(), MfConstants.NDEF_KEY_CONFIG);
+
+            operations++;
+        }
+        assertNotNull(applicationDirectory);
+
+        BenchmarkReport.commands(name, tag, operations);
+        BenchmarkReport.allocations(name, new BenchmarkReport.Operation() {
+            @Override
+            public void run() throws Exception {
+                AbstractMad.initInstance(tag.newReaderWriter(), MfConstants.NDEF_KEY_CONFIG);
+            }
+        });
+    }
+}
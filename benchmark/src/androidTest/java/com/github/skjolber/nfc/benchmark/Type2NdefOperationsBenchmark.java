@@ -0,0 +1,110 @@
+package com.github.skjolber.nfc.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.github.skjolber.nfc.simulator.LatencyModel;
+import com.github.skjolber.nfc.simulator.Type2TagSimulator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nfctools.mf.ul.Type2NdefOperations;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Full NDEF reads, from the reader/writer down to the APDUs, against simulated tags holding a message which
+ * fills most of the tag. The number of commands per read is asserted, so that a change which adds round-trips
+ * fails the benchmark; the simulated time is for a USB reader.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class Type2NdefOperationsBenchmark {
+
+    private static final byte[] UID = new byte[]{0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    /**
+     * Create a single-record message.
+     *
+     * @param length total message length
+     * @return message bytes
+     */
+
+    private static byte[] message(int length) {
+        byte[] message = new byte[length];
+        int payloadLength;
+        int offset;
+        if (length - 4 < 256) {
+            payloadLength = length - 4;
+            message[0] = (byte) 0xD2; // MB, ME, SR, MIME
+            message[1] = 0x01;
+            message[2] = (byte) payloadLength;
+            offset = 3;
+        } else {
+            payloadLength = length - 7;
+            message[0] = (byte) 0xC2; // MB, ME, MIME
+            message[1] = 0x01;
+            message[2] = (byte) (payloadLength >> 24);
+            message[3] = (byte) (payloadLength >> 16);
+            message[4] = (byte) (payloadLength >> 8);
+            message[5] = (byte) payloadLength;
+            offset = 6;
+        }
+        message[offset++] = 'x';
+        for (int i = 0; i < payloadLength; i++) {
+            message[offset + i] = (byte) i;
+        }
+        return message;
+    }
+
+    @Test
+    public void readUltralight() throws Exception {
+        read("readUltralight", Type2TagSimulator.newUltralight(UID), 40, 3);
+    }
+
+    @Test
+    public void readNtag213() throws Exception {
+        read("readNtag213", Type2TagSimulator.newNtag213(UID), 112, 2);
+    }
+
+    @Test
+    public void readNtag216() throws Exception {
+        read("readNtag216", Type2TagSimulator.newNtag216(UID), 860, 5);
+    }
+
+    private void read(String name, final Type2TagSimulator tag, int length, long expectedCommands) throws Exception {
+        byte[] message = message(length);
+
+        new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID).writeNdefMessage(message);
+
+        tag.setLatencyModel(LatencyModel.USB);
+        tag.resetCounters();
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        long reads = 0;
+        byte[] read = null;
+        while (state.keepRunning()) {
+            // new instance per iteration, so that nothing is cached
+            Type2NdefOperations operations = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID);
+            read = operations.readNdefMessageBytes();
+
+            reads++;
+        }
+        assertEquals(message.length, read.length);
+
+        assertEquals(expectedCommands, BenchmarkReport.commands(name, tag, reads));
+
+        BenchmarkReport.allocations(name, new BenchmarkReport.Operation() {
+            @Override
+            public void run() throws Exception {
+                new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID).readNdefMessageBytes();
+            }
+        });
+    }
+}
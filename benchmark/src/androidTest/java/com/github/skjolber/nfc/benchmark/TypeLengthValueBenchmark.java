@@ -0,0 +1,113 @@
+package com.github.skjolber.nfc.benchmark;
+
+import java.io.ByteArrayInputStream;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nfctools.mf.tlv.NdefMessageTlv;
+import org.nfctools.mf.tlv.Tlv;
+import org.nfctools.mf.tlv.TypeLengthValueReader;
+import org.nfctools.mf.tlv.TypeLengthValueWriter;
+import org.nfctools.tags.TagOutputStream;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Encode and decode the TLV wrapping of NDEF messages, for a short message (single byte length) and
+ * a message the size of an NTAG216 (three byte length).
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class TypeLengthValueBenchmark {
+
+    private static final int SHORT = 32;
+    private static final int LONG = 860;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private static byte[] message(int length) {
+        byte[] message = new byte[length];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        return message;
+    }
+
+    private static byte[] write(byte[] message) {
+        TagOutputStream out = new TagOutputStream(message.length + 8);
+        TypeLengthValueWriter writer = new TypeLengthValueWriter(out);
+        writer.write(new NdefMessageTlv(message));
+        writer.close();
+        return out.getBuffer();
+    }
+
+    private static Tlv read(byte[] buffer) {
+        TypeLengthValueReader reader = new TypeLengthValueReader(new ByteArrayInputStream(buffer));
+
+        Tlv last = null;
+        while (reader.hasNext()) {
+            last = reader.next();
+        }
+        return last;
+    }
+
+    @Test
+    public void writeShort() throws Exception {
+        write("writeShort", message(SHORT));
+    }
+
+    @Test
+    public void writeLong() throws Exception {
+        write("writeLong", message(LONG));
+    }
+
+    @Test
+    public void readShort() throws Exception {
+        read("readShort", write(message(SHORT)));
+    }
+
+    @Test
+    public void readLong() throws Exception {
+        read("readLong", write(message(LONG)));
+    }
+
+    private void write(String name, final byte[] message) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        byte[] buffer = null;
+        while (state.keepRunning()) {
+            buffer = write(message);
+        }
+        assertNotNull(buffer);
+
+        BenchmarkReport.allocations(name, new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                write(message);
+            }
+        });
+    }
+
+    private void read(String name, final byte[] buffer) throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+
+        Tlv tlv = null;
+        while (state.keepRunning()) {
+            tlv = read(buffer);
+        }
+        assertNotNull(tlv);
+
+        BenchmarkReport.allocations(name, new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                read(buffer);
+            }
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package org.nfctools.mf.ndef;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.github.skjolber.nfc.benchmark.BenchmarkReport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nfctools.mf.tlv.NdefMessageTlv;
+import org.nfctools.mf.tlv.TypeLengthValueReader;
+import org.nfctools.mf.tlv.TypeLengthValueWriter;
+import org.nfctools.mf.ul.MemoryLayout;
+import org.nfctools.mf.ul.Type2NdefOperations;
+import org.nfctools.tags.TagOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The record post-processing after every NDEF read: repair of the message begin / end flags and conversion
+ * of the TLV content to records. In this package for access to the protected methods.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class AbstractNdefOperationsBenchmark {
+
+    private static final int RECORDS = 4;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    /**
+     * Records concatenated without regard to the message begin / end flags, all flagged as both first and last.
+     *
+     * @return message bytes
+     */
+
+    private static byte[] records() {
+        byte[] host = "example.com".getBytes(StandardCharsets.US_ASCII);
+
+        int recordLength = 5 + host.length;
+        byte[] message = new byte[RECORDS * recordLength];
+        for (int i = 0; i < RECORDS; i++) {
+            int offset = i * recordLength;
+            message[offset] = (byte) 0xD1; // MB, ME, SR, well-known
+            message[offset + 1] = 0x01;
+            message[offset + 2] = (byte) (1 + host.length);
+            message[offset + 3] = 'U';
+            message[offset + 4] = 0x01;
+            System.arraycopy(host, 0, message, offset + 5, host.length);
+        }
+        return message;
+    }
+
+    @Test
+    public void normalizeMessageBeginEnd() throws Exception {
+        final byte[] records = records();
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            AbstractNdefOperations.normalizeMessageBeginEnd(records);
+        }
+        assertEquals((byte) 0x91, records[0]);
+
+        BenchmarkReport.allocations("normalizeMessageBeginEnd", new BenchmarkReport.Operation() {
+            @Override
+            public void run() {
+                AbstractNdefOperations.normalizeMessageBeginEnd(records);
+            }
+        });
+    }
+
+    @Test
+    public void convertRecords() throws Exception {
+        byte[] records = records();
+
+        TagOutputStream out = new TagOutputStream(records.length + 8);
+        TypeLengthValueWriter writer = new TypeLengthValueWriter(out);
+        writer.write(new NdefMessageTlv(records));
+        writer.close();
+        final byte[] buffer = out.getBuffer();
+
+        // the reader/writer is not used for conversion
+        final Type2NdefOperations operations = new Type2NdefOperations(MemoryLayout.NTAG216, null, true, true, new byte[7]);
+
+        BenchmarkState state = benchmarkRule.getState();
+
+        while (state.keepRunning()) {
+            operations.convertRecords(new TypeLengthValueReader(new ByteArrayInputStream(buffer)));
+        }
+        assertEquals(RECORDS, operations.lastReadRecords.size());
+
+        BenchmarkReport.allocations("convertRecords", new BenchmarkReport.Operation() {
+            @Override
+            public void run() throws Exception {
+                operations.convertRecords(new TypeLengthValueReader(new ByteArrayInputStream(buffer)));
+            }
+        });
+    }
+}
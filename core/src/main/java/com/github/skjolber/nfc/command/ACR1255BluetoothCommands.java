@@ -7,28 +7,22 @@ import com.acs.smartcard.Reader;
 import com.acs.smartcard.ReaderException;
 import com.github.skjolber.nfc.acs.AcrAutomaticPICCPolling;
 import com.github.skjolber.nfc.acs.AcrLED;
-import com.github.skjolber.nfc.service.BluetoothBackgroundService;
-
-import org.nfctools.NfcException;
+import com.github.skjolber.nfc.service.BluetoothReaderDispatcher;
 
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 
 import static com.github.skjolber.nfc.command.ACRCommands.*;
 
 import custom.java.CommandAPDU;
 
-public class ACR1255BluetoothCommands implements ACR1255Commands, BluetoothReader.OnResponseApduAvailableListener, BluetoothReader.OnEscapeResponseAvailableListener {
+public class ACR1255BluetoothCommands implements ACR1255Commands {
 
     private static final String TAG = ACR1255BluetoothCommands.class.getName();
 
-    private volatile CountDownLatch latch;
-    private volatile byte[] in;
-
     private BluetoothReader reader;
     private String name;
 
@@ -37,6 +31,10 @@ public class ACR1255BluetoothCommands implements ACR1255Commands, BluetoothReade
         this.reader = reader;
     }
 
+    private BluetoothReaderDispatcher getDispatcher() {
+        return BluetoothReaderDispatcher.getInstance(reader);
+    }
+
     public List<AcrAutomaticPICCPolling> setAutomaticPICCPolling(int slot, AcrAutomaticPICCPolling... picc) throws ReaderException {
         CommandAPDU command = new CommandAPDU(0xE0, 0x00, 0x00, 0x23, new byte[]{(byte) AcrAutomaticPICCPolling.serialize(picc)});
 
@@ -384,30 +382,14 @@ public class ACR1255BluetoothCommands implements ACR1255Commands, BluetoothReade
     @Override
     public byte[] control(int slotNum, int controlCode, byte[] request) throws ReaderException {
         Log.d(TAG, "Raw control request: " + Utils.toHexString(request));
-        try {
-
-            long time = System.currentTimeMillis();
-
-            this.in = null;
-            this.latch = new CountDownLatch(1);
 
-            reader.setOnEscapeResponseAvailableListener(this);
-            if (!reader.transmitEscapeCommand(request)) {
-                throw new NfcException("Unable to transmit escape command");
-            }
+        long time = System.currentTimeMillis();
 
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new NfcException("Problem waiting for response");
-            }
+        byte[] in = getDispatcher().transmit(request, true);
 
-            Log.d(TAG, "Raw control response: " + Utils.toHexString(in) + " in " + (System.currentTimeMillis() - time) + " millis");
+        Log.d(TAG, "Raw control response: " + Utils.toHexString(in) + " in " + (System.currentTimeMillis() - time) + " millis");
 
-            return in;
-        } catch (Exception e) {
-            throw new NfcException(e);
-        }
+        return in;
     }
 
     @Override
@@ -417,50 +399,12 @@ public class ACR1255BluetoothCommands implements ACR1255Commands, BluetoothReade
 
     public byte[] transmit(byte[] request) {
         Log.d(TAG, "Raw transmit request: " + Utils.toHexString(request));
-        try {
-
-            in = null;
-            latch = new CountDownLatch(1);
-
-            reader.setOnResponseApduAvailableListener(this);
-            if (!reader.transmitApdu(request)) {
-                throw new NfcException("Unable to transmit ADPU");
-            }
-
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new NfcException("Problem waiting for response");
-            }
-
-            Log.d(TAG, "Raw transmit response: " + Utils.toHexString(in));
 
-            return in;
-        } catch (Exception e) {
-            throw new NfcException(e);
-        }
-    }
-
-    @Override
-    public void onResponseApduAvailable(BluetoothReader bluetoothReader, byte[] apdu, int errorCode) {
-        Log.d(TAG, "onResponseApduAvailable: " + BluetoothBackgroundService.getResponseString(apdu, errorCode));
+        byte[] in = getDispatcher().transmit(request, false);
 
-        if (errorCode == BluetoothReader.ERROR_SUCCESS) {
-            this.in = apdu;
+        Log.d(TAG, "Raw transmit response: " + Utils.toHexString(in));
 
-        }
-        latch.countDown();
-    }
-
-    @Override
-    public void onEscapeResponseAvailable(BluetoothReader bluetoothReader, byte[] bytes, int errorCode) {
-        Log.d(TAG, "onEscapeResponseAvailable: " + BluetoothBackgroundService.getResponseString(bytes, errorCode));
-
-        if (errorCode == BluetoothReader.ERROR_SUCCESS) {
-            this.in = bytes;
-
-        }
-        latch.countDown();
+        return in;
     }
 
     public String getName() {
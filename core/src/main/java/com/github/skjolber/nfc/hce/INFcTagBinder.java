@@ -43,6 +43,19 @@ public class INFcTagBinder extends INfcTag.Stub {
         return proxy.getCurrent();
     }
 
+    protected boolean isTagPresent(int nativeHandle) {
+        TagProxy proxy = store.get(nativeHandle);
+
+        return proxy != null && proxy.isPresent();
+    }
+
+    protected void clearNdefMessage(int nativeHandle) {
+        TagProxy proxy = store.get(nativeHandle);
+        if (proxy != null) {
+            proxy.invalidateContent();
+        }
+    }
+
     public void setReaderTechnology(ReaderTechnology readerTechnology) {
         this.readerTechnology = readerTechnology;
     }
@@ -96,6 +109,8 @@ public class INFcTagBinder extends INfcTag.Stub {
         if (adapter != null) {
             if (adapter instanceof NdefTechnology) {
                 NdefTechnology ndefTechnology = (NdefTechnology) adapter;
+                clearNdefMessage(nativeHandle);
+
                 return ndefTechnology.formatNdef(key);
             }
         }
@@ -221,11 +236,25 @@ public class INFcTagBinder extends INfcTag.Stub {
     public NdefMessage ndefRead(int nativeHandle) throws RemoteException {
         //Log.d(TAG, "ndefRead");
 
-        TagTechnology adapter = getConnected(nativeHandle);
+        TagProxy proxy = store.get(nativeHandle);
+        if (proxy == null) {
+            return null;
+        }
+
+        TagTechnology adapter = proxy.getCurrent();
         if (adapter != null) {
             if (adapter instanceof NdefTechnology) {
-                NdefTechnology ndefTechnology = (NdefTechnology) adapter;
-                return ndefTechnology.ndefRead();
+                NdefMessage ndefMessage = proxy.getNdefMessage();
+                if (ndefMessage == null) {
+                    // read on first request, then serve from the cache until the tag leaves the field
+                    NdefTechnology ndefTechnology = (NdefTechnology) adapter;
+                    ndefMessage = ndefTechnology.ndefRead();
+
+                    if (proxy.isPresent()) {
+                        proxy.setNdefMessage(ndefMessage);
+                    }
+                }
+                return ndefMessage;
             } else {
                 throw new RemoteException("Tag technology " + adapter.getClass().getName() + " does not support ndefRead(..)");
             }
@@ -242,7 +271,16 @@ public class INFcTagBinder extends INfcTag.Stub {
         if (adapter != null) {
             if (adapter instanceof NdefTechnology) {
                 NdefTechnology ndefTechnology = (NdefTechnology) adapter;
-                return ndefTechnology.ndefWrite(msg);
+                clearNdefMessage(nativeHandle);
+
+                int result = ndefTechnology.ndefWrite(msg);
+                if (result == ErrorCodes.SUCCESS) {
+                    TagProxy proxy = store.get(nativeHandle);
+                    if (proxy != null && proxy.isPresent()) {
+                        proxy.setNdefMessage(msg);
+                    }
+                }
+                return result;
             } else {
                 throw new RemoteException("Tag technology " + adapter.getClass().getName() + " does not support ndefWrite(..)");
             }
@@ -302,6 +340,9 @@ public class INFcTagBinder extends INfcTag.Stub {
             if (adapter instanceof CommandTechnology) {
                 CommandTechnology technology = (CommandTechnology) adapter;
 
+                // raw commands might modify the NDEF content
+                clearNdefMessage(nativeHandle);
+
                 return technology.transceive(data, raw);
             } else {
                 throw new RemoteException("Tag technology " + adapter.getClass().getName() + " does not support transceive(..)");
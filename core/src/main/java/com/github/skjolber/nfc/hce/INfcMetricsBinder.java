@@ -0,0 +1,123 @@
+package com.github.skjolber.nfc.hce;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.github.skjolber.nfc.NfcMetrics;
+import com.github.skjolber.nfc.remote.INfcMetrics;
+import com.github.skjolber.nfc.service.AbstractService;
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+import com.github.skjolber.nfc.service.TapMetrics;
+
+/**
+ * Exposes the {@linkplain TapMetrics} of the service, as a {@linkplain Bundle} snapshot keyed by the {@linkplain NfcMetrics} constants,
+ * and the {@linkplain ApduTraceRecorder} ring buffer. The trace holds the raw tag conversation, so other applications
+ * must hold the {@linkplain NfcMetrics#PERMISSION_APDU_TRACE} signature permission to control or read it.
+ */
+
+public class INfcMetricsBinder extends INfcMetrics.Stub {
+
+    private static final String TAG = INfcMetricsBinder.class.getName();
+
+    private final AbstractService service;
+    private final TapMetrics tapMetrics;
+    private final ApduTraceRecorder traceRecorder;
+
+    public INfcMetricsBinder(AbstractService service) {
+        attachInterface(this, INfcMetrics.class.getName());
+
+        this.service = service;
+        this.tapMetrics = service.getTapMetrics();
+        this.traceRecorder = service.getApduTraceRecorder();
+    }
+
+    @Override
+    public boolean isEnabled() throws RemoteException {
+        return tapMetrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) throws RemoteException {
+        // also starts or stops the periodic dump
+        service.setTapMetricsEnabled(enabled);
+    }
+
+    @Override
+    public Bundle getMetrics() throws RemoteException {
+        Bundle bundle = new Bundle();
+
+        bundle.putBoolean(NfcMetrics.KEY_ENABLED, tapMetrics.isEnabled());
+
+        synchronized (tapMetrics) {
+            bundle.putLong(NfcMetrics.KEY_TAPS, tapMetrics.getTaps());
+            bundle.putLong(NfcMetrics.KEY_APDUS, tapMetrics.getApdus());
+            bundle.putLong(NfcMetrics.KEY_BYTES_SENT, tapMetrics.getBytesSent());
+            bundle.putLong(NfcMetrics.KEY_BYTES_RECEIVED, tapMetrics.getBytesReceived());
+
+            bundle.putLongArray(NfcMetrics.KEY_APDU_LATENCY, tapMetrics.getApduLatency());
+            bundle.putLongArray(NfcMetrics.KEY_TAP_LATENCY, tapMetrics.getTapLatency());
+            bundle.putLongArray(NfcMetrics.KEY_TAP_APDUS, tapMetrics.getTapApdus());
+            bundle.putLongArray(NfcMetrics.KEY_TAP_BYTES, tapMetrics.getTapBytes());
+
+            for (int phase = 0; phase < NfcMetrics.PHASES; phase++) {
+                bundle.putLongArray(NfcMetrics.getPhaseLatencyKey(phase), tapMetrics.getPhaseLatency(phase));
+            }
+        }
+
+        service.addMetrics(bundle);
+
+        return bundle;
+    }
+
+    @Override
+    public void reset() throws RemoteException {
+        service.resetMetrics();
+    }
+
+    @Override
+    public boolean isApduTraceEnabled() throws RemoteException {
+        return traceRecorder.isEnabled();
+    }
+
+    @Override
+    public void setApduTraceEnabled(boolean enabled) throws RemoteException {
+        enforceApduTracePermission();
+
+        traceRecorder.setEnabled(enabled);
+    }
+
+    @Override
+    public boolean writeApduTrace(ParcelFileDescriptor sink) throws RemoteException {
+        OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(sink);
+        try {
+            enforceApduTracePermission();
+
+            traceRecorder.writeTo(out);
+
+            return true;
+        } catch (IOException e) {
+            Log.d(TAG, "Problem writing APDU trace", e);
+
+            return false;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void enforceApduTracePermission() {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            service.enforceCallingPermission(NfcMetrics.PERMISSION_APDU_TRACE, "Not allowed to access the APDU trace");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.skjolber.nfc.hce;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+import android.util.Log;
+
+import com.github.skjolber.android.nfc.ErrorCodes;
+import com.github.skjolber.nfc.remote.INfcNdefStream;
+
+/**
+ * NDEF read and write via pipes, so that large messages do not have to fit within a single binder transaction
+ * and so that clients can parse records as they arrive. Delegates to the {@linkplain INFcTagBinder}, so the
+ * same NDEF message cache applies.
+ */
+
+public class INfcNdefStreamBinder extends INfcNdefStream.Stub {
+
+    private static final String TAG = INfcNdefStreamBinder.class.getName();
+
+    /** bytes per pipe write */
+    public static final int CHUNK_SIZE = 4096;
+
+    /** largest NDEF message accepted for writing */
+    public static final int MAX_NDEF_LENGTH = 0xFFFF;
+
+    /** how long to wait for the client to write the message and close the pipe, in milliseconds */
+    public static final int READ_TIMEOUT = 10000;
+
+    private final INFcTagBinder tagBinder;
+
+    public INfcNdefStreamBinder(INFcTagBinder tagBinder) {
+        attachInterface(this, INfcNdefStream.class.getName());
+
+        this.tagBinder = tagBinder;
+    }
+
+    @Override
+    public int ndefReadTo(int nativeHandle, ParcelFileDescriptor sink) throws RemoteException {
+        OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(sink);
+        try {
+            if (tagBinder.getConnected(nativeHandle) == null) {
+                return ErrorCodes.ERROR_IO;
+            }
+            NdefMessage message = tagBinder.ndefRead(nativeHandle);
+            if (message == null) {
+                // no NDEF message, the client reads an empty stream
+                return ErrorCodes.SUCCESS;
+            }
+
+            byte[] bytes = message.toByteArray();
+
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = Math.min(CHUNK_SIZE, bytes.length - offset);
+
+                out.write(bytes, offset, length);
+
+                offset += length;
+            }
+            out.flush();
+
+            return ErrorCodes.SUCCESS;
+        } catch (IOException e) {
+            Log.d(TAG, "Problem writing NDEF message to pipe", e);
+
+            return ErrorCodes.ERROR_IO;
+        } finally {
+            close(out);
+        }
+    }
+
+    @Override
+    public int ndefWriteFrom(int nativeHandle, ParcelFileDescriptor source) throws RemoteException {
+        InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(source);
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(CHUNK_SIZE);
+
+            // do not let a client which never closes the pipe hold the binder thread
+            StructPollfd[] pollfds = new StructPollfd[]{new StructPollfd()};
+            pollfds[0].fd = source.getFileDescriptor();
+            pollfds[0].events = (short) OsConstants.POLLIN;
+
+            long deadline = System.currentTimeMillis() + READ_TIMEOUT;
+
+            byte[] buffer = new byte[CHUNK_SIZE];
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Log.d(TAG, "Timeout reading NDEF message from pipe");
+
+                    return ErrorCodes.ERROR_TIMEOUT;
+                }
+                if (!poll(pollfds, (int) remaining)) {
+                    continue;
+                }
+                int read = in.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                if (bout.size() + read > MAX_NDEF_LENGTH) {
+                    Log.d(TAG, "NDEF message exceeds " + MAX_NDEF_LENGTH + " bytes");
+
+                    return ErrorCodes.ERROR_INVALID_PARAM;
+                }
+                bout.write(buffer, 0, read);
+            }
+
+            NdefMessage message = new NdefMessage(bout.toByteArray());
+
+            return tagBinder.ndefWrite(nativeHandle, message);
+        } catch (IOException e) {
+            Log.d(TAG, "Problem reading NDEF message from pipe", e);
+
+            return ErrorCodes.ERROR_IO;
+        } catch (FormatException e) {
+            Log.d(TAG, "Invalid NDEF message", e);
+
+            return ErrorCodes.ERROR_INVALID_PARAM;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * @return true if the pipe can be read without blocking, false on timeout or interrupt
+     */
+
+    private static boolean poll(StructPollfd[] pollfds, int timeout) throws IOException {
+        try {
+            return Os.poll(pollfds, timeout) > 0;
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.EINTR) {
+                return false;
+            }
+            throw new IOException(e);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.skjolber.nfc.hce;
+
+import java.io.IOException;
+import java.util.List;
+
+import android.nfc.TagLostException;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.acs.smartcard.ReaderException;
+import com.github.skjolber.android.nfc.TransceiveResult;
+import com.github.skjolber.nfc.TransceiveBatch;
+import com.github.skjolber.nfc.TransceiveBatchResult;
+import com.github.skjolber.nfc.hce.tech.CommandTechnology;
+import com.github.skjolber.nfc.hce.tech.TagTechnology;
+import com.github.skjolber.nfc.hce.tech.mifare.IsoDepAdapter;
+import com.github.skjolber.nfc.remote.INfcTagBatch;
+
+import org.nfctools.NfcException;
+
+/**
+ * Sends a sequence of commands to a tag within a single binder call. The connected technology is resolved
+ * once per batch, and ISO-DEP commands are sent without intermediate {@linkplain TransceiveResult}s.
+ */
+
+public class INfcTagBatchBinder extends INfcTagBatch.Stub {
+
+    private static final String TAG = INfcTagBatchBinder.class.getName();
+
+    private final INFcTagBinder tagBinder;
+
+    public INfcTagBatchBinder(INFcTagBinder tagBinder) {
+        attachInterface(this, INfcTagBatch.class.getName());
+
+        this.tagBinder = tagBinder;
+    }
+
+    @Override
+    public TransceiveBatchResult transceiveBatch(int nativeHandle, TransceiveBatch batch) throws RemoteException {
+        TransceiveBatchResult result = new TransceiveBatchResult();
+
+        TagTechnology adapter = tagBinder.getConnected(nativeHandle);
+        if (adapter == null) {
+            result.setResult(TransceiveBatchResult.RESULT_TAGLOST);
+
+            return result;
+        }
+        if (!(adapter instanceof CommandTechnology)) {
+            throw new RemoteException("Tag technology " + adapter.getClass().getName() + " does not support transceive(..)");
+        }
+
+        // raw commands might modify the NDEF content
+        tagBinder.clearNdefMessage(nativeHandle);
+
+        boolean raw = batch.isRaw();
+        List<byte[]> commands = batch.getCommands();
+
+        if (adapter instanceof IsoDepAdapter) {
+            IsoDepAdapter isoDep = (IsoDepAdapter) adapter;
+            for (byte[] command : commands) {
+                byte[] response;
+                try {
+                    response = isoDep.transceiveBytes(command, raw);
+                } catch (ReaderException | NfcException e) {
+                    Log.d(TAG, "Problem sending command " + result.size(), e);
+
+                    result.setResult(getFailure(nativeHandle));
+
+                    break;
+                }
+                result.add(response);
+
+                if (batch.isStop(response)) {
+                    result.setStopped(result.size() < commands.size());
+
+                    break;
+                }
+            }
+        } else {
+            CommandTechnology technology = (CommandTechnology) adapter;
+            for (byte[] command : commands) {
+                TransceiveResult transceiveResult = technology.transceive(command, raw);
+
+                byte[] response;
+                try {
+                    response = transceiveResult.getResponseOrThrow();
+                } catch (TagLostException e) {
+                    Log.d(TAG, "Tag lost at command " + result.size(), e);
+
+                    result.setResult(TransceiveBatchResult.RESULT_TAGLOST);
+
+                    break;
+                } catch (IOException e) {
+                    Log.d(TAG, "Problem sending command " + result.size(), e);
+
+                    result.setResult(getFailure(nativeHandle));
+
+                    break;
+                }
+                result.add(response);
+
+                if (batch.isStop(response)) {
+                    result.setStopped(result.size() < commands.size());
+
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return tag lost if the tag has left the field, otherwise failure
+     */
+
+    private int getFailure(int nativeHandle) {
+        if (tagBinder.getConnected(nativeHandle) == null || !tagBinder.isTagPresent(nativeHandle)) {
+            return TransceiveBatchResult.RESULT_TAGLOST;
+        }
+        return TransceiveBatchResult.RESULT_FAILURE;
+    }
+}
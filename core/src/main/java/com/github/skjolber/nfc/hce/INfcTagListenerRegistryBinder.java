@@ -0,0 +1,109 @@
+package com.github.skjolber.nfc.hce;
+
+import android.os.IBinder;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.github.skjolber.nfc.NfcTagDescriptor;
+import com.github.skjolber.nfc.remote.INfcTagListener;
+import com.github.skjolber.nfc.remote.INfcTagListenerRegistry;
+
+/**
+ * Registry of bound tag listeners, for direct delivery of tags as pre-serialized {@linkplain NfcTagDescriptor}s.
+ * Listeners which die are removed automatically.
+ */
+
+public class INfcTagListenerRegistryBinder extends INfcTagListenerRegistry.Stub {
+
+    private static final String TAG = INfcTagListenerRegistryBinder.class.getName();
+
+    private final RemoteCallbackList<INfcTagListener> listeners = new RemoteCallbackList<INfcTagListener>();
+
+    private final IBinder tagService;
+
+    public INfcTagListenerRegistryBinder(IBinder tagService) {
+        attachInterface(this, INfcTagListenerRegistry.class.getName());
+
+        this.tagService = tagService;
+    }
+
+    @Override
+    public boolean addListener(INfcTagListener listener) throws RemoteException {
+        Log.d(TAG, "Add tag listener");
+
+        return listeners.register(listener);
+    }
+
+    @Override
+    public boolean removeListener(INfcTagListener listener) throws RemoteException {
+        Log.d(TAG, "Remove tag listener");
+
+        return listeners.unregister(listener);
+    }
+
+    @Override
+    public IBinder getTagService() throws RemoteException {
+        return tagService;
+    }
+
+    public boolean hasListeners() {
+        return listeners.getRegisteredCallbackCount() > 0;
+    }
+
+    /**
+     * Deliver a tag to all listeners.
+     *
+     * @param descriptor serialized tag descriptor
+     * @return number of listeners the tag was delivered to
+     */
+
+    public int onTagDiscovered(byte[] descriptor) {
+        // broadcasts are not reentrant, and slots are served by different threads
+        synchronized (listeners) {
+            int delivered = 0;
+
+            int count = listeners.beginBroadcast();
+            try {
+                for (int i = 0; i < count; i++) {
+                    try {
+                        listeners.getBroadcastItem(i).onTagDiscovered(descriptor);
+
+                        delivered++;
+                    } catch (RemoteException e) {
+                        Log.d(TAG, "Unable to deliver tag to listener", e);
+                    }
+                }
+            } finally {
+                listeners.finishBroadcast();
+            }
+            return delivered;
+        }
+    }
+
+    public int onTagLeftField(int slotNumber) {
+        synchronized (listeners) {
+            int delivered = 0;
+
+            int count = listeners.beginBroadcast();
+            try {
+                for (int i = 0; i < count; i++) {
+                    try {
+                        listeners.getBroadcastItem(i).onTagLeftField(slotNumber);
+
+                        delivered++;
+                    } catch (RemoteException e) {
+                        Log.d(TAG, "Unable to deliver tag left field to listener", e);
+                    }
+                }
+            } finally {
+                listeners.finishBroadcast();
+            }
+            return delivered;
+        }
+    }
+
+    public void close() {
+        listeners.kill();
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.skjolber.nfc.hce.resolve;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.skjolber.nfc.command.Utils;
+
+/**
+ * Cache of tag contents for recently seen tags, keyed by UID. Each entry carries a fingerprint of
+ * the tag memory (i.e. the first pages), which must match on the next tap for the entry to be used.
+ * The fingerprint does not cover the whole message, so every path which might write to the tag
+ * (NDEF writes, raw and batch commands) invalidates the entry.
+ * Holds a limited number of tags, evicting the least recently used. Thread safe.
+ */
+
+public class TagContentCache {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    public static class Entry {
+
+        private final byte[] fingerprint;
+        private final boolean formatted;
+        private final boolean writable;
+        private final byte[] ndefMessage;
+
+        public Entry(byte[] fingerprint, boolean formatted, boolean writable, byte[] ndefMessage) {
+            this.fingerprint = fingerprint;
+            this.formatted = formatted;
+            this.writable = writable;
+            this.ndefMessage = ndefMessage;
+        }
+
+        public byte[] getFingerprint() {
+            return fingerprint;
+        }
+
+        public boolean isFormatted() {
+            return formatted;
+        }
+
+        public boolean isWritable() {
+            return writable;
+        }
+
+        /**
+         * Get the NDEF message bytes
+         *
+         * @return message bytes, or null if the message was not read
+         */
+
+        public byte[] getNdefMessage() {
+            return ndefMessage;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TagContentCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TagContentCache(final int capacity) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the cached contents of a tag. Entries with a different fingerprint are stale and removed.
+     *
+     * @param uid         tag UID
+     * @param fingerprint fingerprint of the current tag contents
+     * @return entry, or null if none or stale
+     */
+
+    public Entry get(byte[] uid, byte[] fingerprint) {
+        String key = Utils.toHexString(uid);
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !Arrays.equals(entry.getFingerprint(), fingerprint)) {
+                entries.remove(key);
+
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(byte[] uid, Entry entry) {
+        synchronized (entries) {
+            entries.put(Utils.toHexString(uid), entry);
+        }
+    }
+
+    /**
+     * Fill in the NDEF message of an entry which was created without it, i.e. when the message is read lazily.
+     *
+     * @param uid         tag UID
+     * @param ndefMessage NDEF message bytes
+     */
+
+    public void setNdefMessage(byte[] uid, byte[] ndefMessage) {
+        String key = Utils.toHexString(uid);
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.getNdefMessage() == null) {
+                entries.put(key, new Entry(entry.getFingerprint(), entry.isFormatted(), entry.isWritable(), ndefMessage));
+            }
+        }
+    }
+
+    public void invalidate(byte[] uid) {
+        synchronized (entries) {
+            entries.remove(Utils.toHexString(uid));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
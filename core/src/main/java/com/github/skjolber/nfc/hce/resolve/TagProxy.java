@@ -2,19 +2,29 @@ package com.github.skjolber.nfc.hce.resolve;
 
 import java.util.List;
 
+import android.nfc.NdefMessage;
+
 import com.github.skjolber.android.nfc.TagImpl;
 import com.github.skjolber.nfc.hce.tech.TagTechnology;
 
 public class TagProxy {
 
-    private int handle;
-    private int slotNumber;
+    // volatile so that the state written by the tag detection thread is visible to binder threads
+    private volatile int handle;
+    private volatile int slotNumber;
+
+    private volatile List<TagTechnology> technologies;
+
+    private volatile TagTechnology current;
 
-    private List<TagTechnology> technologies;
+    private volatile boolean present = true;
 
-    private TagTechnology current;
+    // NDEF message read from the tag, cached until the tag leaves the field
+    private volatile NdefMessage ndefMessage;
 
-    private boolean present = true;
+    // cache of the tag contents across taps, if any
+    private volatile TagContentCache tagContentCache;
+    private volatile byte[] uid;
 
     public TagProxy(int handle, int slotNumber, List<TagTechnology> technologies) {
         this.handle = handle;
@@ -90,4 +100,46 @@ public class TagProxy {
     public boolean isPresent() {
         return present;
     }
+
+    public void setPresent(boolean present) {
+        this.present = present;
+
+        if (!present) {
+            this.ndefMessage = null;
+        }
+    }
+
+    public NdefMessage getNdefMessage() {
+        return ndefMessage;
+    }
+
+    public void setNdefMessage(NdefMessage ndefMessage) {
+        this.ndefMessage = ndefMessage;
+    }
+
+    /**
+     * Set the cache entry to invalidate if the tag contents are modified.
+     *
+     * @param tagContentCache cache
+     * @param uid             tag UID
+     */
+
+    public void setTagContentCache(TagContentCache tagContentCache, byte[] uid) {
+        this.uid = uid;
+        this.tagContentCache = tagContentCache;
+    }
+
+    /**
+     * The tag contents might have been modified, i.e. by a write or raw command. Drop the NDEF message
+     * and the cache entry for the tag.
+     */
+
+    public void invalidateContent() {
+        this.ndefMessage = null;
+
+        TagContentCache cache = tagContentCache;
+        if (cache != null) {
+            cache.invalidate(uid);
+        }
+    }
 }
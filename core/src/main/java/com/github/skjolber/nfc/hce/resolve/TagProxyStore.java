@@ -1,34 +1,51 @@
 package com.github.skjolber.nfc.hce.resolve;
 
+import android.nfc.NdefMessage;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.github.skjolber.nfc.hce.tech.TagTechnology;
 
+/**
+ * Thread-safe store of tag proxies, indexed by service handle and by slot. Written from the tag detection threads,
+ * read from binder threads on every call.
+ */
+
 public class TagProxyStore {
 
     protected static final String TAG = TagProxyStore.class.getName();
 
-    private static int counter = 1;
+    private static final AtomicInteger counter = new AtomicInteger(1);
 
     public static int nextServiceHandle() {
-        synchronized (TagProxyStore.class) {
-            counter++;
-
-            return counter;
-        }
+        return counter.incrementAndGet();
     }
 
-    private List<TagProxy> items = new ArrayList<TagProxy>();
+    private final ConcurrentMap<Integer, TagProxy> handles = new ConcurrentHashMap<Integer, TagProxy>();
+    private final ConcurrentMap<Integer, TagProxy> slots = new ConcurrentHashMap<Integer, TagProxy>();
+
+    /**
+     * Get a snapshot of the current items.
+     *
+     * @return list of items
+     */
 
     public List<TagProxy> getItems() {
-        return items;
+        return new ArrayList<TagProxy>(handles.values());
     }
 
-    public void setItems(List<TagProxy> items) {
-        this.items = items;
+    public synchronized void setItems(List<TagProxy> items) {
+        for (TagProxy tagProxy : getItems()) {
+            remove(tagProxy);
+        }
+        for (TagProxy tagProxy : items) {
+            add(tagProxy);
+        }
     }
 
     public int add(int slotNumber, List<TagTechnology> technologies) {
@@ -39,33 +56,63 @@ public class TagProxyStore {
         return next;
     }
 
-    public boolean add(TagProxy object) {
-        return items.add(object);
+    public int add(int slotNumber, List<TagTechnology> technologies, NdefMessage ndefMessage) {
+        int next = nextServiceHandle();
+
+        TagProxy tagProxy = new TagProxy(next, slotNumber, technologies);
+        tagProxy.setNdefMessage(ndefMessage);
+        add(tagProxy);
+
+        return next;
     }
 
-    public boolean remove(Object object) {
-        return items.remove(object);
+    public synchronized boolean add(TagProxy object) {
+        // only a single tag per slot, so evict any previous (stale) tag
+        TagProxy previous = slots.put(object.getSlotNumber(), object);
+        if (previous != null && previous != object) {
+            Log.d(TAG, "Evict stale tag " + previous.getHandle() + " in slot " + previous.getSlotNumber());
+
+            evict(previous);
+        }
+        handles.put(object.getHandle(), object);
+
+        return true;
     }
 
-    public void removeItem(int slotNumber) {
-        for (TagProxy tagItem : items) {
-            if (tagItem.getSlotNumber() == slotNumber) {
-                items.remove(tagItem);
+    public synchronized boolean remove(Object object) {
+        if (object instanceof TagProxy) {
+            TagProxy tagProxy = (TagProxy) object;
+            if (handles.remove(tagProxy.getHandle(), tagProxy)) {
+                slots.remove(tagProxy.getSlotNumber(), tagProxy);
+
+                tagProxy.setPresent(false);
 
-                return;
+                return true;
             }
         }
+        return false;
+    }
 
+    public synchronized void removeItem(int slotNumber) {
+        TagProxy tagProxy = slots.remove(slotNumber);
+        if (tagProxy != null) {
+            evict(tagProxy);
+        }
+    }
+
+    private void evict(TagProxy tagProxy) {
+        handles.remove(tagProxy.getHandle(), tagProxy);
+
+        tagProxy.setPresent(false);
     }
 
     public TagProxy get(int serviceHandle) {
         //Log.d(TAG, "Get service handle " + serviceHandle);
-        for (TagProxy tagItem : items) {
-            if (tagItem.getHandle() == serviceHandle) {
-                return tagItem;
-            }
-        }
-        return null;
+        return handles.get(serviceHandle);
+    }
+
+    public TagProxy getBySlot(int slotNumber) {
+        return slots.get(slotNumber);
     }
 
 }
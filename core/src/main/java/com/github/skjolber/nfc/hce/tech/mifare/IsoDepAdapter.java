@@ -28,34 +28,39 @@ public class IsoDepAdapter extends DefaultTechnology implements CommandTechnolog
     public TransceiveResult transceive(byte[] data, boolean raw) throws RemoteException {
 
         try {
-            byte[] transceive;
-            if (hostCardEmulation && data[0] == 0x00) {
-                //log("Transceive iso request " + ACRCommands.toHexString(data));
+            byte[] transceive = transceiveBytes(data, raw);
 
-                transceive = adapter.transceive(data);
-
-                //log("Transceive iso response " + ACRCommands.toHexString(transceive));
-            } else if (raw) {
-                //log("Transceive raw request " + ACRCommands.toHexString(data));
+            return new TransceiveResult(TransceiveResult.RESULT_SUCCESS, transceive);
+        } catch (ReaderException | NfcException e) {
+            Log.d(TAG, "Problem sending command", e);
 
-                transceive = adapter.transmitRaw(data);
+            return new TransceiveResult(TransceiveResult.RESULT_FAILURE, null);
+        }
 
-                //log("Transceive raw response " + ACRCommands.toHexString(transceive));
-            } else {
-                //log("Transceive request " + ACRCommands.toHexString(data));
+    }
 
-                transceive = adapter.transceive(data);
+    /**
+     * Send a command, without wrapping the response, i.e. for sending a sequence of commands.
+     *
+     * @param data command
+     * @param raw  raw command
+     * @return response
+     * @throws ReaderException if the command could not be sent
+     */
 
-                //log("Transceive response " + ACRCommands.toHexString(transceive));
-            }
+    public byte[] transceiveBytes(byte[] data, boolean raw) throws ReaderException {
+        if (hostCardEmulation && data[0] == 0x00) {
+            //log("Transceive iso request " + ACRCommands.toHexString(data));
 
-            return new TransceiveResult(TransceiveResult.RESULT_SUCCESS, transceive);
-        } catch (ReaderException | NfcException e) {
-            Log.d(TAG, "Problem sending command", e);
+            return adapter.transceive(data);
+        } else if (raw) {
+            //log("Transceive raw request " + ACRCommands.toHexString(data));
 
-            return new TransceiveResult(TransceiveResult.RESULT_FAILURE, null);
+            return adapter.transmitRaw(data);
         }
+        //log("Transceive request " + ACRCommands.toHexString(data));
 
+        return adapter.transceive(data);
     }
 
     private void log(String string) {
@@ -9,6 +9,7 @@ import android.os.RemoteException;
 import android.util.Log;
 
 import com.github.skjolber.android.nfc.tech.Ndef;
+import com.github.skjolber.nfc.hce.resolve.TagContentCache;
 import com.github.skjolber.nfc.hce.tech.NdefTechnology;
 import com.github.skjolber.nfc.hce.tech.TagTechnology;
 import com.github.skjolber.nfc.skjolberg.reader.operations.NdefOperations;
@@ -19,9 +20,24 @@ public class NdefAdapter extends DefaultTechnology implements NdefTechnology {
 
     private NdefOperations operations;
 
+    private TagContentCache tagContentCache;
+    private byte[] uid;
+
     public NdefAdapter(int slotNumber, NdefOperations operations) {
+        this(slotNumber, operations, null, null);
+    }
+
+    public NdefAdapter(int slotNumber, NdefOperations operations, TagContentCache tagContentCache, byte[] uid) {
         super(TagTechnology.NDEF, slotNumber);
         this.operations = operations;
+        this.tagContentCache = tagContentCache;
+        this.uid = uid;
+    }
+
+    private void invalidate() {
+        if (tagContentCache != null) {
+            tagContentCache.invalidate(uid);
+        }
     }
 
     @Override
@@ -39,7 +55,12 @@ public class NdefAdapter extends DefaultTechnology implements NdefTechnology {
         try {
             Message message = operations.readNdefMessage();
 
-            return message.getNdefMessage();
+            NdefMessage ndefMessage = message.getNdefMessage();
+            if (tagContentCache != null && ndefMessage != null) {
+                // the first full read fills in an entry created in lazy mode
+                tagContentCache.setNdefMessage(uid, ndefMessage.toByteArray());
+            }
+            return ndefMessage;
         } catch (FormatException e) {
             Log.d(TAG, "Problem calling ndefRead()", e);
             throw new RemoteException();
@@ -49,6 +70,8 @@ public class NdefAdapter extends DefaultTechnology implements NdefTechnology {
     @Override
     public int ndefWrite(NdefMessage msg) throws RemoteException {
         try {
+            invalidate();
+
             operations.writeNdefMessage(new Message(msg));
 
             return ErrorCodes.SUCCESS;
@@ -61,6 +84,8 @@ public class NdefAdapter extends DefaultTechnology implements NdefTechnology {
     @Override
     public int ndefMakeReadOnly() throws RemoteException {
         try {
+            invalidate();
+
             operations.makeReadOnly();
 
             return ErrorCodes.SUCCESS;
@@ -83,6 +108,8 @@ public class NdefAdapter extends DefaultTechnology implements NdefTechnology {
     @Override
     public int formatNdef(byte[] key) throws RemoteException {
         try {
+            invalidate();
+
             operations.format();
 
             return ErrorCodes.SUCCESS;
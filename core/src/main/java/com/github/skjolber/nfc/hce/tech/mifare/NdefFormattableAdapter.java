@@ -8,6 +8,7 @@ import android.nfc.NdefMessage;
 import android.os.RemoteException;
 import android.util.Log;
 
+import com.github.skjolber.nfc.hce.resolve.TagContentCache;
 import com.github.skjolber.nfc.hce.tech.NdefTechnology;
 import com.github.skjolber.nfc.hce.tech.TagTechnology;
 import com.github.skjolber.nfc.skjolberg.reader.operations.NdefOperations;
@@ -18,9 +19,24 @@ public class NdefFormattableAdapter extends DefaultTechnology implements NdefTec
 
     private NdefOperations operations;
 
+    private TagContentCache tagContentCache;
+    private byte[] uid;
+
     public NdefFormattableAdapter(int slotNumber, NdefOperations operations) {
+        this(slotNumber, operations, null, null);
+    }
+
+    public NdefFormattableAdapter(int slotNumber, NdefOperations operations, TagContentCache tagContentCache, byte[] uid) {
         super(TagTechnology.NDEF_FORMATABLE, slotNumber);
         this.operations = operations;
+        this.tagContentCache = tagContentCache;
+        this.uid = uid;
+    }
+
+    private void invalidate() {
+        if (tagContentCache != null) {
+            tagContentCache.invalidate(uid);
+        }
     }
 
     @Override
@@ -48,6 +64,8 @@ public class NdefFormattableAdapter extends DefaultTechnology implements NdefTec
     @Override
     public int ndefWrite(NdefMessage msg) throws RemoteException {
         try {
+            invalidate();
+
             operations.writeNdefMessage(new Message(msg));
 
             return ErrorCodes.SUCCESS;
@@ -60,6 +78,8 @@ public class NdefFormattableAdapter extends DefaultTechnology implements NdefTec
     @Override
     public int ndefMakeReadOnly() throws RemoteException {
         try {
+            invalidate();
+
             operations.makeReadOnly();
 
             return ErrorCodes.SUCCESS;
@@ -82,6 +102,8 @@ public class NdefFormattableAdapter extends DefaultTechnology implements NdefTec
     @Override
     public int formatNdef(byte[] key) throws RemoteException {
         try {
+            invalidate();
+
             operations.format();
 
             return ErrorCodes.SUCCESS;
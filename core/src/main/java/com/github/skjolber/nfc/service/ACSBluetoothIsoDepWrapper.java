@@ -1,80 +1,245 @@
 package com.github.skjolber.nfc.service;
 
-import android.util.Log;
-
 import com.acs.bluetooth.BluetoothReader;
 import com.acs.smartcard.ReaderException;
 
 import org.nfctools.NfcException;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-public class ACSBluetoothIsoDepWrapper implements IsoDepWrapper, BluetoothReader.OnResponseApduAvailableListener {
+public class ACSBluetoothIsoDepWrapper implements IsoDepWrapper {
 
     private static final String TAG = ACSBluetoothIsoDepWrapper.class.getName();
 
-    private BluetoothReader reader;
-
-    private volatile CountDownLatch latch;
-    private volatile byte[] in;
+    private BluetoothReaderDispatcher dispatcher;
 
-    private long commandTimeout = 5000;
+    private TapMetrics tapMetrics;
+    private ApduTraceRecorder traceRecorder;
+    private int slotNumber;
 
     public ACSBluetoothIsoDepWrapper(BluetoothReader mBluetoothReader) {
-        this.reader = mBluetoothReader;
+        this(BluetoothReaderDispatcher.getInstance(mBluetoothReader));
+    }
+
+    public ACSBluetoothIsoDepWrapper(BluetoothReaderDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
     }
 
     public BluetoothReader getReader() {
-        return reader;
+        return dispatcher.getReader();
     }
 
-    public synchronized byte[] transceive(byte[] request) {
+    public byte[] transceive(byte[] request) {
         //Log.d(TAG, "Raw request: " + com.github.skjolber.nfc.command.Utils.toHexString(request));
 
-        try {
+        TapMetrics metrics = tapMetrics;
+        ApduTraceRecorder recorder = traceRecorder;
+        if ((metrics != null && metrics.isEnabled()) || (recorder != null && recorder.isEnabled())) {
+            long start = System.nanoTime();
+
+            byte[] response = get(dispatcher.submit(request));
+
+            long latency = System.nanoTime() - start;
+            if (metrics != null) {
+                metrics.onApdu(request.length, response.length, latency);
+            }
+            if (recorder != null) {
+                recorder.record(slotNumber, start, latency, request, request.length, response, response.length);
+            }
+            return response;
+        }
+        return get(dispatcher.submit(request));
+    }
+
+    /**
+     * Transceive without waiting for the response.
+     *
+     * @param request command
+     * @return future response
+     */
+
+    public Future<byte[]> transceiveAsync(byte[] request) {
+        return dispatcher.submit(request);
+    }
+
+    /**
+     * Result of a batch of commands, with a preallocated response slot per command. Transmission stops at the
+     * first failed command, so the responses up to the failure index are valid.
+     */
+
+    public static class BatchResponse {
+
+        private final byte[][] responses;
+        private int failureIndex = -1;
+        private NfcException failure;
 
-            in = null;
-            latch = new CountDownLatch(1);
+        public BatchResponse(int size) {
+            this.responses = new byte[size][];
+        }
+
+        public int size() {
+            return responses.length;
+        }
+
+        /**
+         * @param index command index
+         * @return response, or null if the command failed or was not transmitted
+         */
+
+        public byte[] getResponse(int index) {
+            return responses[index];
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        /**
+         * @return index of the failed command, or -1 if all commands succeeded
+         */
 
-            reader.setOnResponseApduAvailableListener(this);
-            if (!reader.transmitApdu(request)) {
-                throw new NfcException("Unable to transmit ADPU");
+        public int getFailureIndex() {
+            return failureIndex;
+        }
+
+        public NfcException getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return responses of the commands before the failure, or all responses
+         */
+
+        public List<byte[]> getResponses() {
+            int count = failure == null ? responses.length : failureIndex;
+            List<byte[]> list = new ArrayList<byte[]>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(responses[i]);
             }
+            return list;
+        }
+    }
+
+    /**
+     * Transceive a batch of commands. The commands are transmitted back-to-back, and the caller only waits
+     * for the last response. If a command times out or fails, the remaining commands are not transmitted.
+     *
+     * @param requests commands
+     * @return responses, in the same order as the commands, and the index of the failed command, if any
+     */
 
+    public BatchResponse transceive(List<byte[]> requests) {
+        List<BluetoothReaderDispatcher.PendingCommand> commands = dispatcher.submit(requests);
+
+        BatchResponse result = new BatchResponse(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            // responses arrive in order, so each command is in flight once the previous has completed
             try {
-                if(!latch.await(commandTimeout, TimeUnit.MILLISECONDS)) {
-                    throw new NfcException("Timeout");
+                BluetoothReaderDispatcher.PendingCommand command = commands.get(i);
+
+                result.responses[i] = get(command);
+                if (command.getErrorCode() != BluetoothReader.ERROR_SUCCESS) {
+                    throw new NfcException("Reader error " + command.getErrorCode());
+                }
+            } catch (NfcException e) {
+                result.responses[i] = null;
+                result.failureIndex = i;
+                result.failure = e;
+
+                // the dispatcher drops the rest of the batch, make sure none is left waiting in the queue
+                for (int k = i + 1; k < commands.size(); k++) {
+                    commands.get(k).cancel(false);
                 }
-            } catch (InterruptedException e) {
-                throw new NfcException("Problem waiting for response");
+                break;
             }
+        }
+        return result;
+    }
 
-            //Log.d(TAG, "Raw response: " + com.github.skjolber.nfc.command.Utils.toHexString(in));
-
-            if(this.in == null) {
+    private byte[] get(Future<byte[]> future) {
+        try {
+            byte[] response = future.get(dispatcher.getCommandTimeout(), TimeUnit.MILLISECONDS);
+            if (response == null) {
                 throw new NfcException("No ADPU response");
             }
-
-            return in;
-        } catch (Exception e) {
-            throw new NfcException(e);
+            return response;
+        } catch (TimeoutException e) {
+            throw new NfcException("Timeout");
+        } catch (InterruptedException e) {
+            future.cancel(false);
+
+            throw new NfcException("Problem waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NfcException) {
+                throw (NfcException) e.getCause();
+            }
+            throw new NfcException(e.getCause());
         }
     }
 
-    @Override
-    public synchronized byte[] transmitPassThrough(byte[] req) throws ReaderException {
-        throw new ReaderException();
+    /**
+     * Set the command timeout of the underlying dispatcher, i.e. for all commands to the reader.
+     *
+     * @param commandTimeout timeout in milliseconds
+     */
+
+    public void setCommandTimeout(long commandTimeout) {
+        dispatcher.setCommandTimeout(commandTimeout);
     }
 
-    @Override
-    public void onResponseApduAvailable(BluetoothReader bluetoothReader, byte[] apdu, int errorCode) {
-        this.in = apdu;
+    public long getCommandTimeout() {
+        return dispatcher.getCommandTimeout();
+    }
 
-        if (errorCode != BluetoothReader.ERROR_SUCCESS) {
-            Log.d(TAG, "onResponseApduAvailable: " + BluetoothBackgroundService.getResponseString(apdu, errorCode) + " " + com.github.skjolber.nfc.command.Utils.toHexString(apdu));
-        }
-        latch.countDown();
+    public TapMetrics getTapMetrics() {
+        return tapMetrics;
     }
 
+    /**
+     * Set the metrics which record the round-trip of each command.
+     *
+     * @param tapMetrics metrics, or null
+     */
+
+    public void setTapMetrics(TapMetrics tapMetrics) {
+        this.tapMetrics = tapMetrics;
+    }
+
+    public ApduTraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Set the recorder for the request and response of each command.
+     *
+     * @param traceRecorder recorder, or null
+     */
+
+    public void setTraceRecorder(ApduTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+
+    /**
+     * Set the slot number for the APDU trace records.
+     *
+     * @param slotNumber reader slot of the tag
+     */
+
+    public void setSlotNumber(int slotNumber) {
+        this.slotNumber = slotNumber;
+    }
+
+    @Override
+    public synchronized byte[] transmitPassThrough(byte[] req) throws ReaderException {
+        throw new ReaderException();
+    }
 }
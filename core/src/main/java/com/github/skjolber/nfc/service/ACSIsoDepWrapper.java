@@ -19,20 +19,31 @@ public class ACSIsoDepWrapper implements IsoDepWrapper {
 
         //Log.d(TAG, "Transceive request " + ACRCommands.toHexString(data));
 
-        byte[] buffer = new byte[2048];
-        int read;
+        byte[] buffer = isoDep.getResponseBuffer(slotNum);
+        synchronized (buffer) {
+            int read = transceive(data, data.length, buffer, buffer.length);
+
+            byte[] response = new byte[read];
+            System.arraycopy(buffer, 0, response, 0, read);
+
+            //Log.d(TAG, "Transceive response " + ACRCommands.toHexString(response));
+
+            return response;
+        }
+    }
+
+    /**
+     * Transceive using caller-supplied buffers, without allocating.
+     *
+     * @return number of bytes written to the response buffer
+     */
+
+    public int transceive(byte[] data, int length, byte[] response, int responseLength) throws ReaderException {
         try {
-            read = isoDep.transmit(slotNum, data, data.length, buffer, buffer.length);
+            return isoDep.transmit(slotNum, data, length, response, responseLength);
         } catch (ReaderException e) {
             throw new ReaderException(e);
         }
-
-        byte[] response = new byte[read];
-        System.arraycopy(buffer, 0, response, 0, read);
-
-        //Log.d(TAG, "Transceive response " + ACRCommands.toHexString(response));
-
-        return response;
     }
 
     @Override
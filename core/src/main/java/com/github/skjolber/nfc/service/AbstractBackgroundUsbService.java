@@ -10,6 +10,8 @@ import android.content.SharedPreferences;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.preference.PreferenceManager;
@@ -28,6 +30,7 @@ import com.github.skjolber.nfc.hce.IAcr1252UBinder;
 import com.github.skjolber.nfc.hce.IAcr1255UBinder;
 import com.github.skjolber.nfc.hce.IAcr1281UBinder;
 import com.github.skjolber.nfc.hce.IAcr1283Binder;
+import com.github.skjolber.nfc.NfcMetrics;
 import com.github.skjolber.nfc.NfcReader;
 import com.github.skjolber.nfc.NfcTag;
 import com.github.skjolber.nfc.command.ACR1222Commands;
@@ -44,44 +47,65 @@ import com.github.skjolber.nfc.command.Utils;
 import com.github.skjolber.nfc.skjolberg.reader.operations.NdefOperations;
 
 import org.nfctools.api.TagType;
+import org.nfctools.mf.ndef.AbstractNdefOperations;
 
 import java.lang.ref.WeakReference;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 public abstract class AbstractBackgroundUsbService extends AbstractService {
 
     public static final String PREFERENCE_AUTO_START_ON_READER_CONNECT = "preference_auto_start_on_reader_connect";
     public static final String PREFERENCE_AUTO_STOP_ON_READER_DISCONNECT = "preference_auto_stop_on_reader_disconnect";
     public static final String PREFERENCE_AUTO_START_ON_RESTART = "preference_auto_start_on_restart";
+    public static final String PREFERENCE_USB_FALLBACK_POLL = "preference_usb_fallback_poll";
 
     public static final String PREFERENCE_AUTO_READ_UID = "preference_auto_read_uid";
 
     private static final String TAG = AbstractBackgroundUsbService.class.getName();
 
+    /**
+     * Scans for attached readers once, then relies on attach broadcasts. If fallback polling is enabled,
+     * rescans while no reader is found, backing off exponentially.
+     */
+
     private static class Scanner extends Handler {
 
-        private static final long USB_RESCAN_INTERVAL_STANDARD = 1000;
-        private static final long USB_RESCAN_INTERVAL_READER_DETECTED = 10000;
+        private static final long USB_RESCAN_INTERVAL_MIN = 1000;
+        private static final long USB_RESCAN_INTERVAL_MAX = 60000;
 
         private WeakReference<AbstractBackgroundUsbService> activityReference;
 
+        private long interval = USB_RESCAN_INTERVAL_MIN;
+
         public Scanner(AbstractBackgroundUsbService activity) {
             this.activityReference = new WeakReference<AbstractBackgroundUsbService>(activity);
         }
 
         void resume() {
             synchronized (this) {
-                if (!hasMessages(0)) {
-                    sendEmptyMessage(0);
-                }
+                removeMessages(0);
+
+                interval = USB_RESCAN_INTERVAL_MIN;
+
+                sendEmptyMessage(0);
             }
         }
 
         void resumeDelayed() {
             synchronized (this) {
                 if (!hasMessages(0)) {
-                    sendEmptyMessageDelayed(0, USB_RESCAN_INTERVAL_STANDARD);
+                    interval = USB_RESCAN_INTERVAL_MIN;
+
+                    sendEmptyMessageDelayed(0, USB_RESCAN_INTERVAL_MIN);
                 }
             }
         }
@@ -101,10 +125,12 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                 if (activity.isDetectUSBDevice()) {
                     if (activity.detectUSBDevices()) {
                         Log.v(TAG, "Detected USB devices");
-                        sendEmptyMessageDelayed(0, USB_RESCAN_INTERVAL_READER_DETECTED);
+                    } else if (activity.isUsbFallbackPoll()) {
+                        synchronized (this) {
+                            sendEmptyMessageDelayed(0, interval);
 
-                    } else {
-                        sendEmptyMessageDelayed(0, USB_RESCAN_INTERVAL_STANDARD);
+                            interval = Math.min(interval * 2, USB_RESCAN_INTERVAL_MAX);
+                        }
                     }
                 }
             }
@@ -140,12 +166,32 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                             refusedPermissionDevices.add(device.getDeviceId());
                         }
 
+                        usbDiscoveryMetrics.onFailed(device.getDeviceId());
+
                         readerScanner.resume();
                     }
                 } else {
                     Log.d(TAG, "Did not find any device");
                 }
 
+            } else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
+                UsbDevice device = (UsbDevice) intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+
+                Log.d(TAG, "Usb device attached: " + (device != null ? device.getDeviceName() : null));
+
+                usbDiscoveryMetrics.onAttach(device != null ? device.getDeviceId() : -1);
+
+                if (device != null) {
+                    synchronized (AbstractBackgroundUsbService.this) {
+                        // a newly attached device, so ask for permission again
+                        requestPermissionDevices.remove(device.getDeviceId());
+                        refusedPermissionDevices.remove(device.getDeviceId());
+                    }
+                }
+
+                if (isDetectUSBDevice()) {
+                    readerScanner.resume();
+                }
             }
         }
     };
@@ -195,6 +241,12 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
 
                 Log.d(TAG, "Opened reader " + name);
 
+                readerSessionCache.setAtrClassifier(createAtrClassifier(reader.getReaderName()));
+
+                usbDiscoveryMetrics.onOpened(params[0].getDeviceId());
+
+                Log.d(TAG, usbDiscoveryMetrics.toString());
+
                 startReceivingUsbDeviceDetachBroadcasts();
 
                 setNfcReaderStatus(NfcReader.READER_STATUS_OK, null);
@@ -231,6 +283,8 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                     openDevices.remove(params[0].getDeviceId());
                 }
 
+                usbDiscoveryMetrics.onFailed(params[0].getDeviceId());
+
                 result = e;
 
                 startDetectingReader();
@@ -327,6 +381,8 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
     protected PendingIntent mPermissionIntent;
 
     private Scanner readerScanner;
+    protected final UsbDiscoveryMetrics usbDiscoveryMetrics = new UsbDiscoveryMetrics();
+    protected final ReaderSessionCache readerSessionCache = new ReaderSessionCache();
     private boolean scanningForReader = false;
 
     private boolean recievingDetachBroadcasts = false;
@@ -337,6 +393,9 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
     private Set<Integer> requestPermissionDevices = new HashSet<Integer>();
     private Set<Integer> openDevices = new HashSet<Integer>();
 
+    // one worker per slot, so that a slow tag on one slot does not hold back the other slots
+    private final ConcurrentMap<Integer, ExecutorService> slotExecutors = new ConcurrentHashMap<Integer, ExecutorService>();
+
     private IAcr122UBinder acr122Binder;
     private IAcr1222LBinder acr1222Binder;
     private IAcr1251UBinder acr1251Binder;
@@ -369,11 +428,26 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
     protected boolean detectUSBDevices() {
         Log.d(TAG, "Detecing USB devices..");
 
-        for (UsbDevice device : mManager.getDeviceList().values()) {
+        long time = System.nanoTime();
+        long cpuTime = Debug.threadCpuTimeNanos();
+        boolean detected = false;
+        try {
+            detected = detectUSBDevices(mManager.getDeviceList().values());
+
+            return detected;
+        } finally {
+            usbDiscoveryMetrics.onScan(System.nanoTime() - time, cpuTime != -1 ? Debug.threadCpuTimeNanos() - cpuTime : -1, !detected);
+        }
+    }
+
+    private boolean detectUSBDevices(Collection<UsbDevice> devices) {
+        for (UsbDevice device : devices) {
             if (reader.isSupported(device)) {
                 //askingForPermission = true;
 
                 Integer deviceId = device.getDeviceId();
+
+                usbDiscoveryMetrics.onDetected(deviceId);
                 synchronized (this) {
                     if (openDevices.contains(deviceId)) {
                         Log.d(TAG, "Device " + deviceId + " is already open");
@@ -414,6 +488,36 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
         return detectReader;
     }
 
+    public boolean isUsbFallbackPoll() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+
+        return prefs.getBoolean(PREFERENCE_USB_FALLBACK_POLL, true);
+    }
+
+    public UsbDiscoveryMetrics getUsbDiscoveryMetrics() {
+        return usbDiscoveryMetrics;
+    }
+
+    @Override
+    public void addMetrics(Bundle bundle) {
+        super.addMetrics(bundle);
+
+        synchronized (usbDiscoveryMetrics) {
+            bundle.putLong(NfcMetrics.KEY_USB_ATTACH_EVENTS, usbDiscoveryMetrics.getAttachEvents());
+            bundle.putLong(NfcMetrics.KEY_USB_SCANS, usbDiscoveryMetrics.getScans());
+            bundle.putLong(NfcMetrics.KEY_USB_IDLE_SCANS, usbDiscoveryMetrics.getIdleScans());
+            bundle.putLong(NfcMetrics.KEY_USB_IDLE_CPU_TIME, usbDiscoveryMetrics.getIdleCpuTime());
+            bundle.putLongArray(NfcMetrics.KEY_USB_READER_OPEN_LATENCY, usbDiscoveryMetrics.getReaderOpenLatency());
+        }
+    }
+
+    @Override
+    public void resetMetrics() {
+        super.resetMetrics();
+
+        usbDiscoveryMetrics.reset();
+    }
+
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -441,6 +545,8 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
 
         // Initialize reader
         reader = new ReaderWrapper(mManager);
+        reader.setTapMetrics(tapMetrics);
+        reader.setTraceRecorder(apduTraceRecorder);
 
 
         reader.setOnStateChangeListener(new OnStateChangeListener() {
@@ -479,16 +585,17 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
         readerScanner = new Scanner(this);
     }
 
-    private class InitTagTask extends AsyncTask<Integer, Void, Exception> {
+    private class InitTagTask implements Runnable {
 
+        private final int slotNumber;
 
-        @Override
-        protected Exception doInBackground(Integer... params) {
-
-            Exception result = null;
-
-            int slotNumber = params[0];
+        public InitTagTask(int slotNumber) {
+            this.slotNumber = slotNumber;
+        }
 
+        @Override
+        public void run() {
+            tapMetrics.startTap(NfcMetrics.PHASE_POWER);
             try {
                 //Log.i(TAG, "Init tag at slot " + slotNumber);
 
@@ -499,16 +606,13 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                 if (atr == null) {
                     Log.d(TAG, "No ATR, ignoring");
 
-                    return null;
-                }
-                final TagType tagType;
-                if (atr != null) {
-                    tagType = ServiceUtil.identifyTagType(reader.getReaderName(), atr);
-                } else {
-                    tagType = TagType.UNKNOWN;
+                    return;
                 }
+                tapMetrics.phase(NfcMetrics.PHASE_IDENTIFY);
 
-                Log.d(TAG, "Tag inited as " + tagType + " for ATR " + Utils.toHexString(atr));
+                final TagType tagType = readerSessionCache.getTagType(reader.getReaderName(), slotNumber, atr);
+
+                Log.d(TAG, "Tag inited as " + tagType + " for ATR " + Utils.toHexString(atr) + " in slot " + slotNumber);
 
                 handleTagInit(slotNumber, atr, tagType);
             } catch (RemovedCardException e) {
@@ -517,23 +621,112 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                 Log.w(TAG, "Problem initiating tag", e);
 
                 ServiceUtil.sendTechBroadcast(AbstractBackgroundUsbService.this);
+            } finally {
+                tapMetrics.endTap();
             }
+        }
+    }
 
-            return result;
+    private class TagAbsentTask implements Runnable {
+
+        private final int slotNumber;
+
+        public TagAbsentTask(int slotNumber) {
+            this.slotNumber = slotNumber;
         }
 
         @Override
-        protected void onPostExecute(Exception result) {
-            /*
-             * Intent intent = new Intent();
-             * intent.setAction("de.vogella.android.mybroadcast");
-             * sendBroadcast(intent);
-             */
+        public void run() {
+            store.removeItem(slotNumber);
+
+            if (!deliverTagLeftField(slotNumber)) {
+                Intent intent = new Intent();
+                intent.setAction(NfcTag.ACTION_TAG_LEFT_FIELD);
+                intent.putExtra(NfcTag.EXTRA_TAG_SERVICE_HANDLE, slotNumber);
+                sendBroadcast(intent);
+            }
+
+            setNdefOperations(slotNumber, null);
+        }
+    }
+
+    protected ExecutorService getSlotExecutor(final int slot) {
+        ExecutorService executor = slotExecutors.get(slot);
+        if (executor == null) {
+            ExecutorService created = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "nfc-slot-" + slot);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor = slotExecutors.putIfAbsent(slot, created);
+            if (executor == null) {
+                executor = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return executor;
+    }
+
+    private void executeInSlot(int slot, Runnable runnable) {
+        try {
+            getSlotExecutor(slot).execute(runnable);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Slot " + slot + " is shut down, ignore", e);
+        }
+    }
+
+    private void shutdownSlotExecutors() {
+        for (ExecutorService executor : slotExecutors.values()) {
+            executor.shutdownNow();
         }
+        slotExecutors.clear();
     }
 
     public abstract void handleTagInit(int slotNumber, byte[] atr, TagType tagType) throws ReaderException;
 
+    /**
+     * Set the protocol for the card in a slot, unless the card already runs one of the preferred protocols.
+     *
+     * @param slotNumber         slot number
+     * @param preferredProtocols preferred protocols mask
+     * @return the active protocol
+     * @throws ReaderException on reader problem
+     */
+
+    protected int negotiateProtocol(int slotNumber, int preferredProtocols) throws ReaderException {
+        if (reader.getState(slotNumber) == Reader.CARD_SPECIFIC) {
+            int protocol = reader.getProtocol(slotNumber);
+            if ((protocol & preferredProtocols) != 0) {
+                readerSessionCache.onSkippedNegotiation();
+
+                return protocol;
+            }
+        }
+
+        readerSessionCache.onNegotiation();
+
+        return reader.setProtocol(slotNumber, preferredProtocols);
+    }
+
+    /**
+     * Create the ATR classifier for a reader. Override to add card products.
+     *
+     * @param readerName reader name
+     * @return classifier
+     */
+
+    protected AtrClassifier createAtrClassifier(String readerName) {
+        return AtrClassifier.newInstance(readerName);
+    }
+
+    public ReaderSessionCache getReaderSessionCache() {
+        return readerSessionCache;
+    }
+
     public void onCloseACR(boolean success) {
         Log.i(TAG, "onCloseACR");
 
@@ -547,22 +740,18 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
     public void onTagPresent(int slot) {
         //Log.d(TAG, "onTagPresent");
 
-        operations = null;
+        reader.markTap(slot);
+
+        setNdefOperations(slot, null);
 
-        new InitTagTask().execute(slot);
+        executeInSlot(slot, new InitTagTask(slot));
     }
 
     public void onTagAbsent(int slot) {
         Log.i(TAG, "onTagAbsent");
 
-        store.removeItem(slot);
-
-        Intent intent = new Intent();
-        intent.setAction(NfcTag.ACTION_TAG_LEFT_FIELD);
-        intent.putExtra(NfcTag.EXTRA_TAG_SERVICE_HANDLE, slot);
-        sendBroadcast(intent);
-
-        operations = null;
+        // via the slot worker, so that the tag leaves the field after any pending init for the same slot
+        executeInSlot(slot, new TagAbsentTask(slot));
     }
 
     private void startReceivingPermissionBroadcasts(boolean delay) {
@@ -575,6 +764,7 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
                 // register receiver
                 IntentFilter filter = new IntentFilter();
                 filter.addAction(ACTION_USB_PERMISSION);
+                filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
                 registerReceiver(usbDevicePermissionReceiver, filter);
 
                 if (!delay) {
@@ -692,6 +882,8 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
             }
         }
 
+        shutdownSlotExecutors();
+
         nfcReaderServiceListener.onServiceStopped();
 
         Log.i(TAG, "Service destroyed");
@@ -706,8 +898,24 @@ public abstract class AbstractBackgroundUsbService extends AbstractService {
         }
     }
 
+    /**
+     * Get the NDEF operations of the current tag.
+     *
+     * @return NDEF operations of the tag in the lowest slot, or null if none
+     * @deprecated readers with multiple slots keep NDEF operations per slot, use {@linkplain #getNdefOperations(int)}
+     */
+
+    @Deprecated
     public NdefOperations getNdefOperations() {
-        return operations;
+        NdefOperations result = null;
+        int lowest = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, AbstractNdefOperations> entry : operations.entrySet()) {
+            if (entry.getKey() < lowest) {
+                lowest = entry.getKey();
+                result = entry.getValue();
+            }
+        }
+        return result;
     }
 
     public ACRCommands getReaderCommands() {
@@ -9,12 +9,21 @@ import android.content.SharedPreferences;
 import android.nfc.NdefMessage;
 import android.nfc.tech.MifareUltralight;
 import android.os.Binder;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Message;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.acs.smartcard.ReaderException;
 import com.github.skjolber.nfc.hce.INFcTagBinder;
+import com.github.skjolber.nfc.hce.INfcMetricsBinder;
+import com.github.skjolber.nfc.hce.INfcNdefStreamBinder;
+import com.github.skjolber.nfc.hce.INfcTagBatchBinder;
+import com.github.skjolber.nfc.hce.INfcTagListenerRegistryBinder;
+import com.github.skjolber.nfc.hce.resolve.TagContentCache;
+import com.github.skjolber.nfc.hce.resolve.TagProxy;
 import com.github.skjolber.nfc.hce.resolve.TagProxyStore;
 import com.github.skjolber.nfc.hce.tech.TagTechnology;
 import com.github.skjolber.nfc.hce.tech.mifare.MifareClassicAdapter;
@@ -27,8 +36,11 @@ import com.github.skjolber.nfc.hce.tech.mifare.NdefAdapter;
 import com.github.skjolber.nfc.hce.tech.mifare.NdefFormattableAdapter;
 import com.github.skjolber.nfc.hce.tech.mifare.NfcAAdapter;
 import com.github.skjolber.nfc.hce.tech.mifare.PN532NfcAAdapter;
+import com.github.skjolber.nfc.NfcMetrics;
 import com.github.skjolber.nfc.NfcReader;
 import com.github.skjolber.nfc.NfcService;
+import com.github.skjolber.nfc.NfcTag;
+import com.github.skjolber.nfc.NfcTagDescriptor;
 import com.github.skjolber.nfc.command.Utils;
 import com.github.skjolber.nfc.messages.NfcReaderServiceListener;
 import com.github.skjolber.nfc.service.desfire.DesfireReader;
@@ -41,6 +53,7 @@ import org.nfctools.mf.MfConstants;
 import org.nfctools.mf.MfException;
 import org.nfctools.mf.block.MfBlock;
 import org.nfctools.mf.classic.ClassicHandler;
+import org.nfctools.mf.classic.KeyDictionary;
 import org.nfctools.mf.classic.MfClassicConstants;
 import org.nfctools.mf.classic.MfClassicNdefOperations;
 import org.nfctools.mf.classic.MfClassicReaderWriter;
@@ -56,31 +69,105 @@ import org.nfctools.mf.ul.UltralightHandler;
 import org.nfctools.mf.ul.ntag.NfcNtag;
 import org.nfctools.mf.ul.ntag.NfcNtagVersion;
 import org.nfctools.spi.acs.AcrMfClassicReaderWriter;
+import org.nfctools.spi.acs.AcrMfUlNTAGReaderWriter;
 import org.nfctools.spi.acs.AcrMfUlReaderWriter;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 public abstract class AbstractService extends Service {
 
     public static final String PREFERENCE_AUTO_READ_NDEF = "preference_auto_read_ndef";
+    public static final String PREFERENCE_LAZY_READ_NDEF = "preference_lazy_read_ndef";
+    public static final String PREFERENCE_CACHE_TAG_CONTENT = "preference_cache_tag_content";
     public static final String PREFERENCE_NTAG21X_ULTRALIGHT = "preference_ntag21x_ultralights";
     public static final String PREFERENCE_UID_MODE = "preference_uid_mode";
+    public static final String PREFERENCE_DIRECT_TAG_DELIVERY = "preference_direct_tag_delivery";
+    public static final String PREFERENCE_TAP_METRICS = "preference_tap_metrics";
+    public static final String PREFERENCE_APDU_TRACE = "preference_apdu_trace";
 
     private static final String TAG = AbstractService.class.getName();
 
+    /**
+     * Periodically logs the tap metrics, if enabled and there were new taps since the last dump.
+     */
+
+    private static class MetricsDumper extends Handler {
+
+        private static final long METRICS_DUMP_INTERVAL = 60000;
+
+        private WeakReference<AbstractService> serviceReference;
+
+        private long taps;
+
+        public MetricsDumper(AbstractService service) {
+            this.serviceReference = new WeakReference<AbstractService>(service);
+        }
+
+        void resume() {
+            synchronized (this) {
+                if (!hasMessages(0)) {
+                    sendEmptyMessageDelayed(0, METRICS_DUMP_INTERVAL);
+                }
+            }
+        }
+
+        void pause() {
+            synchronized (this) {
+                removeMessages(0);
+            }
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            AbstractService service = serviceReference.get();
+            if (service != null) {
+                TapMetrics tapMetrics = service.getTapMetrics();
+                if (tapMetrics.isEnabled()) {
+                    long count = tapMetrics.getTaps();
+                    if (count != taps) {
+                        taps = count;
+
+                        TagContentCache tagContentCache = service.getTagContentCache();
+                        Log.i(TAG, tapMetrics + ", content cache hits=" + tagContentCache.getHits() + ", misses=" + tagContentCache.getMisses());
+                    }
+
+                    synchronized (this) {
+                        sendEmptyMessageDelayed(0, METRICS_DUMP_INTERVAL);
+                    }
+                }
+            }
+        }
+    }
+
     protected MifareUltralightTagFactory mifareUltralightTagFactory = new MifareUltralightTagFactory();
     protected MifareClassicTagFactory mifareClassicTagFactory = new MifareClassicTagFactory();
     protected MifareDesfireTagFactory mifareDesfireTagFactory = new MifareDesfireTagFactory();
 
     protected boolean readNDEF;
+    protected boolean lazyReadNDEF;
+    protected boolean cacheTagContent;
     protected boolean ntag21xUltralights;
     protected boolean uidMode;
+    protected boolean directTagDelivery;
+
+    protected final TapMetrics tapMetrics = new TapMetrics();
+    protected final ApduTraceRecorder apduTraceRecorder = new ApduTraceRecorder();
+    private MetricsDumper metricsDumper;
 
     protected TagProxyStore store = new TagProxyStore();
+    protected KeyDictionary keyDictionary = new KeyDictionary();
+    protected TagContentCache tagContentCache = new TagContentCache();
     protected INFcTagBinder binder;
+    protected INfcTagListenerRegistryBinder tagListeners;
+    protected INfcNdefStreamBinder ndefStreamBinder;
+    protected INfcTagBatchBinder tagBatchBinder;
+    protected INfcMetricsBinder metricsBinder;
     protected boolean started = false;
 
     protected boolean readerOpen = false;
@@ -90,7 +177,8 @@ public abstract class AbstractService extends Service {
     protected int nfcReaderStatusCode = -1;
     protected String nfcReaderStatusMessage = null;
 
-    protected AbstractNdefOperations operations;
+    // NDEF operations per slot, so that multi-slot readers do not share session state
+    protected final ConcurrentMap<Integer, AbstractNdefOperations> operations = new ConcurrentHashMap<Integer, AbstractNdefOperations>();
 
     private final BroadcastReceiver statusReceiver = new BroadcastReceiver() {
 
@@ -123,14 +211,87 @@ public abstract class AbstractService extends Service {
         startReceivingStatusBroadcasts();
 
         this.binder = new INFcTagBinder(store); // new INFcTagBinder(store);
+        this.tagListeners = new INfcTagListenerRegistryBinder(binder);
+        this.ndefStreamBinder = new INfcNdefStreamBinder(binder);
+        this.tagBatchBinder = new INfcTagBatchBinder(binder);
+        this.metricsBinder = new INfcMetricsBinder(this);
+        this.metricsDumper = new MetricsDumper(this);
 
         refreshPreferences();
     }
 
     public void refreshPreferences() {
         readNDEF = isReadNDEF();
+        lazyReadNDEF = isLazyReadNDEF();
+        cacheTagContent = isCacheTagContent();
         ntag21xUltralights = isNTAG21x();
         uidMode = isUIDMode();
+        directTagDelivery = isDirectTagDelivery();
+
+        setTapMetricsEnabled(isTapMetrics());
+        apduTraceRecorder.setEnabled(isApduTrace());
+    }
+
+    private boolean isApduTrace() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
+
+        return prefs.getBoolean(PREFERENCE_APDU_TRACE, false);
+    }
+
+    public ApduTraceRecorder getApduTraceRecorder() {
+        return apduTraceRecorder;
+    }
+
+    private boolean isTapMetrics() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
+
+        return prefs.getBoolean(PREFERENCE_TAP_METRICS, false);
+    }
+
+    public TapMetrics getTapMetrics() {
+        return tapMetrics;
+    }
+
+    /**
+     * Start or stop recording tap metrics, and the periodic dump to the log.
+     *
+     * @param enabled true for recording
+     */
+
+    public void setTapMetricsEnabled(boolean enabled) {
+        tapMetrics.setEnabled(enabled);
+
+        if (enabled) {
+            metricsDumper.resume();
+        } else {
+            metricsDumper.pause();
+        }
+    }
+
+    /**
+     * Add metrics specific to the reader or service, in addition to the tap metrics.
+     *
+     * @param bundle metrics, keyed by the NfcMetrics constants
+     */
+
+    public void addMetrics(Bundle bundle) {
+        bundle.putLong(NfcMetrics.KEY_CONTENT_CACHE_HITS, tagContentCache.getHits());
+        bundle.putLong(NfcMetrics.KEY_CONTENT_CACHE_MISSES, tagContentCache.getMisses());
+    }
+
+    /**
+     * Reset the tap metrics and any metrics added by {@linkplain #addMetrics(Bundle)}.
+     */
+
+    public void resetMetrics() {
+        tapMetrics.reset();
+        tagContentCache.resetCounters();
+    }
+
+    private boolean isDirectTagDelivery() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
+
+        return prefs.getBoolean(PREFERENCE_DIRECT_TAG_DELIVERY, false);
     }
 
     private boolean isReadNDEF() {
@@ -139,6 +300,18 @@ public abstract class AbstractService extends Service {
         return prefs.getBoolean(PREFERENCE_AUTO_READ_NDEF, false);
     }
 
+    private boolean isLazyReadNDEF() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
+
+        return prefs.getBoolean(PREFERENCE_LAZY_READ_NDEF, false);
+    }
+
+    private boolean isCacheTagContent() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
+
+        return prefs.getBoolean(PREFERENCE_CACHE_TAG_CONTENT, false);
+    }
+
     private boolean isNTAG21x() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(AbstractService.this);
 
@@ -195,9 +368,11 @@ public abstract class AbstractService extends Service {
                 Log.d(TAG, "Read tag UID " + Utils.toHexString(uid));
             }
 
-            Intent intent = mifareDesfireTagFactory.getTag(serviceHandle, slotNumber, atr, null, uid, true, TechnologyType.getHistoricalBytes(atr), binder);
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_HOST_CARD_EMULATION, 0, technologies, uid, atr, null, -1, false, null)) {
+                Intent intent = mifareDesfireTagFactory.getTag(serviceHandle, slotNumber, atr, null, uid, true, TechnologyType.getHistoricalBytes(atr), binder);
 
-            sendBroadcast(intent);
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -220,11 +395,13 @@ public abstract class AbstractService extends Service {
 
             int serviceHandle = store.add(slotNumber, technologies);
 
-            Intent intent = mifareDesfireTagFactory.getTag(serviceHandle, slotNumber, atr, null, uid, false, TechnologyType.getHistoricalBytes(atr), binder);
-
             Log.i(TAG, "Tag technologies " + technologies);
 
-            sendBroadcast(intent);
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_MIFARE_DESFIRE, 0, technologies, uid, atr, null, -1, false, null)) {
+                Intent intent = mifareDesfireTagFactory.getTag(serviceHandle, slotNumber, atr, null, uid, false, TechnologyType.getHistoricalBytes(atr), binder);
+
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -254,7 +431,9 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout);
+            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout, keyDictionary);
+
+            tapMetrics.phase(NfcMetrics.PHASE_CAPABILITY);
 
             byte[] uid;
             try {
@@ -282,7 +461,10 @@ public abstract class AbstractService extends Service {
                 try {
                     operations = createMifareClassicNdefOperations(readerWriter);
 
-                    if (operations.isFormatted()) {
+                    // in lazy mode, the message is read on the first ndefRead(..)
+                    if (operations.isFormatted() && !lazyReadNDEF) {
+                        tapMetrics.phase(NfcMetrics.PHASE_NDEF);
+
                         byte[] bytes = operations.readNdefMessageBytes();
                         try {
                             ndefMessage = new NdefMessage(bytes);
@@ -325,11 +507,15 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            int serviceHandle = store.add(slotNumber, technologies);
+            int serviceHandle = store.add(slotNumber, technologies, ndefMessage);
+            setNdefOperations(slotNumber, operations);
 
-            Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, operations != null && operations.isFormatted(), writable, atr, binder);
+            boolean formatted = operations != null && operations.isFormatted();
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_MIFARE_CLASSIC, size, technologies, uid, atr, ndefMessage, maxNdefSize, formatted, writable)) {
+                Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, formatted, writable, atr, binder);
 
-            sendBroadcast(intent);
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -357,7 +543,7 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout);
+            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout, keyDictionary);
 
             byte[] uid;
             try {
@@ -386,7 +572,8 @@ public abstract class AbstractService extends Service {
                 try {
                     operations = createMifareClassicNdefOperations(readerWriter);
 
-                    if (operations.isFormatted()) {
+                    // in lazy mode, the message is read on the first ndefRead(..)
+                    if (operations.isFormatted() && !lazyReadNDEF) {
                         byte[] bytes = operations.readNdefMessageBytes();
                         try {
                             ndefMessage = new NdefMessage(bytes);
@@ -431,11 +618,15 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            int serviceHandle = store.add(slotNumber, technologies);
+            int serviceHandle = store.add(slotNumber, technologies, ndefMessage);
+            setNdefOperations(slotNumber, operations);
 
-            Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, operations != null && operations.isFormatted(), writable, atr, binder);
+            boolean formatted = operations != null && operations.isFormatted();
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_MIFARE_CLASSIC, size, technologies, uid, atr, ndefMessage, maxNdefSize, formatted, writable)) {
+                Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, formatted, writable, atr, binder);
 
-            sendBroadcast(intent);
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -443,6 +634,18 @@ public abstract class AbstractService extends Service {
         }
     }
 
+    public AbstractNdefOperations getNdefOperations(int slotNumber) {
+        return operations.get(slotNumber);
+    }
+
+    protected void setNdefOperations(int slotNumber, AbstractNdefOperations ndefOperations) {
+        if (ndefOperations != null) {
+            operations.put(slotNumber, ndefOperations);
+        } else {
+            operations.remove(slotNumber);
+        }
+    }
+
     protected static MfClassicNdefOperations createMifareClassicNdefOperations(MfClassicReaderWriter readerWriter) {
 
         boolean formatted = false;
@@ -501,6 +704,21 @@ public abstract class AbstractService extends Service {
         return new Type2NdefOperations(memoryLayout, readerWriter, formatted, writable, uid);
     }
 
+    private static byte[] getFingerprint(MfBlock[] blocks) {
+        int length = 0;
+        for (MfBlock block : blocks) {
+            length += block.getData().length;
+        }
+        byte[] fingerprint = new byte[length];
+        int offset = 0;
+        for (MfBlock block : blocks) {
+            byte[] data = block.getData();
+            System.arraycopy(data, 0, fingerprint, offset, data.length);
+            offset += data.length;
+        }
+        return fingerprint;
+    }
+
     private boolean isLocked(MfUlReaderWriter readerWriter, MemoryLayout memoryLayout) throws IOException, ReaderException {
         for (LockPage lockPage : memoryLayout.getLockPages()) {
             MfBlock[] block = readerWriter.readBlock(lockPage.getPage(), 1);
@@ -534,7 +752,7 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout);
+            MfClassicReaderWriter readerWriter = new AcrMfClassicReaderWriter(acsTag, memoryLayout, keyDictionary);
 
             byte[] uid;
             try {
@@ -563,7 +781,8 @@ public abstract class AbstractService extends Service {
                 try {
                     operations = createMifareClassicNdefOperations(readerWriter);
 
-                    if (operations.isFormatted()) {
+                    // in lazy mode, the message is read on the first ndefRead(..)
+                    if (operations.isFormatted() && !lazyReadNDEF) {
                         byte[] bytes = operations.readNdefMessageBytes();
                         try {
                             ndefMessage = new NdefMessage(bytes);
@@ -608,11 +827,15 @@ public abstract class AbstractService extends Service {
                 }
             }
 
-            int serviceHandle = store.add(slotNumber, technologies);
+            int serviceHandle = store.add(slotNumber, technologies, ndefMessage);
+            setNdefOperations(slotNumber, operations);
 
-            Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, operations != null && operations.isFormatted(), writable, atr, binder);
+            boolean formatted = operations != null && operations.isFormatted();
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_MIFARE_CLASSIC, size, technologies, uid, atr, ndefMessage, maxNdefSize, formatted, writable)) {
+                Intent intent = mifareClassicTagFactory.getTag(serviceHandle, slotNumber, type, size, uid, maxNdefSize, ndefMessage, formatted, writable, atr, binder);
 
-            sendBroadcast(intent);
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -629,12 +852,15 @@ public abstract class AbstractService extends Service {
 
         Boolean canReadBlocks = null;
         try {
+            tapMetrics.phase(NfcMetrics.PHASE_IDENTIFY);
+
             // https://github.com/marshmellow42/proxmark3/commit/4745afb647c96a80f3f088f2afebf9686499680d
 
             MfUlReaderWriter readerWriter;
 
             Integer version = null;
             MfBlock[] initBlocks = null;
+            NfcNtag fastReadNtag = null; // set if GET_VERSION succeeded, so FAST_READ is available
             if (ntag21xUltralights) {
                 if (!(readerName.contains("1255") || readerName.contains("1252"))) {
                     // detect via get version
@@ -646,6 +872,8 @@ public abstract class AbstractService extends Service {
                         ntagVersion = new NfcNtagVersion(ntag.getVersion());
                         version = ntagVersion.getType();
 
+                        fastReadNtag = ntag;
+
                         //Log.d(TAG, "Detected version " + version);
                     } catch (MfException e) {
                         Log.d(TAG, "No version for Ultralight tag - non NTAG 21x-tag?");
@@ -685,8 +913,11 @@ public abstract class AbstractService extends Service {
             // init reader finally
             if (version != null) {
                 if (version > 0) {
-                    //readerWriter = new AcrMfUlNTAGReaderWriter(acsTag, new NfcNtag(reader, slotNumber), version);
-                    readerWriter = new AcrMfUlReaderWriter(acsTag);
+                    if (fastReadNtag != null) {
+                        readerWriter = new AcrMfUlNTAGReaderWriter(acsTag, fastReadNtag, version);
+                    } else {
+                        readerWriter = new AcrMfUlReaderWriter(acsTag);
+                    }
 
                     tagType = TagType.MIFARE_ULTRALIGHT_C;
                 } else {
@@ -696,6 +927,8 @@ public abstract class AbstractService extends Service {
                 readerWriter = new AcrMfUlReaderWriter(acsTag);
             }
 
+            tapMetrics.phase(NfcMetrics.PHASE_CAPABILITY);
+
             if (canReadBlocks == null || canReadBlocks) {
                 try {
                     if (capabilityBlock == null) {
@@ -736,10 +969,46 @@ public abstract class AbstractService extends Service {
 
             if (canReadBlocks && readNDEF && version != null) {
                 try {
-                    operations = createMifareUltralightNdefOperations(initBlocks, readerWriter, uid, version);
+                    // the init blocks (UID, lock bytes, capability container and first data page) validate the cache
+                    byte[] fingerprint = null;
+                    TagContentCache.Entry entry = null;
+                    if (cacheTagContent) {
+                        fingerprint = getFingerprint(initBlocks);
+
+                        entry = tagContentCache.get(uid, fingerprint);
+                    }
 
-                    if (operations.isFormatted()) {
-                        byte[] ndefBytes = operations.readNdefMessageBytes();
+                    byte[] ndefBytes = null;
+                    if (entry != null) {
+                        Log.d(TAG, "Tag content cache hit for " + Utils.toHexString(uid));
+
+                        operations = new Type2NdefOperations(MemoryLayout.getUltralightMemoryLayout(version), readerWriter, entry.isFormatted(), entry.isWritable(), uid);
+
+                        ndefBytes = entry.getNdefMessage();
+                        if (ndefBytes == null && operations.isFormatted() && !lazyReadNDEF) {
+                            // entry from a lazy tap, fill it in now
+                            tapMetrics.phase(NfcMetrics.PHASE_NDEF);
+
+                            ndefBytes = operations.readNdefMessageBytes();
+
+                            tagContentCache.setNdefMessage(uid, ndefBytes);
+                        }
+                    } else {
+                        operations = createMifareUltralightNdefOperations(initBlocks, readerWriter, uid, version);
+
+                        // in lazy mode, the message is read on the first ndefRead(..)
+                        if (operations.isFormatted() && !lazyReadNDEF) {
+                            tapMetrics.phase(NfcMetrics.PHASE_NDEF);
+
+                            ndefBytes = operations.readNdefMessageBytes();
+                        }
+
+                        if (fingerprint != null) {
+                            tagContentCache.put(uid, new TagContentCache.Entry(fingerprint, operations.isFormatted(), operations.isWritable(), ndefBytes));
+                        }
+                    }
+
+                    if (ndefBytes != null) {
                         try {
                             ndefMessage = new NdefMessage(ndefBytes);
                         } catch (Exception e) {
@@ -785,17 +1054,28 @@ public abstract class AbstractService extends Service {
 
             if (operations != null) {
                 if (operations.isFormatted()) {
-                    technologies.add(new NdefAdapter(slotNumber, operations));
+                    technologies.add(new NdefAdapter(slotNumber, operations, tagContentCache, uid));
                 } else {
-                    technologies.add(new NdefFormattableAdapter(slotNumber, operations));
+                    technologies.add(new NdefFormattableAdapter(slotNumber, operations, tagContentCache, uid));
                 }
             }
 
-            int serviceHandle = store.add(slotNumber, technologies);
+            int serviceHandle = store.add(slotNumber, technologies, ndefMessage);
+            setNdefOperations(slotNumber, operations);
+
+            if (cacheTagContent) {
+                TagProxy proxy = store.get(serviceHandle);
+                if (proxy != null) {
+                    proxy.setTagContentCache(tagContentCache, uid);
+                }
+            }
 
-            Intent intent = mifareUltralightTagFactory.getTag(serviceHandle, slotNumber, type, version, uid, maxNdefSize, ndefMessage, operations != null && operations.isFormatted(), writable, atr, binder);
+            boolean formatted = operations != null && operations.isFormatted();
+            if (!deliverTag(serviceHandle, slotNumber, NfcTagDescriptor.TYPE_MIFARE_ULTRALIGHT, version != null ? version : 0, technologies, uid, atr, ndefMessage, maxNdefSize, formatted, writable)) {
+                Intent intent = mifareUltralightTagFactory.getTag(serviceHandle, slotNumber, type, version, uid, maxNdefSize, ndefMessage, formatted, writable, atr, binder);
 
-            sendBroadcast(intent);
+                sendBroadcast(intent);
+            }
         } catch (Exception e) {
             Log.d(TAG, "Problem reading from tag", e);
 
@@ -806,6 +1086,14 @@ public abstract class AbstractService extends Service {
 
     public abstract Object getReaderCommands();
 
+    public KeyDictionary getKeyDictionary() {
+        return keyDictionary;
+    }
+
+    public TagContentCache getTagContentCache() {
+        return tagContentCache;
+    }
+
     protected void startReceivingStatusBroadcasts() {
         synchronized (this) {
             if (!recieveStatusBroadcasts) {
@@ -839,10 +1127,82 @@ public abstract class AbstractService extends Service {
         }
     }
 
+    /**
+     * Deliver a tag to the bound tag listeners, if any.
+     *
+     * @return true if the tag was delivered directly and so the tag broadcast is not necessary
+     */
+
+    protected boolean deliverTag(int serviceHandle, int slotNumber, int type, int subtype, List<TagTechnology> technologies, byte[] uid, byte[] atr, NdefMessage ndefMessage, int maxNdefSize, boolean formatted, Boolean writable) {
+        // the tag intent, if any, is broadcast right after
+        tapMetrics.phase(NfcMetrics.PHASE_BROADCAST);
+
+        if (!tagListeners.hasListeners()) {
+            return false;
+        }
+
+        int[] techList = new int[technologies.size()];
+        for (int i = 0; i < techList.length; i++) {
+            techList[i] = technologies.get(i).getTagTechnology();
+        }
+
+        int ndefMode;
+        if (!formatted) {
+            ndefMode = NfcTagDescriptor.NDEF_MODE_NONE;
+        } else if (writable == null) {
+            ndefMode = NfcTagDescriptor.NDEF_MODE_UNKNOWN;
+        } else if (writable) {
+            ndefMode = NfcTagDescriptor.NDEF_MODE_READ_WRITE;
+        } else {
+            ndefMode = NfcTagDescriptor.NDEF_MODE_READ_ONLY;
+        }
+
+        byte[] ndefBytes = ndefMessage != null ? ndefMessage.toByteArray() : null;
+
+        NfcTagDescriptor descriptor = new NfcTagDescriptor(serviceHandle, slotNumber, type, subtype, techList, uid, atr, ndefMode, maxNdefSize, ndefBytes);
+
+        int delivered = tagListeners.onTagDiscovered(descriptor.toByteArray());
+
+        return directTagDelivery && delivered > 0;
+    }
+
+    /**
+     * Deliver tag left field to the bound tag listeners, if any.
+     *
+     * @return true if delivered directly and so the tag left field broadcast is not necessary
+     */
+
+    protected boolean deliverTagLeftField(int slotNumber) {
+        if (!tagListeners.hasListeners()) {
+            return false;
+        }
+
+        int delivered = tagListeners.onTagLeftField(slotNumber);
+
+        return directTagDelivery && delivered > 0;
+    }
+
+    public INfcTagListenerRegistryBinder getTagListeners() {
+        return tagListeners;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         Log.d(TAG, "Bind for intent " + intent.getAction());
 
+        if (NfcTag.ACTION_BIND_TAG_LISTENER.equals(intent.getAction())) {
+            return tagListeners;
+        }
+        if (NfcTag.ACTION_BIND_NDEF_STREAM.equals(intent.getAction())) {
+            return ndefStreamBinder;
+        }
+        if (NfcTag.ACTION_BIND_TAG_BATCH.equals(intent.getAction())) {
+            return tagBatchBinder;
+        }
+        if (NfcTag.ACTION_BIND_METRICS.equals(intent.getAction())) {
+            return metricsBinder;
+        }
+
         return new Binder();
     }
 
@@ -850,6 +1210,10 @@ public abstract class AbstractService extends Service {
     public void onDestroy() {
         stopReceivingStatusBroadcasts();
 
+        tagListeners.close();
+
+        metricsDumper.pause();
+
         super.onDestroy();
     }
 }
@@ -0,0 +1,183 @@
+package com.github.skjolber.nfc.service;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.nfctools.api.TagType;
+import org.nfctools.utils.NfcUtils;
+
+/**
+ * Table-based identification of the tag type from the (pseudo) ATR, equivalent to
+ * {@linkplain ServiceUtil#identifyTagType(String, byte[])} but with the reader family resolved
+ * once and the card name (bytes 13 and 14 of the PC/SC ATR) looked up by hash.<br>
+ * <br>
+ * New card products can be added via {@linkplain #configure(Properties)}, with keys
+ * <ul>
+ * <li>tagId.&lt;4 hex digits&gt; for card names,</li>
+ * <li>felica.&lt;4 hex digits&gt; for card names in the FeliCa standard (ACR 1252 / 1255 only) and</li>
+ * <li>atr.&lt;hex&gt; for complete ATRs</li>
+ * </ul>
+ * and a {@linkplain TagType} name as value.<br>
+ * <br>
+ * Not thread safe while being configured; thread safe for lookups.
+ */
+
+public class AtrClassifier {
+
+    private static final int STANDARD_FELICA = 0x11;
+
+    /**
+     * Create a classifier for a reader.
+     *
+     * @param readerName reader name
+     * @return new classifier with the default tables for the reader family
+     */
+
+    public static AtrClassifier newInstance(String readerName) {
+        AtrClassifier classifier = new AtrClassifier(readerName);
+
+        // generic
+        classifier.addTagId(0x0001, TagType.MIFARE_CLASSIC_1K);
+        classifier.addTagId(0x0002, TagType.MIFARE_CLASSIC_4K);
+        classifier.addTagId(0x0003, TagType.MIFARE_ULTRALIGHT);
+        classifier.addTagId(0x0026, TagType.MIFARE_MINI);
+        classifier.addTagId(0xF004, TagType.TOPAZ_JEWEL);
+        classifier.addTagId(0xF011, TagType.FELICA_212K);
+        classifier.addTagId(0xF012, TagType.FELICA_424K);
+        classifier.addTagId(0xFF40, TagType.NFCIP);
+        classifier.addTagId(0xFF88, TagType.INFINEON_MIFARE_SLE_1K);
+
+        if (classifier.isPseudoAtr()) {
+            classifier.addReaderTagId(0x0001, TagType.MIFARE_CLASSIC_1K);
+            classifier.addReaderTagId(0x0002, TagType.MIFARE_CLASSIC_4K);
+            classifier.addReaderTagId(0x0003, TagType.MIFARE_ULTRALIGHT);
+            classifier.addReaderTagId(0x0026, TagType.MIFARE_MINI);
+            classifier.addReaderTagId(0x003A, TagType.MIFARE_ULTRALIGHT_C);
+            classifier.addReaderTagId(0x0036, TagType.MIFARE_PLUS_SL1_2k);
+            classifier.addReaderTagId(0x0037, TagType.MIFARE_PLUS_SL1_4k);
+            classifier.addReaderTagId(0x0038, TagType.MIFARE_PLUS_SL2_2k);
+            classifier.addReaderTagId(0x0039, TagType.MIFARE_PLUS_SL2_4k);
+            classifier.addReaderTagId(0x0030, TagType.TOPAZ_JEWEL);
+            classifier.addReaderTagId(0xFF40, TagType.NFCIP);
+            classifier.addReaderTagId(0xFF88, TagType.INFINEON_MIFARE_SLE_1K);
+
+            classifier.addFelicaTagId(0x003B, TagType.FELICA_212K);
+            classifier.addFelicaTagId(0xF012, TagType.FELICA_424K);
+        }
+
+        classifier.addAtr(new byte[]{0x3B, (byte) 0x81, (byte) 0x80, 0x01, (byte) 0x80, (byte) 0x80}, TagType.DESFIRE_EV1);
+        classifier.addAtr(new byte[]{0x3B, (byte) 0x80, (byte) 0x80, 0x01, 0x01}, TagType.ISO_14443_TYPE_B_NO_HISTORICAL_BYTES);
+
+        return classifier;
+    }
+
+    private final String readerName;
+    private final boolean pseudoAtr;
+
+    private final Map<Integer, TagType> tagIds = new HashMap<Integer, TagType>();
+    private final Map<Integer, TagType> readerTagIds = new HashMap<Integer, TagType>();
+    private final Map<Integer, TagType> felicaTagIds = new HashMap<Integer, TagType>();
+    private final Map<ByteBuffer, TagType> atrs = new HashMap<ByteBuffer, TagType>();
+
+    /**
+     * Create a classifier without any table entries.
+     *
+     * @param readerName reader name
+     */
+
+    public AtrClassifier(String readerName) {
+        this.readerName = readerName;
+        this.pseudoAtr = readerName != null && (readerName.contains("1252") || readerName.contains("1255"));
+    }
+
+    public String getReaderName() {
+        return readerName;
+    }
+
+    public boolean isPseudoAtr() {
+        return pseudoAtr;
+    }
+
+    /**
+     * Add a card name for all readers.
+     *
+     * @param tagId   card name
+     * @param tagType tag type
+     */
+
+    public void addTagId(int tagId, TagType tagType) {
+        tagIds.put(tagId, tagType);
+    }
+
+    /**
+     * Add a card name specific to readers with pseudo ATRs, which takes precedence over the card names for all readers.
+     *
+     * @param tagId   card name
+     * @param tagType tag type
+     */
+
+    public void addReaderTagId(int tagId, TagType tagType) {
+        readerTagIds.put(tagId, tagType);
+    }
+
+    public void addFelicaTagId(int tagId, TagType tagType) {
+        felicaTagIds.put(tagId, tagType);
+    }
+
+    public void addAtr(byte[] atr, TagType tagType) {
+        atrs.put(ByteBuffer.wrap(atr.clone()), tagType);
+    }
+
+    public void configure(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            TagType tagType = TagType.valueOf(properties.getProperty(key).trim());
+
+            if (key.startsWith("tagId.")) {
+                addTagId(Integer.parseInt(key.substring(6), 16), tagType);
+            } else if (key.startsWith("felica.")) {
+                addFelicaTagId(Integer.parseInt(key.substring(7), 16), tagType);
+            } else if (key.startsWith("atr.")) {
+                addAtr(NfcUtils.convertASCIIToBin(key.substring(4)), tagType);
+            } else {
+                throw new IllegalArgumentException("Unknown key " + key);
+            }
+        }
+    }
+
+    public TagType identifyTagType(byte[] atr) {
+        if (atr.length >= 15) {
+            int tagId = (atr[13] & 0xff) << 8 | (atr[14] & 0xff);
+
+            TagType tagType = null;
+            if (pseudoAtr) {
+                if (atr[12] == STANDARD_FELICA) {
+                    tagType = felicaTagIds.get(tagId);
+                } else {
+                    tagType = readerTagIds.get(tagId);
+                    if (tagType == null && (atr[13] & 0xFF) == 0xFF) {
+                        // assume android device
+                        return TagType.UNKNOWN;
+                    }
+                }
+            }
+            if (tagType == null) {
+                tagType = tagIds.get(tagId);
+            }
+            if (tagType != null) {
+                return tagType;
+            }
+            return TagType.UNKNOWN;
+        } else if (atr.length >= 11) {
+            // card name not present
+            return TagType.UNKNOWN;
+        }
+
+        TagType tagType = atrs.get(ByteBuffer.wrap(atr));
+        if (tagType != null) {
+            return tagType;
+        }
+        return TagType.UNKNOWN;
+    }
+}
@@ -16,7 +16,7 @@ public class BackgroundUsbService extends AbstractBackgroundUsbService {
     public void handleTagInit(int slotNumber, byte[] atr, TagType tagType) throws ReaderException {
 
         int preferredProtocols = Reader.PROTOCOL_T0 | Reader.PROTOCOL_T1;
-        int protocol = reader.setProtocol(0, preferredProtocols);
+        int protocol = negotiateProtocol(slotNumber, preferredProtocols);
 
         int state = reader.getState(slotNumber);
         if (state != Reader.CARD_SPECIFIC) {
@@ -62,7 +62,7 @@ public class BackgroundUsbService extends AbstractBackgroundUsbService {
         Log.d(TAG, "Handle tag in UID only mode");
 
         int preferredProtocols = Reader.PROTOCOL_T1;
-        int protocol = reader.setProtocol(slotNumber, preferredProtocols);
+        int protocol = negotiateProtocol(slotNumber, preferredProtocols);
 
         if (tagType == TagType.MIFARE_ULTRALIGHT || tagType == TagType.MIFARE_ULTRALIGHT_C) {
             try {
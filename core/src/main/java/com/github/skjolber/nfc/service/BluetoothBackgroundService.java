@@ -17,6 +17,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Bundle;
 import android.util.Log;
 
 import com.acs.bluetooth.Acr1255uj1Reader;
@@ -29,6 +30,7 @@ import com.acs.bluetooth.BluetoothReaderManager;
 import com.acs.bluetooth.BluetoothReaderManager.OnReaderDetectionListener;
 import com.github.skjolber.nfc.hce.DefaultNfcReaderServiceListener;
 import com.github.skjolber.nfc.hce.IAcr1255UBinder;
+import com.github.skjolber.nfc.NfcMetrics;
 import com.github.skjolber.nfc.NfcReader;
 import com.github.skjolber.nfc.NfcTag;
 import com.github.skjolber.nfc.command.*;
@@ -49,6 +51,8 @@ public class BluetoothBackgroundService extends AbstractService {
 
     private static final String TAG = BluetoothBackgroundService.class.getName();
 
+    private final AtrClassifier atrClassifier = AtrClassifier.newInstance("Acr1255uj1Reader");
+
     public static final String EXTRAS_DEVICE_NAME = "DEVICE_NAME";
     public static final String EXTRAS_DEVICE_ADDRESS = "DEVICE_ADDRESS";
 
@@ -64,6 +68,8 @@ public class BluetoothBackgroundService extends AbstractService {
 
     /* Detected reader. */
     private BluetoothReader acsBluetoothReader;
+    /* Command queue of the detected reader, released on disconnect. */
+    private BluetoothReaderDispatcher dispatcher;
 
     /* ACS Bluetooth reader library. */
     private BluetoothReaderManager acsBluetoothReaderManager;
@@ -225,7 +231,7 @@ public class BluetoothBackgroundService extends AbstractService {
                             initializeBluetoothReaderManager();
                             acsBluetoothReaderManager.detectReader(gatt, gattCallback);
                         } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                            acsBluetoothReader = null;
+                            releaseReader();
                             /*
                              * Release resources occupied by Bluetooth
                              * GATT client.
@@ -276,6 +282,10 @@ public class BluetoothBackgroundService extends AbstractService {
     }
 
     private void setReader(final BluetoothReader reader) {
+        if (acsBluetoothReader != null && acsBluetoothReader != reader) {
+            releaseReader();
+        }
+
         /* Update status change listener */
         if(reader instanceof Acr1255uj1Reader) {
             Acr1255uj1Reader acr1255uj1Reader = (Acr1255uj1Reader)reader;
@@ -308,7 +318,7 @@ public class BluetoothBackgroundService extends AbstractService {
             public void onAtrAvailable(BluetoothReader bluetoothReader, final byte[] atr, final int errorCode) {
                 Log.d(TAG, "onAtrAvailable: " + com.github.skjolber.nfc.command.Utils.toHexString(atr) + " " + getErrorString(errorCode));
 
-                TagType tagType = ServiceUtil.identifyTagType("Acr1255uj1Reader", atr);
+                TagType tagType = atrClassifier.identifyTagType(atr);
 
                 Log.d(TAG, "Got tag type " + tagType);
 
@@ -328,26 +338,8 @@ public class BluetoothBackgroundService extends AbstractService {
 
         });
 
-        /* Wait for response APDU. */
-        reader.setOnResponseApduAvailableListener(new BluetoothReader.OnResponseApduAvailableListener() {
-
-            @Override
-            public void onResponseApduAvailable(BluetoothReader bluetoothReader, final byte[] apdu, final int errorCode) {
-                Log.d(TAG, "setOnResponseApduAvailableListener: " + getResponseString(apdu, errorCode));
-            }
-
-        });
-
-        reader.setOnEscapeResponseAvailableListener(new BluetoothReader.OnEscapeResponseAvailableListener() {
-
-            @Override
-            public void onEscapeResponseAvailable(
-                    BluetoothReader bluetoothReader,
-                    final byte[] response, final int errorCode) {
-                Log.d(TAG, "setOnEscapeResponseAvailableListener: " + getResponseString(response, errorCode));
-            }
-
-        });
+        /* Response APDUs and escape command responses are handled by the dispatcher. */
+        this.dispatcher = BluetoothReaderDispatcher.getInstance(reader);
 
         /* Wait for device info available. */
         reader.setOnDeviceInfoAvailableListener(new BluetoothReader.OnDeviceInfoAvailableListener() {
@@ -415,9 +407,7 @@ public class BluetoothBackgroundService extends AbstractService {
                             Log.d(TAG, "Card not ready for power");
                         }
                     } else if (cardStatus == BluetoothReader.CARD_STATUS_POWERED) {
-                        if (!reader.transmitApdu(DEFAULT_1255_APDU_COMMAND)) {
-                            Log.d(TAG, "Card not ready for apdu");
-                        }
+                        BluetoothReaderDispatcher.getInstance(reader).submit(DEFAULT_1255_APDU_COMMAND);
                     } else if (cardStatus == BluetoothReader.CARD_STATUS_ABSENT) {
                         onTagAbsent();
                     }
@@ -541,12 +531,18 @@ public class BluetoothBackgroundService extends AbstractService {
 
             TagType tagType = params[0];
 
-            if (uidMode) {
-                Log.d(TAG, "UID mode");
-                handleTagInitUIDMode(tagType);
-            } else {
-                Log.d(TAG, "Regular mode");
-                handleTagInitRegularMode(tagType, atr);
+            // the tag is already powered when the ATR is available
+            tapMetrics.startTap(NfcMetrics.PHASE_IDENTIFY);
+            try {
+                if (uidMode) {
+                    Log.d(TAG, "UID mode");
+                    handleTagInitUIDMode(tagType);
+                } else {
+                    Log.d(TAG, "Regular mode");
+                    handleTagInitRegularMode(tagType, atr);
+                }
+            } finally {
+                tapMetrics.endTap();
             }
 
             return result;
@@ -558,28 +554,37 @@ public class BluetoothBackgroundService extends AbstractService {
     }
 
     private void handleTagInitRegularMode(TagType tagType, byte[] atr) {
+        // single slot reader
+        int slotNumber = 0;
 
         BluetoothAcsTag acsTag = new BluetoothAcsTag(TagType.MIFARE_ULTRALIGHT, new byte[]{}, acsBluetoothReader);
-        IsoDepWrapper wrapper = new ACSBluetoothIsoDepWrapper(acsBluetoothReader);
+        acsTag.setTapMetrics(tapMetrics);
+        acsTag.setTraceRecorder(apduTraceRecorder);
+        acsTag.setSlotNumber(slotNumber);
+
+        ACSBluetoothIsoDepWrapper wrapper = new ACSBluetoothIsoDepWrapper(acsBluetoothReader);
+        wrapper.setTapMetrics(tapMetrics);
+        wrapper.setTraceRecorder(apduTraceRecorder);
+        wrapper.setSlotNumber(slotNumber);
 
         if (tagType == TagType.MIFARE_ULTRALIGHT || tagType == TagType.MIFARE_ULTRALIGHT_C) {
-            mifareUltralight(0, atr, tagType, acsTag, wrapper, "ACR1255U");
+            mifareUltralight(slotNumber, atr, tagType, acsTag, wrapper, "ACR1255U");
         } else if (
                 tagType == TagType.MIFARE_PLUS_SL1_2k ||
                         tagType == TagType.MIFARE_PLUS_SL1_4k ||
                         tagType == TagType.MIFARE_PLUS_SL2_2k ||
                         tagType == TagType.MIFARE_PLUS_SL2_4k
         ) {
-            mifareClassicPlus(0, atr, tagType, acsTag, wrapper);
+            mifareClassicPlus(slotNumber, atr, tagType, acsTag, wrapper);
         } else if (
                 tagType == TagType.MIFARE_CLASSIC_1K || tagType == TagType.MIFARE_CLASSIC_4K) {
-            mifareClassic(0, atr, tagType, wrapper, acsTag);
+            mifareClassic(slotNumber, atr, tagType, wrapper, acsTag);
         } else if (tagType == TagType.INFINEON_MIFARE_SLE_1K) {
-            infineonMifare(0, atr, tagType, acsTag, wrapper);
+            infineonMifare(slotNumber, atr, tagType, acsTag, wrapper);
         } else if (tagType == TagType.DESFIRE_EV1) {
-            desfire(0, atr, wrapper);
+            desfire(slotNumber, atr, wrapper);
         } else if (tagType == TagType.ISO_14443_TYPE_B_NO_HISTORICAL_BYTES || tagType == TagType.ISO_14443_TYPE_A_NO_HISTORICAL_BYTES) {
-            hce(0, atr, wrapper);
+            hce(slotNumber, atr, wrapper);
         } else {
             ServiceUtil.sendTechBroadcast(this);
         }
@@ -740,6 +745,7 @@ public class BluetoothBackgroundService extends AbstractService {
         Log.i(TAG, "Service destroyed");
 
         disconnectReader();
+        releaseReader();
 
         stopReceivingBondingStateBroadcasts();
 
@@ -854,6 +860,39 @@ public class BluetoothBackgroundService extends AbstractService {
         return true;
     }
 
+    /* Drop the reader and its command queue, so that they can be collected. */
+    private void releaseReader() {
+        BluetoothReader reader = acsBluetoothReader;
+        if (reader != null) {
+            acsBluetoothReader = null;
+            dispatcher = null;
+
+            BluetoothReaderDispatcher.release(reader);
+        }
+    }
+
+    @Override
+    public void addMetrics(Bundle bundle) {
+        super.addMetrics(bundle);
+
+        BluetoothReaderDispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            bundle.putInt(NfcMetrics.KEY_READER_QUEUE_DEPTH, dispatcher.getQueueDepth());
+            bundle.putInt(NfcMetrics.KEY_READER_MAX_QUEUE_DEPTH, dispatcher.getMaxQueueDepth());
+            bundle.putLongArray(NfcMetrics.KEY_READER_COMMAND_LATENCY, dispatcher.getCommandLatency());
+        }
+    }
+
+    @Override
+    public void resetMetrics() {
+        super.resetMetrics();
+
+        BluetoothReaderDispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            dispatcher.resetMetrics();
+        }
+    }
+
     /* Disconnects an established connection. */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
     private void disconnectReader() {
@@ -889,11 +928,13 @@ public class BluetoothBackgroundService extends AbstractService {
 
         store.removeItem(0);
 
-        Intent intent = new Intent();
-        intent.setAction(NfcTag.ACTION_TAG_LEFT_FIELD);
-        sendBroadcast(intent);
+        if (!deliverTagLeftField(0)) {
+            Intent intent = new Intent();
+            intent.setAction(NfcTag.ACTION_TAG_LEFT_FIELD);
+            sendBroadcast(intent);
+        }
 
-        operations = null;
+        setNdefOperations(0, null);
     }
 
 
@@ -0,0 +1,476 @@
+package com.github.skjolber.nfc.service;
+
+import android.util.Log;
+
+import com.acs.bluetooth.BluetoothReader;
+
+import org.nfctools.NfcException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Dispatcher of APDU and escape commands for a {@linkplain BluetoothReader}. The reader handles a single command at
+ * a time, so commands are queued and the next command is transmitted directly from the response callback.
+ * Responses are correlated with the command in flight, so that reader configuration (escape commands) from
+ * remote clients does not interfere with an ongoing tag session.<br>
+ * <br>
+ * Callers get a {@linkplain Future} per command, so a batch of commands can be submitted at once and the caller only
+ * needs to wait for the last response.<br>
+ * <br>
+ * Use {@linkplain #getInstance(BluetoothReader)} so that there is a single dispatcher (and listener) per reader, and
+ * {@linkplain #release(BluetoothReader)} when the reader disconnects.<br>
+ * <br>
+ * Queue depth and the latency from submit to response of each command are recorded.
+ */
+
+public class BluetoothReaderDispatcher implements BluetoothReader.OnResponseApduAvailableListener, BluetoothReader.OnEscapeResponseAvailableListener {
+
+    private static final String TAG = BluetoothReaderDispatcher.class.getName();
+
+    public static final long DEFAULT_COMMAND_TIMEOUT = 5000;
+
+    // the dispatcher references the reader, so entries must be released explicitly
+    private static final Map<BluetoothReader, BluetoothReaderDispatcher> dispatchers = new HashMap<BluetoothReader, BluetoothReaderDispatcher>();
+
+    public static BluetoothReaderDispatcher getInstance(BluetoothReader reader) {
+        synchronized (dispatchers) {
+            BluetoothReaderDispatcher dispatcher = dispatchers.get(reader);
+            if (dispatcher == null) {
+                dispatcher = new BluetoothReaderDispatcher(reader);
+
+                dispatchers.put(reader, dispatcher);
+            }
+            return dispatcher;
+        }
+    }
+
+    /**
+     * Drop the dispatcher of a disconnected reader. Pending commands fail.
+     *
+     * @param reader reader
+     */
+
+    public static void release(BluetoothReader reader) {
+        BluetoothReaderDispatcher dispatcher;
+        synchronized (dispatchers) {
+            dispatcher = dispatchers.remove(reader);
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    public static class PendingCommand implements Future<byte[]> {
+
+        private final BluetoothReaderDispatcher dispatcher;
+        private final byte[] request;
+        private final boolean escape;
+        private final long submitted = System.nanoTime();
+
+        /** next command of the same batch, dropped if this command fails */
+        private PendingCommand next;
+
+        private long transmitted;
+        private byte[] response;
+        private int errorCode = BluetoothReader.ERROR_SUCCESS;
+        private Exception exception;
+        private boolean done;
+        private boolean cancelled;
+
+        private PendingCommand(BluetoothReaderDispatcher dispatcher, byte[] request, boolean escape) {
+            this.dispatcher = dispatcher;
+            this.request = request;
+            this.escape = escape;
+        }
+
+        public byte[] getRequest() {
+            return request;
+        }
+
+        public boolean isEscape() {
+            return escape;
+        }
+
+        /**
+         * @return the reader error code which came with the response
+         */
+
+        public synchronized int getErrorCode() {
+            return errorCode;
+        }
+
+        private boolean complete(byte[] response, Exception exception) {
+            return complete(response, BluetoothReader.ERROR_SUCCESS, exception);
+        }
+
+        private boolean complete(byte[] response, int errorCode, Exception exception) {
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                this.response = response;
+                this.errorCode = errorCode;
+                this.exception = exception;
+                this.done = true;
+
+                notifyAll();
+            }
+            dispatcher.onCompleted(this);
+
+            if ((exception != null || errorCode != BluetoothReader.ERROR_SUCCESS) && next != null) {
+                dispatcher.abort(next);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                cancelled = true;
+            }
+            // complete before removing, so that the rest of a batch is not transmitted
+            boolean completed = complete(null, new NfcException("Cancelled"));
+
+            dispatcher.remove(this);
+
+            return completed;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Wait for the response, at most the dispatcher command timeout.
+         */
+
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+            try {
+                return get(dispatcher.getCommandTimeout(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            synchronized (this) {
+                long deadline = System.nanoTime() + unit.toNanos(timeout);
+                while (!done) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                if (done) {
+                    return getResult();
+                }
+            }
+            // give up on the command, so that the queue can proceed
+            dispatcher.timeout(this);
+
+            throw new TimeoutException();
+        }
+
+        private byte[] getResult() throws ExecutionException {
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return response;
+        }
+    }
+
+    private final BluetoothReader reader;
+
+    private final ArrayDeque<PendingCommand> queue = new ArrayDeque<PendingCommand>();
+    private PendingCommand inFlight;
+
+    private volatile long commandTimeout = DEFAULT_COMMAND_TIMEOUT;
+
+    // metrics
+    private int maxQueueDepth;
+    private final Histogram commandLatency = new Histogram();
+
+    public BluetoothReaderDispatcher(BluetoothReader reader) {
+        this.reader = reader;
+
+        reader.setOnResponseApduAvailableListener(this);
+        reader.setOnEscapeResponseAvailableListener(this);
+    }
+
+    public BluetoothReader getReader() {
+        return reader;
+    }
+
+    public long getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    public void setCommandTimeout(long commandTimeout) {
+        this.commandTimeout = commandTimeout;
+    }
+
+    public PendingCommand submit(byte[] request) {
+        return submit(new PendingCommand(this, request, false));
+    }
+
+    public PendingCommand submitEscape(byte[] request) {
+        return submit(new PendingCommand(this, request, true));
+    }
+
+    private PendingCommand submit(PendingCommand command) {
+        synchronized (this) {
+            queue.add(command);
+            onQueued();
+
+            transmitNext();
+        }
+        return command;
+    }
+
+    /**
+     * Submit a batch of commands. If a command fails, the remaining commands of the batch are not transmitted,
+     * but completed with an exception.
+     *
+     * @param requests commands
+     * @return pending commands, in the same order as the requests
+     */
+
+    public List<PendingCommand> submit(List<byte[]> requests) {
+        List<PendingCommand> commands = new ArrayList<PendingCommand>(requests.size());
+        PendingCommand previous = null;
+        for (byte[] request : requests) {
+            PendingCommand command = new PendingCommand(this, request, false);
+            if (previous != null) {
+                previous.next = command;
+            }
+            commands.add(command);
+            previous = command;
+        }
+        synchronized (this) {
+            queue.addAll(commands);
+            onQueued();
+
+            transmitNext();
+        }
+        return commands;
+    }
+
+    /**
+     * Transmit a command and wait for the response.
+     *
+     * @param request command
+     * @param escape true for escape command, false for APDU
+     * @return response, or null if the reader reported an error
+     */
+
+    public byte[] transmit(byte[] request, boolean escape) {
+        PendingCommand command = escape ? submitEscape(request) : submit(request);
+        try {
+            byte[] response = command.get(commandTimeout, TimeUnit.MILLISECONDS);
+            if (command.getErrorCode() != BluetoothReader.ERROR_SUCCESS) {
+                return null;
+            }
+            return response;
+        } catch (TimeoutException e) {
+            throw new NfcException("Timeout");
+        } catch (InterruptedException e) {
+            command.cancel(false);
+
+            throw new NfcException("Problem waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NfcException) {
+                throw (NfcException) e.getCause();
+            }
+            throw new NfcException(e.getCause());
+        }
+    }
+
+    /**
+     * Fail the command in flight and the queued commands, and stop listening to the reader.
+     */
+
+    private void close() {
+        List<PendingCommand> commands;
+        synchronized (this) {
+            commands = new ArrayList<PendingCommand>(queue.size() + 1);
+            if (inFlight != null) {
+                commands.add(inFlight);
+                inFlight = null;
+            }
+            commands.addAll(queue);
+            queue.clear();
+        }
+        for (PendingCommand command : commands) {
+            command.complete(null, new NfcException("Reader disconnected"));
+        }
+
+        reader.setOnResponseApduAvailableListener(null);
+        reader.setOnEscapeResponseAvailableListener(null);
+    }
+
+    private void onQueued() {
+        int depth = getQueueDepth();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    private synchronized void onCompleted(PendingCommand command) {
+        commandLatency.record(System.nanoTime() - command.submitted);
+    }
+
+    /**
+     * @return number of commands queued or in flight
+     */
+
+    public synchronized int getQueueDepth() {
+        return queue.size() + (inFlight != null ? 1 : 0);
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return latency from submit to completion, in nanoseconds, indexed by the NfcMetrics SUMMARY_ constants
+     */
+
+    public synchronized long[] getCommandLatency() {
+        return commandLatency.getSummary();
+    }
+
+    public synchronized void resetMetrics() {
+        maxQueueDepth = getQueueDepth();
+        commandLatency.reset();
+    }
+
+    private synchronized void remove(PendingCommand command) {
+        if (inFlight == command) {
+            // a late response would be attributed to the next command of the same type, but the reader is most likely gone anyway
+            inFlight = null;
+
+            transmitNext();
+        } else {
+            queue.remove(command);
+        }
+    }
+
+    private void timeout(PendingCommand command) {
+        // complete before removing, so that the rest of a batch is not transmitted
+        command.complete(null, new NfcException("Timeout"));
+
+        remove(command);
+    }
+
+    /**
+     * Drop a queued command because the previous command of its batch failed. The rest of the batch follows
+     * when the command is completed.
+     */
+
+    private void abort(PendingCommand command) {
+        synchronized (this) {
+            if (!queue.remove(command)) {
+                return;
+            }
+        }
+        command.complete(null, new NfcException("Previous command of batch failed"));
+    }
+
+    /**
+     * Transmit the next queued command, if no command is in flight. Must hold the lock.
+     */
+
+    private void transmitNext() {
+        if (inFlight != null && System.nanoTime() - inFlight.transmitted > TimeUnit.MILLISECONDS.toNanos(commandTimeout)) {
+            // nobody waiting for the command in flight, do not let it block the queue forever
+            Log.w(TAG, "Timeout for " + (inFlight.escape ? "escape command" : "ADPU"));
+
+            PendingCommand command = inFlight;
+            inFlight = null;
+
+            command.complete(null, new NfcException("Timeout"));
+        }
+
+        while (inFlight == null && !queue.isEmpty()) {
+            PendingCommand command = queue.poll();
+
+            inFlight = command;
+            command.transmitted = System.nanoTime();
+
+            boolean transmitted;
+            if (command.escape) {
+                transmitted = reader.transmitEscapeCommand(command.request);
+            } else {
+                transmitted = reader.transmitApdu(command.request);
+            }
+            if (!transmitted) {
+                inFlight = null;
+
+                command.complete(null, new NfcException(command.escape ? "Unable to transmit escape command" : "Unable to transmit ADPU"));
+            }
+        }
+    }
+
+    @Override
+    public void onResponseApduAvailable(BluetoothReader bluetoothReader, byte[] apdu, int errorCode) {
+        onResponse(apdu, errorCode, false);
+    }
+
+    @Override
+    public void onEscapeResponseAvailable(BluetoothReader bluetoothReader, byte[] response, int errorCode) {
+        onResponse(response, errorCode, true);
+    }
+
+    private void onResponse(byte[] response, int errorCode, boolean escape) {
+        PendingCommand command;
+        synchronized (this) {
+            command = inFlight;
+            if (command != null && command.escape == escape) {
+                inFlight = null;
+            } else {
+                command = null;
+            }
+        }
+
+        if (errorCode != BluetoothReader.ERROR_SUCCESS) {
+            Log.d(TAG, (escape ? "onEscapeResponseAvailable: " : "onResponseApduAvailable: ") + BluetoothBackgroundService.getResponseString(response, errorCode));
+        }
+
+        if (command != null) {
+            if (errorCode != BluetoothReader.ERROR_SUCCESS) {
+                // let the caller decide, transmit(..) maps reader errors to null
+                command.complete(response, errorCode, null);
+            } else if (response != null) {
+                command.complete(response, null);
+            } else {
+                command.complete(null, new NfcException(escape ? "No escape command response" : "No ADPU response"));
+            }
+
+            synchronized (this) {
+                transmitNext();
+            }
+        } else {
+            Log.w(TAG, "Ignoring unexpected " + (escape ? "escape command" : "ADPU") + " response");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.skjolber.nfc.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nfctools.api.TagType;
+
+import com.github.skjolber.nfc.command.Utils;
+
+/**
+ * Cache of the tag type identified for an ATR, per reader model and slot. The UID is not known before the session
+ * is set up, so different cards with the same ATR share an entry; the tag type is a function of the ATR alone.
+ * Holds a limited number of ATRs, evicting the least recently used. Thread safe.<br>
+ * <br>
+ * The protocol is not cached: the card is reset on every tap, so proposing a cached protocol costs the same
+ * round-trip as proposing all preferred protocols.
+ */
+
+public class ReaderSessionCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, TagType> sessions;
+
+    private volatile AtrClassifier atrClassifier;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negotiations = new AtomicLong();
+    private final AtomicLong skippedNegotiations = new AtomicLong();
+
+    public ReaderSessionCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ReaderSessionCache(final int capacity) {
+        this.sessions = new LinkedHashMap<String, TagType>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TagType> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static String getKey(String readerName, int slotNumber, byte[] atr) {
+        return readerName + ":" + slotNumber + ":" + Utils.toHexString(atr);
+    }
+
+    /**
+     * Get the tag type for an ATR, identifying it if not already known.
+     *
+     * @param readerName reader name
+     * @param slotNumber slot number
+     * @param atr        ATR
+     * @return tag type
+     */
+
+    public TagType getTagType(String readerName, int slotNumber, byte[] atr) {
+        String key = getKey(readerName, slotNumber, atr);
+
+        TagType tagType;
+        synchronized (sessions) {
+            tagType = sessions.get(key);
+        }
+        if (tagType != null) {
+            hits.incrementAndGet();
+
+            return tagType;
+        }
+        misses.incrementAndGet();
+
+        tagType = getAtrClassifier(readerName).identifyTagType(atr);
+        synchronized (sessions) {
+            sessions.put(key, tagType);
+        }
+        return tagType;
+    }
+
+    /**
+     * Set the ATR classifier, i.e. when the reader is opened.
+     *
+     * @param atrClassifier classifier
+     */
+
+    public void setAtrClassifier(AtrClassifier atrClassifier) {
+        this.atrClassifier = atrClassifier;
+    }
+
+    private AtrClassifier getAtrClassifier(String readerName) {
+        AtrClassifier atrClassifier = this.atrClassifier;
+        if (atrClassifier == null || !equals(readerName, atrClassifier.getReaderName())) {
+            atrClassifier = AtrClassifier.newInstance(readerName);
+
+            this.atrClassifier = atrClassifier;
+        }
+        return atrClassifier;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public void onNegotiation() {
+        negotiations.incrementAndGet();
+    }
+
+    public void onSkippedNegotiation() {
+        skippedNegotiations.incrementAndGet();
+    }
+
+    public void clear() {
+        synchronized (sessions) {
+            sessions.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getNegotiations() {
+        return negotiations.get();
+    }
+
+    public long getSkippedNegotiations() {
+        return skippedNegotiations.get();
+    }
+
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        negotiations.set(0);
+        skippedNegotiations.set(0);
+    }
+}
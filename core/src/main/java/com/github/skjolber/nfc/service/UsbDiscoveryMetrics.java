@@ -0,0 +1,139 @@
+package com.github.skjolber.nfc.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Metrics for USB reader discovery: the time from a reader is detected (attach broadcast, or scan on cold start)
+ * until it is open, and the number of and the time spent in device scans. Scans which find no reader are idle
+ * wakeups, and their CPU time is the cost of discovery while no reader is attached.
+ * Times are in nanoseconds. Thread safe.
+ */
+
+public class UsbDiscoveryMetrics {
+
+    private final Map<Integer, Long> detected = new HashMap<Integer, Long>();
+
+    private long attachEvents;
+    private long scans;
+    private long scanTime;
+
+    private long idleScans;
+    private long idleCpuTime;
+
+    private final Histogram readerOpenLatency = new Histogram();
+
+    /**
+     * A device was attached, start the reader-open clock.
+     *
+     * @param deviceId device id, or -1 if not known
+     */
+
+    public synchronized void onAttach(int deviceId) {
+        attachEvents++;
+
+        if (deviceId != -1) {
+            detected.put(deviceId, System.nanoTime());
+        }
+    }
+
+    /**
+     * A device scan completed.
+     *
+     * @param time    elapsed time
+     * @param cpuTime thread CPU time, or -1 if not known
+     * @param idle    true if no reader was found
+     */
+
+    public synchronized void onScan(long time, long cpuTime, boolean idle) {
+        scans++;
+        scanTime += time;
+
+        if (idle) {
+            idleScans++;
+            if (cpuTime > 0) {
+                idleCpuTime += cpuTime;
+            }
+        }
+    }
+
+    /**
+     * A supported device was found by a scan. Keeps the clock from the attach broadcast, if any.
+     *
+     * @param deviceId device id
+     */
+
+    public synchronized void onDetected(int deviceId) {
+        if (!detected.containsKey(deviceId)) {
+            detected.put(deviceId, System.nanoTime());
+        }
+    }
+
+    public synchronized void onOpened(int deviceId) {
+        Long start = detected.remove(deviceId);
+        if (start != null) {
+            readerOpenLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    public synchronized void onFailed(int deviceId) {
+        detected.remove(deviceId);
+    }
+
+    public synchronized long getAttachEvents() {
+        return attachEvents;
+    }
+
+    public synchronized long getScans() {
+        return scans;
+    }
+
+    public synchronized long getScanTime() {
+        return scanTime;
+    }
+
+    /**
+     * @return number of scans which found no reader
+     */
+
+    public synchronized long getIdleScans() {
+        return idleScans;
+    }
+
+    /**
+     * @return CPU time spent in scans which found no reader
+     */
+
+    public synchronized long getIdleCpuTime() {
+        return idleCpuTime;
+    }
+
+    public synchronized long getReaderOpens() {
+        return readerOpenLatency.getCount();
+    }
+
+    /**
+     * @return latency from detection to open reader, indexed by the NfcMetrics SUMMARY_ constants
+     */
+
+    public synchronized long[] getReaderOpenLatency() {
+        return readerOpenLatency.getSummary();
+    }
+
+    public synchronized void reset() {
+        attachEvents = 0;
+        scans = 0;
+        scanTime = 0;
+        idleScans = 0;
+        idleCpuTime = 0;
+        readerOpenLatency.reset();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UsbDiscoveryMetrics[attachEvents=" + attachEvents + ", scans=" + scans + ", scanTime=" + (scanTime / 1000000) + "ms"
+                + ", idleScans=" + idleScans + ", idleCpuTime=" + (idleCpuTime / 1000000) + "ms"
+                + ", readerOpens=" + readerOpenLatency.getCount() + ", meanReaderOpenLatency=" + (readerOpenLatency.getMean() / 1000000) + "ms"
+                + ", maxReaderOpenLatency=" + (readerOpenLatency.getMax() / 1000000) + "ms]";
+    }
+}
@@ -4,6 +4,9 @@ import com.acs.bluetooth.BluetoothReader;
 import com.github.skjolber.nfc.command.PassthroughCommandException;
 import com.github.skjolber.nfc.command.ReaderCommandException;
 import com.github.skjolber.nfc.command.Utils;
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+import com.github.skjolber.nfc.service.BluetoothReaderDispatcher;
+import com.github.skjolber.nfc.service.TapMetrics;
 
 import org.nfctools.NfcException;
 import org.nfctools.api.ApduTag;
@@ -21,17 +24,18 @@ import custom.java.ResponseAPDU;
  * Created by skjolber on 10.08.17.
  */
 
-import java.util.concurrent.CountDownLatch;
 
-
-public class BluetoothAcsTag extends Tag implements ApduTag, BluetoothReader.OnResponseApduAvailableListener {
+public class BluetoothAcsTag extends Tag implements ApduTag {
 
     private static final String TAG = BluetoothAcsTag.class.getName();
 
+    private static final byte[] EMPTY = new byte[0];
+
     private BluetoothReader reader;
 
-    private volatile CountDownLatch latch;
-    private byte[] in;
+    private TapMetrics tapMetrics;
+    private ApduTraceRecorder traceRecorder;
+    private int slotNumber;
 
     public BluetoothAcsTag(TagType tagType, byte[] generalBytes, BluetoothReader mBluetoothReader) {
         super(tagType, generalBytes);
@@ -64,22 +68,7 @@ public class BluetoothAcsTag extends Tag implements ApduTag, BluetoothReader.OnR
 
             // Log.d(TAG, "Request: " + Utils.toHexString(out));
 
-            in = null;
-            latch = new CountDownLatch(1);
-
-            reader.setOnResponseApduAvailableListener(this);
-            if (!reader.transmitApdu(out)) {
-                throw new NfcException("Unable to transmit ADPU");
-            }
-
-            // Log.d(TAG, "ADPU transmitted");
-
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new NfcException("Problem waiting for response");
-            }
-
+            byte[] in = transceive(out);
             if (in == null) {
                 throw new NfcException("No response");
             }
@@ -97,41 +86,74 @@ public class BluetoothAcsTag extends Tag implements ApduTag, BluetoothReader.OnR
     @Override
     public synchronized byte[] transmit(byte[] request) {
         // Log.d(TAG, "Raw request: " + Utils.toHexString(request));
-        try {
 
-            in = null;
-            latch = new CountDownLatch(1);
+        return transceive(request);
+    }
 
-            reader.setOnResponseApduAvailableListener(this);
-            if (!reader.transmitApdu(request)) {
-                throw new NfcException("Unable to transmit ADPU");
-            }
+    private byte[] transceive(byte[] request) {
+        TapMetrics metrics = tapMetrics;
+        ApduTraceRecorder recorder = traceRecorder;
+        if ((metrics != null && metrics.isEnabled()) || (recorder != null && recorder.isEnabled())) {
+            long start = System.nanoTime();
 
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                throw new NfcException("Problem waiting for response");
-            }
+            byte[] response = BluetoothReaderDispatcher.getInstance(reader).transmit(request, false);
 
-            // Log.d(TAG, "Raw response: " + Utils.toHexString(in));
+            long latency = System.nanoTime() - start;
 
-            return in;
-        } catch (Exception e) {
-            throw new NfcException(e);
+            // null on reader error
+            byte[] received = response != null ? response : EMPTY;
+            if (metrics != null) {
+                metrics.onApdu(request.length, received.length, latency);
+            }
+            if (recorder != null) {
+                recorder.record(slotNumber, start, latency, request, request.length, received, received.length);
+            }
+            return response;
         }
+        return BluetoothReaderDispatcher.getInstance(reader).transmit(request, false);
     }
 
-    @Override
-    public void onResponseApduAvailable(BluetoothReader bluetoothReader, byte[] apdu, int errorCode) {
-        // Log.d(TAG, "onResponseApduAvailable: " + BluetoothBackgroundService.getResponseString(apdu, errorCode));
+    public TapMetrics getTapMetrics() {
+        return tapMetrics;
+    }
 
-        if (errorCode == BluetoothReader.ERROR_SUCCESS) {
-            this.in = apdu;
+    /**
+     * Set the metrics which record the round-trip of each command.
+     *
+     * @param tapMetrics metrics, or null
+     */
 
-        }
-        latch.countDown();
+    public void setTapMetrics(TapMetrics tapMetrics) {
+        this.tapMetrics = tapMetrics;
+    }
+
+    public ApduTraceRecorder getTraceRecorder() {
+        return traceRecorder;
     }
 
+    /**
+     * Set the recorder for the request and response of each command.
+     *
+     * @param traceRecorder recorder, or null
+     */
+
+    public void setTraceRecorder(ApduTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+
+    /**
+     * Set the slot number for the APDU trace records.
+     *
+     * @param slotNumber reader slot of the tag
+     */
+
+    public void setSlotNumber(int slotNumber) {
+        this.slotNumber = slotNumber;
+    }
 
     public byte[] transmitPassthrough(byte[] req) {
         byte[] sub = new byte[2 + req.length];
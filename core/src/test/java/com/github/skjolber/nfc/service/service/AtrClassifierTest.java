@@ -0,0 +1,121 @@
+package com.github.skjolber.nfc.service.service;
+
+import com.github.skjolber.nfc.service.AtrClassifier;
+import com.github.skjolber.nfc.service.ServiceUtil;
+
+import org.junit.Test;
+import org.nfctools.api.TagType;
+import org.nfctools.utils.NfcUtils;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class AtrClassifierTest {
+
+    private static final String[] ATRS = new String[]{
+            "3B8F8001804F0CA000000306030001000000006A", // Mifare Classic 1K
+            "3B8F8001804F0CA0000003060300020000000069", // Mifare Classic 4K
+            "3B8F8001804F0CA0000003060300030000000068", // Mifare Ultralight
+            "3B8F8001804F0CA000000306030026000000004D", // Mifare Mini
+            "3B8F8001804F0CA00000030603F004000000009F", // Topaz
+            "3B8F8001804F0CA00000030603FF4000000000D4", // NFCIP
+            "3B8F8001804F0CA00000030603FF88000000001C", // Infineon
+            "3B8180018080", // Desfire EV1
+            "3B80800101", // Type B without historical bytes
+
+            // logged by the cascade
+            "3B8F8001804F0CA00000030603FF000000000094", // Android device (HCE)
+            "3B8F8001804F0CA00000030603FF010000000095", // Android device (HCE)
+            "3B8F8001804F0CA00000030603AB00000000009F", // unknown tag id
+            "3B8F8001804F0CA0000003060300FF000000009F", // unknown tag id
+            "3B8F8001804F0CA00000030611ABCD000000009F", // unknown FeliCa tag id
+
+            // short
+            "",
+            "3B",
+            "3B80",
+            "3B8F8001804F0CA000",
+    };
+
+    // malformed ATRs for which the cascade fails with an index exception
+    private static final String[] MALFORMED_ATRS = new String[]{
+            "3B8F8001804F0CA0000003",
+            "3B8F8001804F0CA00000030603",
+            "3B8F8001804F0CA0000003060300",
+            "3B88800100000000B3817100",
+            "3B8A800100000000000000000000",
+    };
+
+    // ATRs which the ACR 1252 / 1255 readers identify without logging
+    private static final String[] PSEUDO_ATRS = new String[]{
+            "3B8F8001804F0CA00000030603003A0000000051", // Mifare Ultralight C
+            "3B8F8001804F0CA000000306030036000000005D", // Mifare Plus SL1 2K
+            "3B8F8001804F0CA000000306030037000000005C", // Mifare Plus SL1 4K
+            "3B8F8001804F0CA0000003060300380000000053", // Mifare Plus SL2 2K
+            "3B8F8001804F0CA0000003060300390000000052", // Mifare Plus SL2 4K
+            "3B8F8001804F0CA000000306030030000000005B", // Topaz
+            "3B8F8001804F0CA00000030611003B0000000042", // FeliCa 212K
+            "3B8F8001804F0CA00000030611F012000000009B", // FeliCa 424K
+    };
+
+    @Test
+    public void testSameAsCascade() {
+        String[] readerNames = new String[]{"ACS ACR122U PICC Interface", "ACS ACR1252 1S CL Reader PICC", "Acr1255uj1Reader"};
+        for (String readerName : readerNames) {
+            AtrClassifier classifier = AtrClassifier.newInstance(readerName);
+
+            for (String atr : ATRS) {
+                byte[] bytes = NfcUtils.convertASCIIToBin(atr);
+                assertEquals(readerName + " " + atr, ServiceUtil.identifyTagType(readerName, bytes), classifier.identifyTagType(bytes));
+            }
+        }
+    }
+
+    @Test
+    public void testMalformed() {
+        String[] readerNames = new String[]{"ACS ACR122U PICC Interface", "ACS ACR1252 1S CL Reader PICC", "Acr1255uj1Reader"};
+        for (String readerName : readerNames) {
+            AtrClassifier classifier = AtrClassifier.newInstance(readerName);
+
+            for (String atr : MALFORMED_ATRS) {
+                assertEquals(readerName + " " + atr, TagType.UNKNOWN, classifier.identifyTagType(NfcUtils.convertASCIIToBin(atr)));
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsCascadeForPseudoAtrs() {
+        String readerName = "ACS ACR1252 1S CL Reader PICC";
+
+        AtrClassifier classifier = AtrClassifier.newInstance(readerName);
+
+        for (String atr : PSEUDO_ATRS) {
+            byte[] bytes = NfcUtils.convertASCIIToBin(atr);
+            assertEquals(atr, ServiceUtil.identifyTagType(readerName, bytes), classifier.identifyTagType(bytes));
+        }
+    }
+
+    @Test
+    public void testAndroidDevice() {
+        AtrClassifier classifier = AtrClassifier.newInstance("ACS ACR1252 1S CL Reader PICC");
+
+        assertEquals(TagType.UNKNOWN, classifier.identifyTagType(NfcUtils.convertASCIIToBin("3B8F8001804F0CA00000030603FF000000000094")));
+    }
+
+    @Test
+    public void testConfigure() {
+        AtrClassifier classifier = AtrClassifier.newInstance("ACS ACR122U PICC Interface");
+
+        byte[] ultralightC = NfcUtils.convertASCIIToBin("3B8F8001804F0CA00000030603003A0000000051");
+        assertEquals(TagType.UNKNOWN, classifier.identifyTagType(ultralightC));
+
+        Properties properties = new Properties();
+        properties.setProperty("tagId.003A", "MIFARE_ULTRALIGHT_C");
+        properties.setProperty("atr.3B8180018081", "ISO_DEP");
+        classifier.configure(properties);
+
+        assertEquals(TagType.MIFARE_ULTRALIGHT_C, classifier.identifyTagType(ultralightC));
+        assertEquals(TagType.ISO_DEP, classifier.identifyTagType(NfcUtils.convertASCIIToBin("3B8180018081")));
+    }
+}
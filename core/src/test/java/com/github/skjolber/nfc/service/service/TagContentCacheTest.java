@@ -0,0 +1,51 @@
+package com.github.skjolber.nfc.service.service;
+
+import com.github.skjolber.nfc.hce.resolve.TagContentCache;
+import com.github.skjolber.nfc.hce.resolve.TagProxy;
+import com.github.skjolber.nfc.hce.tech.TagTechnology;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TagContentCacheTest {
+
+    private static final byte[] UID = new byte[]{0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] FINGERPRINT = new byte[]{0x01, 0x02, 0x03};
+    private static final byte[] MESSAGE = new byte[]{(byte) 0xD0, 0x00, 0x00};
+
+    @Test
+    public void lazyEntryFilledOnFirstRead() {
+        TagContentCache cache = new TagContentCache();
+        cache.put(UID, new TagContentCache.Entry(FINGERPRINT, true, true, null));
+
+        cache.setNdefMessage(UID, MESSAGE);
+        assertArrayEquals(MESSAGE, cache.get(UID, FINGERPRINT).getNdefMessage());
+
+        // only entries without a message are filled
+        cache.setNdefMessage(UID, new byte[]{0x00});
+        assertArrayEquals(MESSAGE, cache.get(UID, FINGERPRINT).getNdefMessage());
+
+        // no entry is created
+        cache.invalidate(UID);
+        cache.setNdefMessage(UID, MESSAGE);
+        assertNull(cache.get(UID, FINGERPRINT));
+    }
+
+    @Test
+    public void invalidateOnContentChange() {
+        TagContentCache cache = new TagContentCache();
+        cache.put(UID, new TagContentCache.Entry(FINGERPRINT, true, true, MESSAGE));
+
+        TagProxy proxy = new TagProxy(1, 0, new ArrayList<TagTechnology>());
+        proxy.setTagContentCache(cache, UID);
+        assertNotNull(cache.get(UID, FINGERPRINT));
+
+        proxy.invalidateContent();
+        assertNull(cache.get(UID, FINGERPRINT));
+    }
+}
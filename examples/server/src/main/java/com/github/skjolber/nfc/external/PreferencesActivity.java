@@ -57,10 +57,12 @@ public class PreferencesActivity extends Activity implements OnSharedPreferenceC
             mCategory = (PreferenceCategory) findPreference("category_tag");
 
             Preference readNdef = mCategory.findPreference(BackgroundUsbService.PREFERENCE_AUTO_READ_NDEF);
+            Preference lazyReadNdef = mCategory.findPreference(BackgroundUsbService.PREFERENCE_LAZY_READ_NDEF);
+            Preference cacheTagContent = mCategory.findPreference(BackgroundUsbService.PREFERENCE_CACHE_TAG_CONTENT);
             Preference autoReadUID = mCategory.findPreference(BackgroundUsbService.PREFERENCE_AUTO_READ_UID);
             Preference ntag21x = mCategory.findPreference(BackgroundUsbService.PREFERENCE_NTAG21X_ULTRALIGHT);
 
-            toggle = new Preference[]{readNdef, autoReadUID, ntag21x};
+            toggle = new Preference[]{readNdef, lazyReadNdef, cacheTagContent, autoReadUID, ntag21x};
 
             CheckBoxPreference uidMode = (CheckBoxPreference) mCategory.findPreference(BackgroundUsbService.PREFERENCE_UID_MODE);
             if (uidMode.isChecked()) {
@@ -0,0 +1,314 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nfctools.api.TagType;
+
+/**
+ * Mifare DESFire EV1 tag, using ISO 7816-4 wrapped native commands (class 0x90). Supports GetVersion,
+ * GetApplicationIDs, SelectApplication, GetFileIDs, GetFileSettings, ReadData and WriteData for standard data
+ * files with plain communication and free access, including additional frames in both directions.<br>
+ * <br>
+ * Authentication is not supported and always fails with an authentication error.
+ */
+
+public class DesfireSimulator extends SimulatedTag {
+
+    public static final int CLA_DESFIRE = 0x90;
+
+    public static final byte GET_VERSION = (byte) 0x60;
+    public static final byte GET_APPLICATION_IDS = (byte) 0x6A;
+    public static final byte SELECT_APPLICATION = (byte) 0x5A;
+    public static final byte GET_FILE_IDS = (byte) 0x6F;
+    public static final byte GET_FILE_SETTINGS = (byte) 0xF5;
+    public static final byte READ_DATA = (byte) 0xBD;
+    public static final byte WRITE_DATA = (byte) 0x3D;
+    public static final byte AUTHENTICATE = (byte) 0x0A;
+    public static final byte AUTHENTICATE_ISO = (byte) 0x1A;
+    public static final byte AUTHENTICATE_AES = (byte) 0xAA;
+    public static final byte ADDITIONAL_FRAME = (byte) 0xAF;
+
+    public static final byte OPERATION_OK = (byte) 0x00;
+    public static final byte ILLEGAL_COMMAND_CODE = (byte) 0x1C;
+    public static final byte LENGTH_ERROR = (byte) 0x7E;
+    public static final byte PERMISSION_ERROR = (byte) 0x9D;
+    public static final byte APPLICATION_NOT_FOUND = (byte) 0xA0;
+    public static final byte AUTHENTICATION_ERROR = (byte) 0xAE;
+    public static final byte BOUNDARY_ERROR = (byte) 0xBE;
+    public static final byte FILE_NOT_FOUND = (byte) 0xF0;
+
+    /** maximum data bytes per response frame */
+    public static final int FRAME_SIZE = 59;
+
+    private static final int PICC_AID = 0;
+
+    /** standard data file, plain communication, free access */
+    private static final byte[] FILE_SETTINGS = new byte[]{0x00, 0x00, (byte) 0xEE, (byte) 0xEE};
+
+    private static class Application {
+        private final Map<Integer, byte[]> files = new LinkedHashMap<>();
+    }
+
+    private final Map<Integer, Application> applications = new LinkedHashMap<>();
+
+    private int selected = PICC_AID;
+
+    // response frames not yet sent
+    private final Deque<byte[]> pendingFrames = new ArrayDeque<>();
+
+    // write awaiting additional frames
+    private byte[] pendingFile;
+    private int pendingWriteOffset;
+    private int pendingWriteRemaining;
+
+    public DesfireSimulator(byte[] uid) {
+        super(TagType.DESFIRE_EV1, uid);
+        if (uid.length != 7) {
+            throw new IllegalArgumentException("Expected 7 byte UID, got " + uid.length);
+        }
+    }
+
+    /**
+     * Add an application.
+     *
+     * @param aid 3-byte application id
+     */
+
+    public synchronized void addApplication(int aid) {
+        if (aid == PICC_AID || applications.containsKey(aid)) {
+            throw new IllegalArgumentException("Application " + Integer.toHexString(aid) + " already exists");
+        }
+        applications.put(aid, new Application());
+    }
+
+    /**
+     * Add a standard data file to an application.
+     *
+     * @param aid    application id
+     * @param fileNo file number
+     * @param data   file content; the file size is the content size
+     */
+
+    public synchronized void addFile(int aid, int fileNo, byte[] data) {
+        Application application = applications.get(aid);
+        if (application == null) {
+            throw new IllegalArgumentException("No application " + Integer.toHexString(aid));
+        }
+        application.files.put(fileNo, data.clone());
+    }
+
+    public synchronized byte[] getFile(int aid, int fileNo) {
+        Application application = applications.get(aid);
+        if (application == null) {
+            return null;
+        }
+        byte[] data = application.files.get(fileNo);
+        return data != null ? data.clone() : null;
+    }
+
+    @Override
+    protected byte[] processApdu(byte[] command) {
+        if ((command[0] & 0xFF) != CLA_DESFIRE || command.length < 5) {
+            return super.processApdu(command);
+        }
+        byte instruction = command[1];
+
+        byte[] data;
+        if (command.length > 5) {
+            int length = command[4] & 0xFF;
+            if (command.length < 5 + length) {
+                return status(LENGTH_ERROR);
+            }
+            data = Arrays.copyOfRange(command, 5, 5 + length);
+        } else {
+            data = new byte[0];
+        }
+
+        if (instruction == ADDITIONAL_FRAME) {
+            return processAdditionalFrame(data);
+        }
+
+        // a new command aborts any chaining in progress
+        pendingFrames.clear();
+        pendingFile = null;
+
+        switch (instruction) {
+            case GET_VERSION: {
+                // hardware, software and production frames
+                pendingFrames.add(new byte[]{0x04, 0x01, 0x01, 0x01, 0x00, 0x18, 0x05});
+                pendingFrames.add(new byte[]{0x04, 0x01, 0x01, 0x01, 0x04, 0x18, 0x05});
+
+                // uid, batch number, production week and year
+                byte[] production = new byte[14];
+                System.arraycopy(uid, 0, production, 0, 7);
+                production[12] = 0x01;
+                production[13] = 0x20;
+                pendingFrames.add(production);
+
+                return nextFrame();
+            }
+            case GET_APPLICATION_IDS: {
+                if (selected != PICC_AID) {
+                    return status(PERMISSION_ERROR);
+                }
+                byte[] aids = new byte[applications.size() * 3];
+                int offset = 0;
+                for (Integer aid : applications.keySet()) {
+                    writeInt24(aids, offset, aid);
+                    offset += 3;
+                }
+                return respond(aids, FRAME_SIZE - FRAME_SIZE % 3);
+            }
+            case SELECT_APPLICATION: {
+                if (data.length != 3) {
+                    return status(LENGTH_ERROR);
+                }
+                int aid = readInt24(data, 0);
+                if (aid != PICC_AID && !applications.containsKey(aid)) {
+                    return status(APPLICATION_NOT_FOUND);
+                }
+                selected = aid;
+                return status(OPERATION_OK);
+            }
+            case GET_FILE_IDS: {
+                Application application = applications.get(selected);
+                if (application == null) {
+                    return status(PERMISSION_ERROR);
+                }
+                byte[] ids = new byte[application.files.size()];
+                int offset = 0;
+                for (Integer fileNo : application.files.keySet()) {
+                    ids[offset++] = fileNo.byteValue();
+                }
+                return respond(ids, FRAME_SIZE);
+            }
+            case GET_FILE_SETTINGS: {
+                if (data.length != 1) {
+                    return status(LENGTH_ERROR);
+                }
+                byte[] file = getSelectedFile(data[0] & 0xFF);
+                if (file == null) {
+                    return status(FILE_NOT_FOUND);
+                }
+                byte[] settings = Arrays.copyOf(FILE_SETTINGS, FILE_SETTINGS.length + 3);
+                writeInt24(settings, FILE_SETTINGS.length, file.length);
+                return respond(settings, FRAME_SIZE);
+            }
+            case READ_DATA: {
+                if (data.length != 7) {
+                    return status(LENGTH_ERROR);
+                }
+                byte[] file = getSelectedFile(data[0] & 0xFF);
+                if (file == null) {
+                    return status(FILE_NOT_FOUND);
+                }
+                int offset = readInt24(data, 1);
+                int length = readInt24(data, 4);
+                if (length == 0) {
+                    length = file.length - offset;
+                }
+                if (offset > file.length || length < 0 || offset + length > file.length) {
+                    return status(BOUNDARY_ERROR);
+                }
+                return respond(Arrays.copyOfRange(file, offset, offset + length), FRAME_SIZE);
+            }
+            case WRITE_DATA: {
+                if (data.length < 7) {
+                    return status(LENGTH_ERROR);
+                }
+                byte[] file = getSelectedFile(data[0] & 0xFF);
+                if (file == null) {
+                    return status(FILE_NOT_FOUND);
+                }
+                int offset = readInt24(data, 1);
+                int length = readInt24(data, 4);
+                if (offset + length > file.length) {
+                    return status(BOUNDARY_ERROR);
+                }
+                pendingFile = file;
+                pendingWriteOffset = offset;
+                pendingWriteRemaining = length;
+
+                return write(Arrays.copyOfRange(data, 7, data.length));
+            }
+            case AUTHENTICATE:
+            case AUTHENTICATE_ISO:
+            case AUTHENTICATE_AES: {
+                return status(AUTHENTICATION_ERROR);
+            }
+            default:
+                return status(ILLEGAL_COMMAND_CODE);
+        }
+    }
+
+    private byte[] processAdditionalFrame(byte[] data) {
+        if (pendingFile != null) {
+            return write(data);
+        }
+        if (!pendingFrames.isEmpty()) {
+            return nextFrame();
+        }
+        return status(ILLEGAL_COMMAND_CODE);
+    }
+
+    private byte[] write(byte[] data) {
+        if (data.length > pendingWriteRemaining) {
+            pendingFile = null;
+
+            return status(LENGTH_ERROR);
+        }
+        System.arraycopy(data, 0, pendingFile, pendingWriteOffset, data.length);
+        pendingWriteOffset += data.length;
+        pendingWriteRemaining -= data.length;
+
+        if (pendingWriteRemaining > 0) {
+            return status(ADDITIONAL_FRAME);
+        }
+        pendingFile = null;
+
+        return status(OPERATION_OK);
+    }
+
+    private byte[] respond(byte[] data, int frameSize) {
+        int offset = 0;
+        do {
+            int length = Math.min(frameSize, data.length - offset);
+            pendingFrames.add(Arrays.copyOfRange(data, offset, offset + length));
+            offset += length;
+        } while (offset < data.length);
+
+        return nextFrame();
+    }
+
+    private byte[] nextFrame() {
+        byte[] frame = pendingFrames.poll();
+
+        return withStatus(frame, status(pendingFrames.isEmpty() ? OPERATION_OK : ADDITIONAL_FRAME));
+    }
+
+    private byte[] getSelectedFile(int fileNo) {
+        Application application = applications.get(selected);
+        if (application == null) {
+            return null;
+        }
+        return application.files.get(fileNo);
+    }
+
+    private static byte[] status(byte status) {
+        return new byte[]{(byte) 0x91, status};
+    }
+
+    private static int readInt24(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16);
+    }
+
+    private static void writeInt24(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.skjolber.nfc.simulator;
+
+/**
+ * Model of the round-trip time of a command to a tag via a reader: a fixed cost per command plus a cost per byte
+ * transferred (command and response). Times are in nanoseconds.<br>
+ * <br>
+ * The presets are rough figures for ACS readers; measure the actual reader for anything more precise.
+ */
+
+public class LatencyModel {
+
+    /** No latency, i.e. measure the CPU cost of the stack only */
+    public static final LatencyModel NONE = new LatencyModel(0, 0);
+
+    /** USB reader, i.e. ACR 122U or ACR 1252U */
+    public static final LatencyModel USB = new LatencyModel(4000000L, 10000L);
+
+    /** Bluetooth Low Energy reader, i.e. ACR 1255U-J1 */
+    public static final LatencyModel BLE = new LatencyModel(30000000L, 60000L);
+
+    private final long perCommand;
+    private final long perByte;
+
+    public LatencyModel(long perCommand, long perByte) {
+        this.perCommand = perCommand;
+        this.perByte = perByte;
+    }
+
+    public long getPerCommand() {
+        return perCommand;
+    }
+
+    public long getPerByte() {
+        return perByte;
+    }
+
+    /**
+     * Get the round-trip time for a command.
+     *
+     * @param commandLength  number of bytes sent
+     * @param responseLength number of bytes received
+     * @return time in nanoseconds
+     */
+
+    public long getLatency(int commandLength, int responseLength) {
+        return perCommand + perByte * (commandLength + responseLength);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyModel[perCommand=" + perCommand + "ns, perByte=" + perByte + "ns]";
+    }
+}
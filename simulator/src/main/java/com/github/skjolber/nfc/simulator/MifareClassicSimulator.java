@@ -0,0 +1,238 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.util.Arrays;
+
+import org.nfctools.api.TagType;
+import org.nfctools.mf.classic.MemoryLayout;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.spi.acs.Acs;
+import org.nfctools.spi.acs.AcrMfClassicReaderWriter;
+
+/**
+ * Mifare Classic 1K or 4K tag. Supports loading keys into the (simulated) reader, authentication per sector, and
+ * READ_BINARY / UPDATE_BINARY of 16-byte blocks within the authenticated sector.<br>
+ * <br>
+ * Key A always reads as zeros from a sector trailer. Access conditions are otherwise not enforced, i.e. either
+ * key gives read and write access to the whole sector. The manufacturer block is read-only.
+ */
+
+public class MifareClassicSimulator extends SimulatedTag {
+
+    public static final int BLOCK_SIZE = 16;
+
+    /** volatile key locations in the reader */
+    public static final int KEY_SLOTS = 32;
+
+    private static final byte[] TRANSPORT_TRAILER = new byte[]{
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0xFF, 0x07, (byte) 0x80, 0x69,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF
+    };
+
+    public static MifareClassicSimulator newClassic1K(byte[] uid) {
+        return new MifareClassicSimulator(TagType.MIFARE_CLASSIC_1K, uid, MemoryLayout.CLASSIC_1K);
+    }
+
+    public static MifareClassicSimulator newClassic4K(byte[] uid) {
+        return new MifareClassicSimulator(TagType.MIFARE_CLASSIC_4K, uid, MemoryLayout.CLASSIC_4K);
+    }
+
+    private final MemoryLayout memoryLayout;
+    private final byte[][] blocks;
+    private final byte[][] keySlots = new byte[KEY_SLOTS][];
+
+    private int authenticatedSector = -1;
+
+    private long authentications;
+    private long blockReads;
+    private long blockWrites;
+    private final long[] sectorReads;
+
+    /**
+     * Constructor for a tag in transport configuration, i.e. all keys 0xFFFFFFFFFFFF and no MAD.
+     *
+     * @param tagType      tag type as reported by the reader
+     * @param uid          4-byte UID
+     * @param memoryLayout memory layout
+     */
+
+    public MifareClassicSimulator(TagType tagType, byte[] uid, MemoryLayout memoryLayout) {
+        super(tagType, uid);
+        if (uid.length != 4) {
+            throw new IllegalArgumentException("Expected 4 byte UID, got " + uid.length);
+        }
+        this.memoryLayout = memoryLayout;
+        this.sectorReads = new long[memoryLayout.getSectors()];
+
+        int sectors = memoryLayout.getSectors();
+        int lastSector = sectors - 1;
+        blocks = new byte[memoryLayout.getBlockNumber(lastSector, memoryLayout.getBlocksPerSector(lastSector) - 1) + 1][];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new byte[BLOCK_SIZE];
+        }
+        for (int sector = 0; sector < sectors; sector++) {
+            blocks[getTrailerBlock(sector)] = TRANSPORT_TRAILER.clone();
+        }
+
+        // manufacturer block
+        byte[] manufacturer = blocks[0];
+        System.arraycopy(uid, 0, manufacturer, 0, 4);
+        manufacturer[4] = (byte) (uid[0] ^ uid[1] ^ uid[2] ^ uid[3]);
+        if (sectors > 16) {
+            manufacturer[5] = 0x18;
+            manufacturer[6] = 0x02;
+        } else {
+            manufacturer[5] = 0x08;
+            manufacturer[6] = 0x04;
+        }
+    }
+
+    public MemoryLayout getMemoryLayout() {
+        return memoryLayout;
+    }
+
+    /**
+     * Create a reader/writer for this tag, as the service would for the corresponding tag type.
+     *
+     * @return reader/writer
+     */
+
+    public MfClassicReaderWriter newReaderWriter() {
+        return new AcrMfClassicReaderWriter(this, memoryLayout);
+    }
+
+    public synchronized byte[] getBlock(int block) {
+        return blocks[block].clone();
+    }
+
+    /**
+     * Set block content directly, bypassing authentication. For test setup.
+     *
+     * @param block block number
+     * @param data  16 bytes
+     */
+
+    public synchronized void setBlock(int block, byte[] data) {
+        if (data.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("Expected " + BLOCK_SIZE + " bytes, got " + data.length);
+        }
+        blocks[block] = data.clone();
+    }
+
+    public int getSector(int block) {
+        if (block < 128) {
+            return block / 4;
+        }
+        return 32 + (block - 128) / 16;
+    }
+
+    private int getTrailerBlock(int sector) {
+        return memoryLayout.getBlockNumber(sector, memoryLayout.getTrailerBlockNumberForSector(sector));
+    }
+
+    @Override
+    protected byte[] processLoadKey(int slot, byte[] key) {
+        if (key.length != 6) {
+            return SW_WRONG_LENGTH;
+        }
+        if (slot >= KEY_SLOTS) {
+            return SW_FAILURE;
+        }
+        keySlots[slot] = key.clone();
+        return SW_SUCCESS;
+    }
+
+    @Override
+    protected byte[] processAuthenticate(int block, int keyType, int slot) {
+        authenticatedSector = -1;
+        authentications++;
+
+        if (block >= blocks.length || slot >= KEY_SLOTS || keySlots[slot] == null) {
+            return SW_FAILURE;
+        }
+        int sector = getSector(block);
+
+        byte[] trailer = blocks[getTrailerBlock(sector)];
+
+        byte[] key;
+        if (keyType == Acs.KEY_A) {
+            key = Arrays.copyOfRange(trailer, 0, 6);
+        } else if (keyType == Acs.KEY_B) {
+            key = Arrays.copyOfRange(trailer, 10, 16);
+        } else {
+            return SW_FAILURE;
+        }
+
+        if (!Arrays.equals(key, keySlots[slot])) {
+            return SW_FAILURE;
+        }
+        authenticatedSector = sector;
+
+        return SW_SUCCESS;
+    }
+
+    @Override
+    protected byte[] processReadBinary(int block, int length) {
+        if (length != BLOCK_SIZE) {
+            return SW_WRONG_LENGTH;
+        }
+        if (block >= blocks.length || getSector(block) != authenticatedSector) {
+            return SW_FAILURE;
+        }
+        blockReads++;
+        sectorReads[authenticatedSector]++;
+
+        byte[] data = blocks[block].clone();
+        if (block == getTrailerBlock(authenticatedSector)) {
+            Arrays.fill(data, 0, 6, (byte) 0);
+        }
+        return withStatus(data, SW_SUCCESS);
+    }
+
+    @Override
+    protected byte[] processUpdateBinary(int block, byte[] data) {
+        if (data.length != BLOCK_SIZE) {
+            return SW_WRONG_LENGTH;
+        }
+        if (block == 0 || block >= blocks.length || getSector(block) != authenticatedSector) {
+            return SW_FAILURE;
+        }
+        blockWrites++;
+
+        blocks[block] = data.clone();
+        return SW_SUCCESS;
+    }
+
+    public synchronized long getAuthentications() {
+        return authentications;
+    }
+
+    public synchronized long getBlockReads() {
+        return blockReads;
+    }
+
+    public synchronized long getBlockWrites() {
+        return blockWrites;
+    }
+
+    /**
+     * Get the number of blocks read from a sector.
+     *
+     * @param sector sector number
+     * @return number of READ_BINARY commands for blocks in the sector
+     */
+
+    public synchronized long getSectorReads(int sector) {
+        return sectorReads[sector];
+    }
+
+    @Override
+    public synchronized void resetCounters() {
+        super.resetCounters();
+
+        authentications = 0;
+        blockReads = 0;
+        blockWrites = 0;
+        Arrays.fill(sectorReads, 0);
+    }
+}
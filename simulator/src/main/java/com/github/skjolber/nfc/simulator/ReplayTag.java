@@ -0,0 +1,96 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.nfctools.NfcException;
+import org.nfctools.api.TagType;
+
+import com.github.skjolber.nfc.command.Utils;
+import com.github.skjolber.nfc.service.ApduTrace;
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+
+/**
+ * Tag which serves the responses of a recorded {@linkplain ApduTrace}, so that a tap can be re-run offline through
+ * the same reader/writers and service code, for example with a profiler attached.<br>
+ * <br>
+ * Replay is deterministic: each command must equal the next recorded request, otherwise a {@linkplain NfcException}
+ * is thrown. Key bytes are compared as recorded, i.e. masked by {@linkplain ApduTraceRecorder#mask(byte[], int)}. If sleep is enabled, the calling thread is delayed by the recorded round-trip time of each command.
+ */
+
+public class ReplayTag extends SimulatedTag {
+
+    private final List<ApduTrace.Entry> entries;
+
+    private int position;
+    private long recordedTime;
+
+    /**
+     * Constructor
+     *
+     * @param tagType tag type as reported by the reader
+     * @param entries recorded entries for a single slot, see {@linkplain ApduTrace#getEntries(int)}
+     */
+
+    public ReplayTag(TagType tagType, List<ApduTrace.Entry> entries) {
+        super(tagType, new byte[0]);
+
+        this.entries = new ArrayList<ApduTrace.Entry>(entries);
+    }
+
+    @Override
+    protected byte[] process(byte[] command) {
+        if (position >= entries.size()) {
+            throw new NfcException("Replay exhausted after " + entries.size() + " commands, got " + Utils.toHexString(command));
+        }
+        ApduTrace.Entry entry = entries.get(position);
+        if (!Arrays.equals(entry.getRequest(), ApduTraceRecorder.mask(command, command.length))) {
+            throw new NfcException("Replay diverged at command " + position + ": expected " + Utils.toHexString(entry.getRequest()) + ", got " + Utils.toHexString(command));
+        }
+        position++;
+
+        recordedTime += entry.getLatency();
+        if (isSleep() && entry.getLatency() > 0) {
+            LockSupport.parkNanos(entry.getLatency());
+        }
+
+        return entry.getResponse().clone();
+    }
+
+    /**
+     * Get the number of commands replayed.
+     *
+     * @return index of the next recorded entry
+     */
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public synchronized boolean isComplete() {
+        return position == entries.size();
+    }
+
+    /**
+     * Get the recorded round-trip time of the commands replayed so far.
+     *
+     * @return time in nanoseconds
+     */
+
+    public synchronized long getRecordedTime() {
+        return recordedTime;
+    }
+
+    /**
+     * Restart the replay from the first recorded entry.
+     */
+
+    public synchronized void rewind() {
+        position = 0;
+        recordedTime = 0;
+
+        resetCounters();
+    }
+}
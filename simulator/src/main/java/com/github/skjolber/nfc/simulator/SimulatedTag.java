@@ -0,0 +1,344 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.nfctools.NfcException;
+import org.nfctools.api.ApduTag;
+import org.nfctools.api.TagType;
+import org.nfctools.scio.Command;
+import org.nfctools.scio.Response;
+import org.nfctools.spi.acs.Apdu;
+
+import com.acs.smartcard.ReaderException;
+import com.github.skjolber.nfc.command.Utils;
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+import com.github.skjolber.nfc.service.IsoDepWrapper;
+
+import custom.java.CommandAPDU;
+import custom.java.ResponseAPDU;
+
+/**
+ * In-memory tag behind a simulated ACS reader. Answers the same pseudo-APDUs as the reader (class 0xFF), including
+ * the PN532 passthrough used for native tag commands, so that the production reader/writers and NDEF operations
+ * run unmodified on top of it.<br>
+ * <br>
+ * Counts commands and bytes exchanged, and accumulates simulated round-trip time according to a
+ * {@linkplain LatencyModel}; optionally the calling thread is also delayed by that time. Commands can be
+ * recorded to an {@linkplain ApduTraceRecorder}, as the service does at the reader boundary.
+ */
+
+public abstract class SimulatedTag implements ApduTag, IsoDepWrapper {
+
+    protected static final byte[] SW_SUCCESS = new byte[]{(byte) 0x90, 0x00};
+    protected static final byte[] SW_FAILURE = new byte[]{0x63, 0x00};
+    protected static final byte[] SW_WRONG_LENGTH = new byte[]{0x67, 0x00};
+    protected static final byte[] SW_INS_NOT_SUPPORTED = new byte[]{0x6D, 0x00};
+    protected static final byte[] SW_CLA_NOT_SUPPORTED = new byte[]{0x6E, 0x00};
+
+    /** PN532 InCommunicateThru, as used by {@linkplain org.nfctools.mf.ul.ntag.NfcNtag} */
+    private static final int PN532_IN_COMMUNICATE_THRU = 0x42;
+    /** PN532 InDataExchange, as used by {@linkplain com.github.skjolber.nfc.command.ReaderWrapper} */
+    private static final int PN532_IN_DATA_EXCHANGE = 0x04;
+
+    /** PN532 status for a tag which did not answer */
+    private static final int PN532_STATUS_TIMEOUT = 0x01;
+
+    protected final TagType tagType;
+    protected final byte[] uid;
+
+    private LatencyModel latencyModel = LatencyModel.NONE;
+    private boolean sleep;
+    private boolean present = true;
+    private ApduTraceRecorder traceRecorder;
+
+    private long commands;
+    private long bytesSent;
+    private long bytesReceived;
+    private long simulatedTime;
+
+    protected SimulatedTag(TagType tagType, byte[] uid) {
+        this.tagType = tagType;
+        this.uid = uid;
+    }
+
+    @Override
+    public TagType getTagType() {
+        return tagType;
+    }
+
+    public byte[] getUid() {
+        return uid.clone();
+    }
+
+    @Override
+    public Response transmit(Command command) {
+        CommandAPDU commandAPDU;
+        if (command.isDataOnly()) {
+            commandAPDU = new CommandAPDU(Apdu.CLS_PTS, 0, 0, 0, command.getData(), command.getOffset(), command.getLength());
+        } else if (command.hasData()) {
+            commandAPDU = new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(), command.getData());
+        } else {
+            commandAPDU = new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(), command.getLength());
+        }
+
+        ResponseAPDU responseAPDU = new ResponseAPDU(transmit(commandAPDU.getBytes()));
+
+        return new Response(responseAPDU.getSW1(), responseAPDU.getSW2(), responseAPDU.getData());
+    }
+
+    @Override
+    public byte[] transmit(byte[] in) {
+        return exchange(in);
+    }
+
+    @Override
+    public byte[] transmitPassthrough(byte[] in) {
+        byte[] response = exchange(passthrough(PN532_IN_DATA_EXCHANGE, in));
+
+        ResponseAPDU responseAPDU = new ResponseAPDU(response);
+        byte[] data = responseAPDU.getData();
+        if (!responseAPDU.isSuccess() || (data[2] & 0xFF) != 0) {
+            throw new NfcException("Passthrough command failed with response " + Utils.toHexString(response));
+        }
+        byte[] content = new byte[data.length - 3];
+        System.arraycopy(data, 3, content, 0, content.length);
+        return content;
+    }
+
+    @Override
+    public byte[] transceive(byte[] data) throws ReaderException {
+        return exchange(data);
+    }
+
+    @Override
+    public byte[] transmitPassThrough(byte[] req) throws ReaderException {
+        return transmitPassthrough(req);
+    }
+
+    private static byte[] passthrough(int function, byte[] in) {
+        byte[] sub = new byte[2 + in.length];
+        sub[0] = (byte) 0xD4;
+        sub[1] = (byte) function;
+        System.arraycopy(in, 0, sub, 2, in.length);
+
+        return new CommandAPDU(Apdu.CLS_PTS, 0x00, 0x00, 0x00, sub).getBytes();
+    }
+
+    private synchronized byte[] exchange(byte[] command) {
+        if (!present) {
+            throw new NfcException("Tag not present");
+        }
+
+        long start = System.nanoTime();
+
+        byte[] response = process(command);
+
+        commands++;
+        bytesSent += command.length;
+        bytesReceived += response.length;
+
+        long latency = latencyModel.getLatency(command.length, response.length);
+        simulatedTime += latency;
+        if (sleep && latency > 0) {
+            LockSupport.parkNanos(latency);
+        }
+
+        if (traceRecorder != null) {
+            traceRecorder.record(0, start, latency, command, command.length, response, response.length);
+        }
+
+        return response;
+    }
+
+    protected byte[] process(byte[] command) {
+        if (command.length < 4) {
+            return SW_WRONG_LENGTH;
+        }
+        if ((command[0] & 0xFF) != Apdu.CLS_PTS) {
+            return processApdu(command);
+        }
+
+        CommandAPDU apdu = new CommandAPDU(command);
+
+        switch (apdu.getINS()) {
+            case Apdu.INS_GET_DATA: {
+                if (apdu.getP1() != 0x00) {
+                    return SW_INS_NOT_SUPPORTED;
+                }
+                return withStatus(uid, SW_SUCCESS);
+            }
+            case 0x00: {
+                byte[] data = apdu.getData();
+                if (data.length >= 2 && (data[0] & 0xFF) == 0xD4 && ((data[1] & 0xFF) == PN532_IN_COMMUNICATE_THRU || (data[1] & 0xFF) == PN532_IN_DATA_EXCHANGE)) {
+                    byte[] nativeCommand = new byte[data.length - 2];
+                    System.arraycopy(data, 2, nativeCommand, 0, nativeCommand.length);
+
+                    return processPassthrough(data[1] & 0xFF, processNative(nativeCommand));
+                }
+                return SW_INS_NOT_SUPPORTED;
+            }
+            case Apdu.INS_READ_BINARY: {
+                return processReadBinary((apdu.getP1() << 8) | apdu.getP2(), apdu.getNe());
+            }
+            case Apdu.INS_UPDATE_BINARY: {
+                return processUpdateBinary((apdu.getP1() << 8) | apdu.getP2(), apdu.getData());
+            }
+            case Apdu.INS_EXTERNAL_AUTHENTICATE: {
+                return processLoadKey(apdu.getP2(), apdu.getData());
+            }
+            case Apdu.INS_INTERNAL_AUTHENTICATE_ACS: {
+                byte[] data = apdu.getData();
+                if (data.length != 5) {
+                    return SW_WRONG_LENGTH;
+                }
+                return processAuthenticate(data[2] & 0xFF, data[3] & 0xFF, data[4] & 0xFF);
+            }
+            default:
+                return SW_INS_NOT_SUPPORTED;
+        }
+    }
+
+    private static byte[] processPassthrough(int function, byte[] nativeResponse) {
+        if (nativeResponse == null) {
+            return new byte[]{(byte) 0xD5, (byte) (function + 1), PN532_STATUS_TIMEOUT, (byte) 0x90, 0x00};
+        }
+        byte[] response = new byte[3 + nativeResponse.length + 2];
+        response[0] = (byte) 0xD5;
+        response[1] = (byte) (function + 1);
+        response[2] = 0x00;
+        System.arraycopy(nativeResponse, 0, response, 3, nativeResponse.length);
+        response[response.length - 2] = (byte) 0x90;
+        response[response.length - 1] = 0x00;
+        return response;
+    }
+
+    protected static byte[] withStatus(byte[] data, byte[] status) {
+        byte[] response = new byte[data.length + status.length];
+        System.arraycopy(data, 0, response, 0, data.length);
+        System.arraycopy(status, 0, response, data.length, status.length);
+        return response;
+    }
+
+    /**
+     * Process a command which is not for the reader, i.e. an ISO 7816-4 APDU for the tag.
+     *
+     * @param command command APDU
+     * @return response APDU
+     */
+
+    protected byte[] processApdu(byte[] command) {
+        return SW_CLA_NOT_SUPPORTED;
+    }
+
+    /**
+     * Process a native tag command sent via the reader passthrough.
+     *
+     * @param command native command
+     * @return native response, or null if the tag does not answer
+     */
+
+    protected byte[] processNative(byte[] command) {
+        return null;
+    }
+
+    protected byte[] processReadBinary(int address, int length) {
+        return SW_INS_NOT_SUPPORTED;
+    }
+
+    protected byte[] processUpdateBinary(int address, byte[] data) {
+        return SW_INS_NOT_SUPPORTED;
+    }
+
+    protected byte[] processLoadKey(int slot, byte[] key) {
+        return SW_INS_NOT_SUPPORTED;
+    }
+
+    protected byte[] processAuthenticate(int block, int keyType, int slot) {
+        return SW_INS_NOT_SUPPORTED;
+    }
+
+    public LatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    public void setLatencyModel(LatencyModel latencyModel) {
+        this.latencyModel = latencyModel;
+    }
+
+    public boolean isSleep() {
+        return sleep;
+    }
+
+    /**
+     * Delay the calling thread by the simulated round-trip time of each command.
+     *
+     * @param sleep true if the calling thread is to be delayed
+     */
+
+    public void setSleep(boolean sleep) {
+        this.sleep = sleep;
+    }
+
+    public ApduTraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Record each command and response, with the simulated round-trip time as latency.
+     *
+     * @param traceRecorder recorder, or null
+     */
+
+    public synchronized void setTraceRecorder(ApduTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * Simulate the tag entering or leaving the field; commands to a tag which is not present fail.
+     *
+     * @param present true if present
+     */
+
+    public synchronized void setPresent(boolean present) {
+        this.present = present;
+    }
+
+    public synchronized long getCommands() {
+        return commands;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Get the accumulated round-trip time, according to the latency model.
+     *
+     * @return time in nanoseconds
+     */
+
+    public synchronized long getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    public synchronized void resetCounters() {
+        commands = 0;
+        bytesSent = 0;
+        bytesReceived = 0;
+        simulatedTime = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[" + tagType + ", uid=" + Utils.toHexString(uid) + ", commands=" + commands + ", sent=" + bytesSent
+                + ", received=" + bytesReceived + ", simulatedTime=" + (simulatedTime / 1000000) + "ms]";
+    }
+}
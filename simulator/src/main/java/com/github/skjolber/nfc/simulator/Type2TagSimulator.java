@@ -0,0 +1,286 @@
+package com.github.skjolber.nfc.simulator;
+
+import org.nfctools.api.TagType;
+import org.nfctools.mf.ul.LockPage;
+import org.nfctools.mf.ul.MemoryLayout;
+import org.nfctools.mf.ul.MfUlReaderWriter;
+import org.nfctools.mf.ul.ntag.NfcNtag;
+import org.nfctools.mf.ul.ntag.NfcNtagOpcode;
+import org.nfctools.mf.ul.ntag.NfcNtagVersion;
+import org.nfctools.spi.acs.AcrMfUlNTAGReaderWriter;
+import org.nfctools.spi.acs.AcrMfUlReaderWriter;
+
+/**
+ * NFC Forum Type 2 tag: Mifare Ultralight, Ultralight C and NTAG 213/215/216. Supports READ_BINARY / UPDATE_BINARY
+ * via the reader and the native READ, FAST_READ, WRITE and GET_VERSION commands.<br>
+ * <br>
+ * Writes follow the tag rules for the capability container and lock bytes (bits can only be set) and
+ * the static lock bits (pages 3 to 15). Dynamic lock bits, counters and passwords are not enforced.
+ */
+
+public class Type2TagSimulator extends SimulatedTag {
+
+    public static final int PAGE_SIZE = 4;
+
+    /** MIFARE Ultralight native ACK */
+    private static final byte ACK = 0x0A;
+
+    private static final int READ_PAGES = 4;
+
+    private static final int CAPABILITY_PAGE = 3;
+    private static final int STATIC_LOCK_PAGE = 2;
+
+    public static Type2TagSimulator newNtag213(byte[] uid) {
+        return new Type2TagSimulator(TagType.MIFARE_ULTRALIGHT, uid, 45, MemoryLayout.NTAG213, 0x12, version(0x0F));
+    }
+
+    public static Type2TagSimulator newNtag215(byte[] uid) {
+        return new Type2TagSimulator(TagType.MIFARE_ULTRALIGHT, uid, 135, MemoryLayout.NTAG215, 0x3E, version(0x11));
+    }
+
+    public static Type2TagSimulator newNtag216(byte[] uid) {
+        return new Type2TagSimulator(TagType.MIFARE_ULTRALIGHT, uid, 231, MemoryLayout.NTAG216, 0x6D, version(0x13));
+    }
+
+    public static Type2TagSimulator newUltralight(byte[] uid) {
+        return new Type2TagSimulator(TagType.MIFARE_ULTRALIGHT, uid, 16, MemoryLayout.ULTRALIGHT, 0x06, null);
+    }
+
+    public static Type2TagSimulator newUltralightC(byte[] uid) {
+        return new Type2TagSimulator(TagType.MIFARE_ULTRALIGHT_C, uid, 48, MemoryLayout.ULTRALIGHT_C, 0x12, null);
+    }
+
+    private static byte[] version(int storageSize) {
+        return new byte[]{0x00, 0x04, 0x04, 0x02, 0x01, 0x00, (byte) storageSize, 0x03};
+    }
+
+    private final byte[] memory;
+    private final int pages;
+    private final MemoryLayout memoryLayout;
+    private final byte[] version;
+
+    /**
+     * Constructor for a tag as delivered from the factory, i.e. formatted with an empty NDEF message.
+     *
+     * @param tagType       tag type as reported by the reader
+     * @param uid           7-byte UID
+     * @param pages         total number of pages
+     * @param memoryLayout  memory layout
+     * @param dataAreaSize  data area size for the capability container, in units of 8 bytes
+     * @param version       GET_VERSION response, or null if the tag does not support the command
+     */
+
+    public Type2TagSimulator(TagType tagType, byte[] uid, int pages, MemoryLayout memoryLayout, int dataAreaSize, byte[] version) {
+        super(tagType, uid);
+        if (uid.length != 7) {
+            throw new IllegalArgumentException("Expected 7 byte UID, got " + uid.length);
+        }
+        this.pages = pages;
+        this.memoryLayout = memoryLayout;
+        this.version = version;
+        this.memory = new byte[pages * PAGE_SIZE];
+
+        // UID with check bytes
+        memory[0] = uid[0];
+        memory[1] = uid[1];
+        memory[2] = uid[2];
+        memory[3] = (byte) (0x88 ^ uid[0] ^ uid[1] ^ uid[2]);
+        System.arraycopy(uid, 3, memory, 4, 4);
+        memory[8] = (byte) (uid[3] ^ uid[4] ^ uid[5] ^ uid[6]);
+        memory[9] = 0x48;
+
+        // capability container
+        memory[12] = (byte) 0xE1;
+        memory[13] = 0x10;
+        memory[14] = (byte) dataAreaSize;
+        memory[15] = 0x00;
+
+        // empty NDEF message and terminator
+        memory[16] = 0x03;
+        memory[17] = 0x00;
+        memory[18] = (byte) 0xFE;
+    }
+
+    public MemoryLayout getMemoryLayout() {
+        return memoryLayout;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public byte[] getVersion() {
+        return version != null ? version.clone() : null;
+    }
+
+    /**
+     * Create a reader/writer for this tag, as the service would for the corresponding tag type.
+     *
+     * @return reader/writer using FAST_READ for NTAG tags, or READ_BINARY otherwise.
+     */
+
+    public MfUlReaderWriter newReaderWriter() {
+        if (version != null) {
+            return new AcrMfUlNTAGReaderWriter(this, new NfcNtag(this), new NfcNtagVersion(version).getType());
+        }
+        return new AcrMfUlReaderWriter(this);
+    }
+
+    public synchronized byte[] getPage(int page) {
+        byte[] data = new byte[PAGE_SIZE];
+        System.arraycopy(memory, page * PAGE_SIZE, data, 0, PAGE_SIZE);
+        return data;
+    }
+
+    /**
+     * Set page content directly, bypassing lock and OTP rules. For test setup.
+     *
+     * @param page page number
+     * @param data one or more pages of data
+     */
+
+    public synchronized void setPages(int page, byte[] data) {
+        System.arraycopy(data, 0, memory, page * PAGE_SIZE, data.length);
+    }
+
+    @Override
+    protected byte[] processReadBinary(int page, int length) {
+        if (page >= pages) {
+            return SW_FAILURE;
+        }
+        if (length > READ_PAGES * PAGE_SIZE) {
+            return SW_WRONG_LENGTH;
+        }
+        return withStatus(read(page, length), SW_SUCCESS);
+    }
+
+    @Override
+    protected byte[] processUpdateBinary(int page, byte[] data) {
+        if (data.length != PAGE_SIZE) {
+            return SW_WRONG_LENGTH;
+        }
+        if (!write(page, data, 0)) {
+            return SW_FAILURE;
+        }
+        return SW_SUCCESS;
+    }
+
+    @Override
+    protected byte[] processNative(byte[] command) {
+        if (command.length == 0) {
+            return null;
+        }
+        switch (command[0]) {
+            case NfcNtagOpcode.READ: {
+                int page = command[1] & 0xFF;
+                if (command.length != 2 || page >= pages) {
+                    return null;
+                }
+                return read(page, READ_PAGES * PAGE_SIZE);
+            }
+            case NfcNtagOpcode.FAST_READ: {
+                if (command.length != 3) {
+                    return null;
+                }
+                int start = command[1] & 0xFF;
+                int end = command[2] & 0xFF;
+                if (version == null || start > end || end >= pages) {
+                    return null;
+                }
+                byte[] data = new byte[(end - start + 1) * PAGE_SIZE];
+                System.arraycopy(memory, start * PAGE_SIZE, data, 0, data.length);
+                return data;
+            }
+            case NfcNtagOpcode.WRITE: {
+                if (command.length != 2 + PAGE_SIZE || !write(command[1] & 0xFF, command, 2)) {
+                    return null;
+                }
+                return new byte[]{ACK};
+            }
+            case NfcNtagOpcode.GET_VERSION: {
+                return version != null ? version.clone() : null;
+            }
+            case NfcNtagOpcode.READ_CNT: {
+                return version != null ? new byte[3] : null;
+            }
+            case NfcNtagOpcode.READ_SIG: {
+                return version != null ? new byte[32] : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private byte[] read(int page, int length) {
+        // reads roll over to page 0
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = memory[(page * PAGE_SIZE + i) % memory.length];
+        }
+        return data;
+    }
+
+    private boolean write(int page, byte[] data, int offset) {
+        if (page < STATIC_LOCK_PAGE || page >= pages) {
+            return false;
+        }
+        if (isLocked(page)) {
+            return false;
+        }
+
+        int address = page * PAGE_SIZE;
+        if (page == CAPABILITY_PAGE) {
+            // one-time programmable
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                memory[address + i] |= data[offset + i];
+            }
+            return true;
+        }
+
+        LockPage lockPage = getLockPage(page);
+        if (lockPage != null) {
+            // lock bits can only be set; other bytes are written as-is, except the first two bytes of the static lock page
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (isLockByte(lockPage, i)) {
+                    memory[address + i] |= data[offset + i];
+                } else if (page != STATIC_LOCK_PAGE) {
+                    memory[address + i] = data[offset + i];
+                }
+            }
+            return true;
+        }
+
+        System.arraycopy(data, offset, memory, address, PAGE_SIZE);
+        return true;
+    }
+
+    private boolean isLocked(int page) {
+        if (page < CAPABILITY_PAGE || page > 15) {
+            return false;
+        }
+        int lock0 = memory[STATIC_LOCK_PAGE * PAGE_SIZE + 2] & 0xFF;
+        int lock1 = memory[STATIC_LOCK_PAGE * PAGE_SIZE + 3] & 0xFF;
+        if (page < 8) {
+            return (lock0 & (1 << page)) != 0;
+        }
+        return (lock1 & (1 << (page - 8))) != 0;
+    }
+
+    private LockPage getLockPage(int page) {
+        for (LockPage lockPage : memoryLayout.getLockPages()) {
+            if (lockPage.getPage() == page) {
+                return lockPage;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLockByte(LockPage lockPage, int index) {
+        for (byte lockByte : lockPage.getLockBytes()) {
+            if (lockByte == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
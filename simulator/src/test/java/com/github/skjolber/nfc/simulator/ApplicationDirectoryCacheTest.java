@@ -0,0 +1,116 @@
+package com.github.skjolber.nfc.simulator;
+
+import org.junit.Test;
+import org.nfctools.api.TagInfo;
+import org.nfctools.mf.MfConstants;
+import org.nfctools.mf.block.TrailerBlock;
+import org.nfctools.mf.classic.ClassicHandler;
+import org.nfctools.mf.classic.Key;
+import org.nfctools.mf.classic.MfClassicNdefOperations;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.mf.mad.AbstractMad;
+import org.nfctools.mf.mad.ApplicationDirectory;
+import org.nfctools.mf.mad.ApplicationId;
+import org.nfctools.mf.mad.MadKeyConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApplicationDirectoryCacheTest {
+
+    private static final byte[] UID_4 = new byte[]{0x11, 0x22, 0x33, 0x44};
+
+    private static final ApplicationId APP_ID = new ApplicationId(new byte[]{0x01, 0x42});
+
+    private static final MadKeyConfig WRITE_KEY_CONFIG = new MadKeyConfig(Key.A, MfConstants.NDEF_KEY, MfConstants.NDEF_KEY);
+
+    @Test
+    public void readOncePerSession() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic1K(UID_4);
+
+        MfClassicReaderWriter readerWriter = tag.newReaderWriter();
+        new MfClassicNdefOperations(readerWriter, readerWriter.getTagInfo(), false, true).format();
+
+        // sector 0 reads for a single uncached lookup: trailer and two MAD blocks
+        readerWriter = tag.newReaderWriter();
+        tag.resetCounters();
+        AbstractMad.initInstance(readerWriter, MfConstants.NDEF_KEY_CONFIG);
+        long lookup = tag.getSectorReads(0);
+        assertEquals(3, lookup);
+
+        // the service flow for a single tap
+        readerWriter = tag.newReaderWriter();
+        TagInfo tagInfo = readerWriter.getTagInfo();
+        tag.resetCounters();
+
+        assertTrue(readerWriter.hasApplicationDirectory());
+        assertTrue(readerWriter.getApplicationDirectory().hasApplication(MfConstants.NDEF_APP_ID));
+
+        MfClassicNdefOperations operations = new MfClassicNdefOperations(readerWriter, tagInfo, true, true);
+        operations.readNdefMessageBytes();
+        int maxSize = operations.getMaxSize();
+        operations.readNdefMessageBytes();
+
+        // hasApplicationDirectory reads the trailer, then the MAD is read once
+        assertEquals(1 + lookup, tag.getSectorReads(0));
+
+        // copies follow the key configuration
+        assertTrue(readerWriter.getApplicationDirectory(new MadKeyConfig(Key.A, MfConstants.NDEF_KEY, null)).isReadonly());
+        assertFalse(readerWriter.getApplicationDirectory(WRITE_KEY_CONFIG).isReadonly());
+        assertEquals(maxSize, readerWriter.getApplicationDirectory().openApplication(MfConstants.NDEF_APP_ID).getAllocatedSize());
+        assertEquals(1 + lookup, tag.getSectorReads(0));
+    }
+
+    @Test
+    public void writeChangedBlocksOnly() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic4K(UID_4);
+
+        MfClassicReaderWriter readerWriter = tag.newReaderWriter();
+        readerWriter.createApplicationDirectory(new MadKeyConfig(Key.A, MfConstants.TRANSPORT_KEY, MfConstants.NDEF_KEY));
+
+        readerWriter = tag.newReaderWriter();
+        ApplicationDirectory applicationDirectory = readerWriter.getApplicationDirectory(WRITE_KEY_CONFIG);
+        tag.resetCounters();
+
+        TrailerBlock trailerBlock = ClassicHandler.createReadWriteDataTrailerBlock();
+        trailerBlock.setKey(Key.A, MfConstants.NDEF_KEY);
+        trailerBlock.setKey(Key.B, MfConstants.NDEF_KEY);
+        applicationDirectory.createApplication(APP_ID, MfConstants.BYTES_PER_BLOCK * 3, MfConstants.NDEF_KEY, trailerBlock);
+
+        // application sector trailer and the first MAD block, neither the second MAD block nor the MAD2 sector
+        assertEquals(2, tag.getBlockWrites());
+
+        // the cached MAD is invalidated by the write
+        assertTrue(readerWriter.getApplicationDirectory().hasApplication(APP_ID));
+        assertEquals(3, tag.getSectorReads(0));
+
+        MfClassicReaderWriter reread = tag.newReaderWriter();
+        assertTrue(reread.getApplicationDirectory().hasApplication(APP_ID));
+    }
+
+    @Test
+    public void copiesShareWrittenBlocks() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic4K(UID_4);
+
+        MfClassicReaderWriter readerWriter = tag.newReaderWriter();
+        readerWriter.createApplicationDirectory(new MadKeyConfig(Key.A, MfConstants.TRANSPORT_KEY, MfConstants.NDEF_KEY));
+
+        readerWriter = tag.newReaderWriter();
+        ApplicationDirectory first = readerWriter.getApplicationDirectory(WRITE_KEY_CONFIG);
+        ApplicationDirectory second = readerWriter.getApplicationDirectory(WRITE_KEY_CONFIG);
+
+        TrailerBlock trailerBlock = ClassicHandler.createReadWriteDataTrailerBlock();
+        trailerBlock.setKey(Key.A, MfConstants.NDEF_KEY);
+        trailerBlock.setKey(Key.B, MfConstants.NDEF_KEY);
+        first.createApplication(APP_ID, MfConstants.BYTES_PER_BLOCK * 3, MfConstants.NDEF_KEY, trailerBlock);
+
+        // the same allocation through the older copy: the MAD block is already on the card
+        tag.resetCounters();
+        second.createApplication(APP_ID, MfConstants.BYTES_PER_BLOCK * 3, MfConstants.NDEF_KEY, trailerBlock);
+        assertEquals(1, tag.getBlockWrites());
+
+        MfClassicReaderWriter reread = tag.newReaderWriter();
+        assertTrue(reread.getApplicationDirectory().hasApplication(APP_ID));
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.skjolber.nfc.simulator;
+
+import org.junit.Test;
+import org.nfctools.api.TagInfo;
+import org.nfctools.mf.MfConstants;
+import org.nfctools.mf.classic.Key;
+import org.nfctools.mf.classic.KeyDictionary;
+import org.nfctools.mf.classic.KeyValue;
+import org.nfctools.mf.classic.MfClassicConstants;
+import org.nfctools.mf.classic.MfClassicNdefOperations;
+import org.nfctools.spi.acs.AcrMfClassicReaderWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyDictionaryTest {
+
+    private static final byte[] UID_4 = new byte[]{0x11, 0x22, 0x33, 0x44};
+
+    @Test
+    public void memoKeyedOnManufacturerBlock() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic1K(UID_4);
+        new MfClassicNdefOperations(tag.newReaderWriter(), tag.newReaderWriter().getTagInfo(), false, true).format();
+
+        KeyDictionary keyDictionary = new KeyDictionary();
+        String cardId = KeyDictionary.getCardId(UID_4);
+
+        // first tap: the card is not known, no get data command for the UID
+        AcrMfClassicReaderWriter readerWriter = newReaderWriter(tag, keyDictionary);
+        long before = tag.getCommands();
+        assertNull(readerWriter.getCardId());
+        assertEquals(before, tag.getCommands());
+
+        TagInfo tagInfo = readerWriter.getTagInfo();
+        long commands = tag.getCommands();
+        assertEquals(cardId, readerWriter.getCardId());
+        assertEquals(commands, tag.getCommands());
+
+        new MfClassicNdefOperations(readerWriter, tagInfo, true, true).readNdefMessageBytes();
+        assertEquals(0, keyDictionary.getMisses());
+        assertEquals(MfClassicConstants.MAD_KEY, keyDictionary.getKey(cardId, 0));
+
+        // second tap: the application sectors are opened with the memoized keys
+        keyDictionary.resetCounters();
+        readerWriter = newReaderWriter(tag, keyDictionary);
+        tagInfo = readerWriter.getTagInfo();
+        new MfClassicNdefOperations(readerWriter, tagInfo, true, true).readNdefMessageBytes();
+        assertTrue(keyDictionary.getHits() > 0);
+        assertEquals(0, keyDictionary.getMisses());
+
+        // a known UID also keys the manufacturer block login
+        keyDictionary.resetCounters();
+        tag.resetCounters();
+        readerWriter = newReaderWriter(tag, keyDictionary);
+        readerWriter.setCardId(cardId);
+        readerWriter.getTagInfo();
+        assertEquals(1, keyDictionary.getHits());
+        assertEquals(1, tag.getAuthentications());
+    }
+
+    @Test
+    public void missOnlyOnFallback() throws Exception {
+        KeyDictionary keyDictionary = new KeyDictionary();
+
+        // lookups for an unknown card are not misses
+        keyDictionary.getKey("unknown", 1);
+        keyDictionary.getKey("unknown", 2);
+        assertEquals(0, keyDictionary.getMisses());
+
+        keyDictionary.getKeys("unknown", 1);
+        assertEquals(1, keyDictionary.getMisses());
+
+        keyDictionary.setSuccessfulKey("known", 1, new KeyValue(Key.A, MfConstants.NDEF_KEY));
+        assertArrayEquals(MfConstants.NDEF_KEY, keyDictionary.getKeys("known", 1).get(0).getKeyValue());
+        assertEquals(1, keyDictionary.getHits());
+        assertEquals(1, keyDictionary.getMisses());
+    }
+
+    private static AcrMfClassicReaderWriter newReaderWriter(MifareClassicSimulator tag, KeyDictionary keyDictionary) {
+        return new AcrMfClassicReaderWriter(tag, tag.getMemoryLayout(), keyDictionary, MifareClassicSimulator.KEY_SLOTS);
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.nfctools.NfcException;
+import org.nfctools.api.TagType;
+import org.nfctools.mf.classic.MemoryLayout;
+import org.nfctools.mf.classic.MfClassicNdefOperations;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.spi.acs.AcrMfClassicReaderWriter;
+
+import com.github.skjolber.nfc.service.ApduTrace;
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReplayTagTest {
+
+    private static final byte[] UID_4 = new byte[]{0x11, 0x22, 0x33, 0x44};
+    private static final byte[] UID_7 = new byte[]{0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    private static ApduTrace export(ApduTraceRecorder recorder) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        recorder.writeTo(bout);
+
+        return ApduTrace.read(new ByteArrayInputStream(bout.toByteArray()));
+    }
+
+    @Test
+    public void replayClassicRead() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic1K(UID_4);
+        tag.setLatencyModel(LatencyModel.USB);
+
+        MfClassicReaderWriter readerWriter = tag.newReaderWriter();
+        new MfClassicNdefOperations(readerWriter, readerWriter.getTagInfo(), false, true).format();
+
+        ApduTraceRecorder recorder = new ApduTraceRecorder();
+        recorder.setEnabled(true);
+        tag.setTraceRecorder(recorder);
+        tag.resetCounters();
+
+        MfClassicReaderWriter recorded = tag.newReaderWriter();
+        byte[] expected = new MfClassicNdefOperations(recorded, recorded.getTagInfo(), true, true).readNdefMessageBytes();
+
+        ApduTrace trace = export(recorder);
+        List<ApduTrace.Entry> entries = trace.getEntries(0);
+        assertEquals(tag.getCommands(), entries.size());
+        assertEquals(tag.getSimulatedTime(), sumLatency(entries));
+
+        ReplayTag replay = new ReplayTag(TagType.MIFARE_CLASSIC_1K, entries);
+        MfClassicReaderWriter replayed = new AcrMfClassicReaderWriter(replay, MemoryLayout.CLASSIC_1K);
+        assertArrayEquals(expected, new MfClassicNdefOperations(replayed, replayed.getTagInfo(), true, true).readNdefMessageBytes());
+
+        assertTrue(replay.isComplete());
+        assertEquals(tag.getSimulatedTime(), replay.getRecordedTime());
+
+        // deterministic, so the same tap can be re-run
+        replay.rewind();
+        replayed = new AcrMfClassicReaderWriter(replay, MemoryLayout.CLASSIC_1K);
+        assertArrayEquals(expected, new MfClassicNdefOperations(replayed, replayed.getTagInfo(), true, true).readNdefMessageBytes());
+    }
+
+    @Test
+    public void replayDiverges() throws Exception {
+        DesfireSimulator tag = new DesfireSimulator(UID_7);
+        tag.addApplication(0x010203);
+
+        ApduTraceRecorder recorder = new ApduTraceRecorder();
+        recorder.setEnabled(true);
+        tag.setTraceRecorder(recorder);
+
+        byte[] select = new byte[]{(byte) 0x90, 0x5A, 0x00, 0x00, 0x03, 0x03, 0x02, 0x01, 0x00};
+        byte[] response = tag.transceive(select);
+
+        ReplayTag replay = new ReplayTag(TagType.DESFIRE_EV1, export(recorder).getEntries());
+        try {
+            replay.transceive(new byte[]{(byte) 0x90, 0x60, 0x00, 0x00, 0x00});
+            fail();
+        } catch (NfcException e) {
+            // expected
+        }
+        assertArrayEquals(response, replay.transceive(select));
+
+        // exhausted
+        try {
+            replay.transceive(select);
+            fail();
+        } catch (NfcException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void ringBufferDropsOldest() throws Exception {
+        ApduTraceRecorder recorder = new ApduTraceRecorder(256);
+
+        // not recording until enabled
+        recorder.record(0, System.nanoTime(), 1000, new byte[5], 5, new byte[2], 2);
+        assertEquals(0, recorder.getRecords());
+
+        recorder.setEnabled(true);
+        for (int i = 0; i < 100; i++) {
+            byte[] request = new byte[]{(byte) 0xFF, (byte) 0xB0, 0x00, (byte) i, 0x10};
+            recorder.record(i % 2, System.nanoTime(), 1000 + i, request, request.length, new byte[18], 18);
+        }
+        assertTrue(recorder.getRecords() < 100);
+        assertEquals(100, recorder.getRecords() + recorder.getDropped());
+
+        List<ApduTrace.Entry> entries = export(recorder).getEntries();
+        assertEquals(recorder.getRecords(), entries.size());
+
+        ApduTrace.Entry last = entries.get(entries.size() - 1);
+        assertEquals(99, last.getRequest()[3]);
+        assertEquals(1, last.getSlot());
+        assertEquals(1099, last.getLatency());
+        assertEquals(18, last.getResponse().length);
+    }
+
+    @Test
+    public void keysMasked() throws Exception {
+        ApduTraceRecorder recorder = new ApduTraceRecorder();
+        recorder.setEnabled(true);
+
+        // load key, update binary of a sector trailer and of a data block
+        byte[] loadKey = new byte[]{(byte) 0xFF, (byte) 0x82, 0x00, 0x00, 0x06, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+        byte[] trailer = new byte[21];
+        trailer[0] = (byte) 0xFF;
+        trailer[1] = (byte) 0xD6;
+        trailer[3] = 0x07;
+        trailer[4] = 0x10;
+        for (int i = 5; i < trailer.length; i++) {
+            trailer[i] = (byte) i;
+        }
+        byte[] data = trailer.clone();
+        data[3] = 0x06;
+
+        recorder.record(0, System.nanoTime(), 1000, loadKey, loadKey.length, new byte[]{(byte) 0x90, 0x00}, 2);
+        recorder.record(0, System.nanoTime(), 1000, trailer, trailer.length, new byte[]{(byte) 0x90, 0x00}, 2);
+        recorder.record(0, System.nanoTime(), 1000, data, data.length, new byte[]{(byte) 0x90, 0x00}, 2);
+
+        List<ApduTrace.Entry> entries = export(recorder).getEntries();
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0x82, 0x00, 0x00, 0x06, 0, 0, 0, 0, 0, 0}, entries.get(0).getRequest());
+
+        byte[] maskedTrailer = entries.get(1).getRequest();
+        for (int i = 5; i < trailer.length; i++) {
+            if (i < 11 || i >= 15) {
+                assertEquals(0, maskedTrailer[i]);
+            } else {
+                assertEquals(trailer[i], maskedTrailer[i]);
+            }
+        }
+        assertArrayEquals(data, entries.get(2).getRequest());
+
+        // the caller's buffers are not modified
+        assertEquals(0x01, loadKey[5]);
+    }
+
+    @Test
+    public void ntagPasswordAuthenticationMasked() throws Exception {
+        ApduTraceRecorder recorder = new ApduTraceRecorder();
+        recorder.setEnabled(true);
+
+        // PWD_AUTH and READ in direct transmit
+        byte[] pwdAuth = new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x07, (byte) 0xD4, 0x42, 0x1B, 0x01, 0x02, 0x03, 0x04};
+        byte[] read = new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x04, (byte) 0xD4, 0x42, 0x30, 0x04};
+
+        recorder.record(0, System.nanoTime(), 1000, pwdAuth, pwdAuth.length, new byte[]{(byte) 0xD5, 0x43, 0x00, 0x11, 0x22, (byte) 0x90, 0x00}, 7);
+        recorder.record(0, System.nanoTime(), 1000, read, read.length, new byte[]{(byte) 0x90, 0x00}, 2);
+
+        List<ApduTrace.Entry> entries = export(recorder).getEntries();
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x07, (byte) 0xD4, 0x42, 0x1B, 0, 0, 0, 0}, entries.get(0).getRequest());
+        assertArrayEquals(read, entries.get(1).getRequest());
+
+        // the caller's buffers are not modified
+        assertEquals(0x01, pwdAuth[8]);
+    }
+
+    @Test
+    public void ntagPasswordPagesMasked() throws Exception {
+        ApduTraceRecorder recorder = new ApduTraceRecorder();
+        recorder.setEnabled(true);
+
+        // NTAG213 PWD and PACK pages by WRITE in direct transmit, then a data page
+        byte[] pwd = new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x08, (byte) 0xD4, 0x42, (byte) 0xA2, 0x2B, 0x01, 0x02, 0x03, 0x04};
+        byte[] pack = pwd.clone();
+        pack[8] = 0x2C;
+        byte[] data = pwd.clone();
+        data[8] = 0x04;
+
+        // NTAG216 PWD page by update binary
+        byte[] updateBinary = new byte[]{(byte) 0xFF, (byte) 0xD6, 0x00, (byte) 0xE5, 0x04, 0x01, 0x02, 0x03, 0x04};
+
+        recorder.record(0, System.nanoTime(), 1000, pwd, pwd.length, new byte[]{(byte) 0x90, 0x00}, 2);
+        recorder.record(0, System.nanoTime(), 1000, pack, pack.length, new byte[]{(byte) 0x90, 0x00}, 2);
+        recorder.record(0, System.nanoTime(), 1000, data, data.length, new byte[]{(byte) 0x90, 0x00}, 2);
+        recorder.record(0, System.nanoTime(), 1000, updateBinary, updateBinary.length, new byte[]{(byte) 0x90, 0x00}, 2);
+
+        List<ApduTrace.Entry> entries = export(recorder).getEntries();
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x08, (byte) 0xD4, 0x42, (byte) 0xA2, 0x2B, 0, 0, 0, 0}, entries.get(0).getRequest());
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x08, (byte) 0xD4, 0x42, (byte) 0xA2, 0x2C, 0, 0, 0, 0}, entries.get(1).getRequest());
+        assertArrayEquals(data, entries.get(2).getRequest());
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xD6, 0x00, (byte) 0xE5, 0x04, 0, 0, 0, 0}, entries.get(3).getRequest());
+    }
+
+    private static long sumLatency(List<ApduTrace.Entry> entries) {
+        long sum = 0;
+        for (ApduTrace.Entry entry : entries) {
+            sum += entry.getLatency();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.skjolber.nfc.simulator;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.nfctools.mf.MfException;
+import org.nfctools.mf.classic.MfClassicNdefOperations;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.mf.ul.DataBlock;
+import org.nfctools.mf.ul.MfUlReaderWriter;
+import org.nfctools.mf.ul.Type2NdefOperations;
+import org.nfctools.spi.acs.AcrMfUlNTAGReaderWriter;
+import org.nfctools.spi.acs.AcrMfUlReaderWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimulatedTagTest {
+
+    private static final byte[] UID_7 = new byte[]{0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] UID_4 = new byte[]{0x11, 0x22, 0x33, 0x44};
+
+    private static byte[] uriRecord(String host) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.US_ASCII);
+
+        byte[] record = new byte[5 + hostBytes.length];
+        record[0] = (byte) 0xD1; // MB, ME, SR, well-known
+        record[1] = 0x01;
+        record[2] = (byte) (1 + hostBytes.length);
+        record[3] = 'U';
+        record[4] = 0x01; // http://www.
+        System.arraycopy(hostBytes, 0, record, 5, hostBytes.length);
+        return record;
+    }
+
+    @Test
+    public void ntag213WriteRead() throws Exception {
+        Type2TagSimulator tag = Type2TagSimulator.newNtag213(UID_7);
+
+        MfUlReaderWriter readerWriter = tag.newReaderWriter();
+        assertTrue(readerWriter instanceof AcrMfUlNTAGReaderWriter);
+
+        Type2NdefOperations operations = new Type2NdefOperations(tag.getMemoryLayout(), readerWriter, true, true, UID_7);
+        assertEquals(0, operations.readNdefMessageBytes().length);
+
+        byte[] message = uriRecord("example.com");
+        operations.writeNdefMessage(message);
+
+        Type2NdefOperations reread = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        assertArrayEquals(message, reread.readNdefMessageBytes());
+
+        assertTrue(tag.getCommands() > 0);
+        assertTrue(tag.getBytesReceived() > message.length);
+    }
+
+    @Test
+    public void ultralightWriteRead() throws Exception {
+        Type2TagSimulator tag = Type2TagSimulator.newUltralight(UID_7);
+
+        MfUlReaderWriter readerWriter = tag.newReaderWriter();
+        assertTrue(readerWriter instanceof AcrMfUlReaderWriter);
+
+        Type2NdefOperations operations = new Type2NdefOperations(tag.getMemoryLayout(), readerWriter, true, true, UID_7);
+
+        byte[] message = uriRecord("a.io");
+        operations.writeNdefMessage(message);
+
+        Type2NdefOperations reread = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        assertArrayEquals(message, reread.readNdefMessageBytes());
+    }
+
+    @Test
+    public void ultralightDifferentialWrite() throws Exception {
+        Type2TagSimulator tag = Type2TagSimulator.newUltralight(UID_7);
+
+        Type2NdefOperations operations = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        assertTrue(!operations.isDifferentialWrite());
+        operations.writeNdefMessage(uriRecord("a-much-longer-host.example.com"));
+
+        Type2NdefOperations differential = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        differential.setDifferentialWrite(true);
+        differential.readNdefMessageBytes();
+
+        byte[] message = uriRecord("a.io");
+        differential.writeNdefMessage(message);
+
+        Type2NdefOperations reread = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        assertArrayEquals(message, reread.readNdefMessageBytes());
+
+        // the remains of the previous message are cleared
+        for (int page = 7; page <= tag.getMemoryLayout().getLastDataPage(); page++) {
+            assertArrayEquals(new byte[4], tag.getPage(page));
+        }
+    }
+
+    @Test
+    public void ultralightLockAndOneTimeProgrammable() throws Exception {
+        Type2TagSimulator tag = Type2TagSimulator.newUltralight(UID_7);
+        MfUlReaderWriter readerWriter = tag.newReaderWriter();
+
+        // capability container bits can only be set
+        readerWriter.writeBlock(3, new DataBlock(new byte[]{0x00, 0x00, 0x00, 0x0F}));
+        assertArrayEquals(new byte[]{(byte) 0xE1, 0x10, 0x06, 0x0F}, tag.getPage(3));
+
+        // lock page 4
+        readerWriter.writeBlock(2, new DataBlock(new byte[]{0x00, 0x00, 0x10, 0x00}));
+        try {
+            readerWriter.writeBlock(4, new DataBlock(new byte[]{0x01, 0x02, 0x03, 0x04}));
+            fail();
+        } catch (MfException e) {
+            // expected
+        }
+        readerWriter.writeBlock(5, new DataBlock(new byte[]{0x01, 0x02, 0x03, 0x04}));
+
+        // UID bytes in the lock page are unchanged
+        assertArrayEquals(new byte[]{(byte) (0x33 ^ 0x44 ^ 0x55 ^ 0x66), 0x48, 0x10, 0x00}, tag.getPage(2));
+    }
+
+    @Test
+    public void classicFormatRead() throws Exception {
+        MifareClassicSimulator tag = MifareClassicSimulator.newClassic1K(UID_4);
+
+        MfClassicReaderWriter readerWriter = tag.newReaderWriter();
+        assertArrayEquals(UID_4, readerWriter.getTagInfo().getId());
+        assertTrue(!readerWriter.hasApplicationDirectory());
+
+        MfClassicNdefOperations operations = new MfClassicNdefOperations(readerWriter, readerWriter.getTagInfo(), false, true);
+        operations.format();
+
+        MfClassicReaderWriter rereadReaderWriter = tag.newReaderWriter();
+        assertTrue(rereadReaderWriter.hasApplicationDirectory());
+
+        MfClassicNdefOperations reread = new MfClassicNdefOperations(rereadReaderWriter, rereadReaderWriter.getTagInfo(), true, true);
+        assertEquals(0, reread.readNdefMessageBytes().length);
+        assertTrue(tag.getSectorReads(0) > 0);
+    }
+
+    @Test
+    public void desfireGetVersionAndReadData() throws Exception {
+        DesfireSimulator tag = new DesfireSimulator(UID_7);
+
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        tag.addApplication(0x010203);
+        tag.addFile(0x010203, 1, content);
+
+        byte[] frame1 = tag.transceive(new byte[]{(byte) 0x90, 0x60, 0x00, 0x00, 0x00});
+        assertEquals(9, frame1.length);
+        assertEquals((byte) 0xAF, frame1[8]);
+        byte[] frame2 = tag.transceive(new byte[]{(byte) 0x90, (byte) 0xAF, 0x00, 0x00, 0x00});
+        assertEquals((byte) 0xAF, frame2[8]);
+        byte[] frame3 = tag.transceive(new byte[]{(byte) 0x90, (byte) 0xAF, 0x00, 0x00, 0x00});
+        assertEquals(16, frame3.length);
+        assertEquals(0x00, frame3[15]);
+
+        byte[] select = tag.transceive(new byte[]{(byte) 0x90, 0x5A, 0x00, 0x00, 0x03, 0x03, 0x02, 0x01, 0x00});
+        assertArrayEquals(new byte[]{(byte) 0x91, 0x00}, select);
+
+        byte[] read = tag.transceive(new byte[]{(byte) 0x90, (byte) 0xBD, 0x00, 0x00, 0x07, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00});
+        assertEquals(DesfireSimulator.FRAME_SIZE + 2, read.length);
+        assertEquals((byte) 0xAF, read[read.length - 1]);
+
+        byte[] next = tag.transceive(new byte[]{(byte) 0x90, (byte) 0xAF, 0x00, 0x00, 0x00});
+        assertEquals(content.length - DesfireSimulator.FRAME_SIZE + 2, next.length);
+        assertEquals(0x00, next[next.length - 1]);
+
+        byte[] auth = tag.transceive(new byte[]{(byte) 0x90, 0x0A, 0x00, 0x00, 0x01, 0x00, 0x00});
+        assertArrayEquals(new byte[]{(byte) 0x91, (byte) 0xAE}, auth);
+    }
+
+    @Test
+    public void latency() throws Exception {
+        Type2TagSimulator tag = Type2TagSimulator.newNtag213(UID_7);
+        tag.setLatencyModel(LatencyModel.USB);
+
+        Type2NdefOperations operations = new Type2NdefOperations(tag.getMemoryLayout(), tag.newReaderWriter(), true, true, UID_7);
+        operations.readNdefMessageBytes();
+
+        long expected = tag.getCommands() * LatencyModel.USB.getPerCommand() + (tag.getBytesSent() + tag.getBytesReceived()) * LatencyModel.USB.getPerByte();
+        assertEquals(expected, tag.getSimulatedTime());
+
+        tag.resetCounters();
+        assertEquals(0, tag.getSimulatedTime());
+    }
+}
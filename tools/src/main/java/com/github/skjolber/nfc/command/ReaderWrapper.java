@@ -4,18 +4,42 @@ import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.acs.smartcard.Reader;
 import com.acs.smartcard.Reader.OnStateChangeListener;
 import com.acs.smartcard.ReaderException;
 
 import org.nfctools.mf.ul.ntag.NfcNtagVersion;
 
+import com.github.skjolber.nfc.service.ApduTraceRecorder;
+import com.github.skjolber.nfc.service.TapMetrics;
+
 import custom.java.CommandAPDU;
 import custom.java.ResponseAPDU;
 
 public class ReaderWrapper {
 
-    public static final boolean LOG = true;
+    /** response buffer size per slot, large enough for extended length responses */
+    public static final int RESPONSE_BUFFER_LENGTH = 2048;
+
+    private static volatile boolean logging = false;
+
+    /**
+     * Enable or disable trace logging of all reader calls. When disabled, no log strings are built.
+     *
+     * @param log true for tracing
+     */
+
+    public static void setLogging(boolean log) {
+        logging = log;
+    }
+
+    public static boolean isLogging() {
+        return logging;
+    }
 
     public static final String[] stateStrings = {"Unknown", "Absent", "Present", "Swallowed", "Powered", "Negotiable", "Specific"};
 
@@ -23,25 +47,47 @@ public class ReaderWrapper {
 
     private Reader reader;
 
+    // the reader has a single USB pipe and is not thread safe, so the per-slot workers take turns
+    private final Object readerLock = new Object();
+
+    private static class SlotBuffers {
+
+        private final byte[] request = new byte[RESPONSE_BUFFER_LENGTH];
+        private final byte[] response = new byte[RESPONSE_BUFFER_LENGTH];
+    }
+
+    private volatile SlotBuffers[] slotBuffers = new SlotBuffers[0];
+
+    // tap time per slot, cleared by the first APDU
+    private final ConcurrentMap<Integer, Long> tapTimes = new ConcurrentHashMap<Integer, Long>();
+
+    private long tapToFirstApduCount;
+    private long tapToFirstApduLast;
+    private long tapToFirstApduMax;
+    private long tapToFirstApduTotal;
+
+    private volatile TapMetrics tapMetrics;
+    private volatile ApduTraceRecorder traceRecorder;
+
     public ReaderWrapper(UsbManager mManager) {
         this.reader = new Reader(mManager);
     }
 
     public boolean isSupported(UsbDevice device) {
-        if (LOG) log("isSupported: " + device);
+        if (logging) log("isSupported: " + device);
         return reader.isSupported(device);
     }
 
     public UsbDevice getDevice() {
         UsbDevice device = reader.getDevice();
 
-        if (LOG) log("getDevice: " + device);
+        if (logging) log("getDevice: " + device);
 
         return device;
     }
 
     public void open(UsbDevice usbDevice) {
-        if (LOG) log("open: " + usbDevice);
+        if (logging) log("open: " + usbDevice);
         reader.open(usbDevice);
     }
 
@@ -49,7 +95,7 @@ public class ReaderWrapper {
 
         String name = reader.getReaderName();
 
-        if (LOG) log("getReaderName: " + name);
+        if (logging) log("getReaderName: " + name);
 
         return name;
     }
@@ -57,31 +103,37 @@ public class ReaderWrapper {
     public int getNumSlots() {
         int slots = reader.getNumSlots();
 
-        if (LOG) log("getNumSlots: " + slots);
+        if (logging) log("getNumSlots: " + slots);
 
         return slots;
     }
 
     public void close() {
-        if (LOG) log("close");
+        if (logging) log("close");
 
         reader.close();
 
     }
 
     public byte[] power(int slotNum, int action) throws ReaderException {
-        byte[] power = reader.power(slotNum, action);
+        byte[] power;
+        synchronized (readerLock) {
+            power = reader.power(slotNum, action);
+        }
 
-        if (LOG)
+        if (logging)
             log("power " + slotNum + " " + action + ": " + (power != null ? Utils.convertBinToASCII(power) : null));
 
         return power;
     }
 
     public int setProtocol(int slotNum, int preferredProtocols) throws ReaderException {
-        int p = reader.setProtocol(slotNum, preferredProtocols);
+        int p;
+        synchronized (readerLock) {
+            p = reader.setProtocol(slotNum, preferredProtocols);
+        }
 
-        if (LOG) log("setProtocol " + slotNum + " " + preferredProtocols + ": " + p);
+        if (logging) log("setProtocol " + slotNum + " " + preferredProtocols + ": " + p);
 
         return p;
     }
@@ -89,7 +141,7 @@ public class ReaderWrapper {
     public void setOnStateChangeListener(
             OnStateChangeListener onStateChangeListener) {
 
-        if (LOG) log("setOnStateChangeListener: " + onStateChangeListener);
+        if (logging) log("setOnStateChangeListener: " + onStateChangeListener);
 
         reader.setOnStateChangeListener(onStateChangeListener);
     }
@@ -97,12 +149,12 @@ public class ReaderWrapper {
     public int control(int slotNum, int controlCode, byte[] command,
                        int length, byte[] response, int length2) throws ReaderException {
 
-        if (LOG)
+        if (logging)
             log("control - slotNum: " + slotNum + " controlCode: " + controlCode + "\nrequest: " + Utils.convertBinToASCII(command) + " length " + command.length);
 
-        int control = reader.control(slotNum, controlCode, command, length, response, length2);
+        int control = controlReader(slotNum, controlCode, command, length, response, length2);
 
-        if (LOG)
+        if (logging)
             log("control " + slotNum + " " + controlCode + " " + Utils.convertBinToASCII(command) + " " + length + "\n" + Utils.convertBinToASCII(response) + " " + length2 + ": " + control);
 
         return control;
@@ -122,25 +174,54 @@ public class ReaderWrapper {
 
     public byte[] control(int slotNum, int controlCode, byte[] command) throws ReaderException {
 
-        byte[] response = new byte[1024];
-
-        if (LOG)
+        if (logging)
             log("control - slotNum: " + slotNum + " controlCode: " + controlCode + "\nrequest: " + Utils.convertBinToASCII(command) + " length " + command.length);
 
-        int control = reader.control(slotNum, controlCode, command, command.length, response, response.length);
+        byte[] response = getResponseBuffer(slotNum);
+        synchronized (response) {
+            int control = controlReader(slotNum, controlCode, command, command.length, response, response.length);
 
-        if (response.length < control) {
-            throw new RuntimeException("Expected result " + response.length + " <= " + control);
-        }
+            if (response.length < control) {
+                throw new RuntimeException("Expected result " + response.length + " <= " + control);
+            }
 
-        if (LOG)
-            log("control - slotNum: " + slotNum + " controlCode: " + controlCode + "\nrequest: " + Utils.convertBinToASCII(command) + " length " + command.length + "\nresponse: " + Utils.convertBinToASCII(response, 0, control));
+            if (logging)
+                log("control - slotNum: " + slotNum + " controlCode: " + controlCode + "\nrequest: " + Utils.convertBinToASCII(command) + " length " + command.length + "\nresponse: " + Utils.convertBinToASCII(response, 0, control));
 
-        byte[] in = new byte[control];
+            byte[] in = new byte[control];
 
-        System.arraycopy(response, 0, in, 0, control);
+            System.arraycopy(response, 0, in, 0, control);
 
-        return in;
+            return in;
+        }
+    }
+
+    private int controlReader(int slotNum, int controlCode, byte[] command, int length, byte[] response, int responseLength) throws ReaderException {
+        TapMetrics metrics = tapMetrics;
+        ApduTraceRecorder recorder = traceRecorder;
+
+        // escape commands, i.e. also pass-through commands to the tag on some readers
+        int control;
+        if ((metrics != null && metrics.isEnabled()) || (recorder != null && recorder.isEnabled())) {
+            long start = System.nanoTime();
+
+            synchronized (readerLock) {
+                control = reader.control(slotNum, controlCode, command, length, response, responseLength);
+            }
+
+            long latency = System.nanoTime() - start;
+            if (metrics != null) {
+                metrics.onApdu(length, control, latency);
+            }
+            if (recorder != null) {
+                recorder.record(slotNum, start, latency, command, length, response, Math.min(control, responseLength));
+            }
+        } else {
+            synchronized (readerLock) {
+                control = reader.control(slotNum, controlCode, command, length, response, responseLength);
+            }
+        }
+        return control;
     }
 
     public ResponseAPDU transmit(int slot, CommandAPDU command) throws ReaderException {
@@ -153,22 +234,90 @@ public class ReaderWrapper {
 
     public byte[] transmit(int slotNum, byte[] command) throws ReaderException {
 
-        byte[] response = new byte[1024];
+        byte[] response = getResponseBuffer(slotNum);
+        synchronized (response) {
+            int transmit = transmit(slotNum, command, command.length, response, response.length);
 
-        int transmit = reader.transmit(slotNum, command, command.length, response, response.length);
+            byte[] in = new byte[transmit];
 
-        if (LOG)
-            log("transmit - slotNum: " + slotNum + "\nrequest: " + Utils.convertBinToASCII(command) + " length " + command.length + "\nresponse: " + Utils.convertBinToASCII(response, 0, Math.min(transmit, response.length)));
+            System.arraycopy(response, 0, in, 0, transmit);
 
-        if (response.length < transmit) {
-            throw new RuntimeException("Expected result " + response.length + " <= " + transmit);
+            return in;
         }
+    }
 
-        byte[] in = new byte[transmit];
+    /**
+     * Transmit using caller-supplied buffers. The command is read from position to limit; the response is written
+     * from position and the limit set to the end of the response. Heap buffers positioned at the start of their
+     * backing array are passed to the reader without copying.
+     *
+     * @param slotNum slot number
+     * @param command command buffer
+     * @param response response buffer
+     * @return number of response bytes
+     * @throws ReaderException on reader problem
+     */
+
+    public int transmit(int slotNum, ByteBuffer command, ByteBuffer response) throws ReaderException {
+        int length = command.remaining();
+
+        if (command.hasArray() && command.arrayOffset() + command.position() == 0 && response.hasArray() && response.arrayOffset() + response.position() == 0) {
+            // no copying necessary
+            int transmit = transmit(slotNum, command.array(), length, response.array(), response.remaining());
+
+            command.position(command.limit());
+            response.limit(transmit);
+
+            return transmit;
+        }
 
-        System.arraycopy(response, 0, in, 0, transmit);
+        SlotBuffers buffers = getSlotBuffers(slotNum);
+        synchronized (buffers.response) {
+            byte[] request = length <= buffers.request.length ? buffers.request : new byte[length];
+            command.get(request, 0, length);
 
-        return in;
+            byte[] buffer = buffers.response;
+            int transmit = transmit(slotNum, request, length, buffer, Math.min(buffer.length, response.remaining()));
+
+            response.mark();
+            response.put(buffer, 0, transmit);
+            response.limit(response.position());
+            response.reset();
+
+            return transmit;
+        }
+    }
+
+    /**
+     * Get the reusable response buffer for a slot. Callers must synchronize on the buffer while using it.
+     *
+     * @param slotNum slot number
+     * @return buffer of {@linkplain #RESPONSE_BUFFER_LENGTH} bytes
+     */
+
+    public byte[] getResponseBuffer(int slotNum) {
+        return getSlotBuffers(slotNum).response;
+    }
+
+    private SlotBuffers getSlotBuffers(int slotNum) {
+        SlotBuffers[] buffers = this.slotBuffers;
+        if (slotNum < buffers.length) {
+            SlotBuffers slot = buffers[slotNum];
+            if (slot != null) {
+                return slot;
+            }
+        }
+        synchronized (this) {
+            if (slotNum >= slotBuffers.length) {
+                SlotBuffers[] next = new SlotBuffers[slotNum + 1];
+                System.arraycopy(slotBuffers, 0, next, 0, slotBuffers.length);
+                slotBuffers = next;
+            }
+            if (slotBuffers[slotNum] == null) {
+                slotBuffers[slotNum] = new SlotBuffers();
+            }
+            return slotBuffers[slotNum];
+        }
     }
 
     public byte[] transmitPassThrough(int slotNumber, byte[] req) throws ReaderException {
@@ -197,7 +346,7 @@ public class ReaderWrapper {
         }
         byte[] data = response.getData();
 
-        if (LOG) log("Status " + (0xFF & data[2]));
+        if (logging) log("Status " + (0xFF & data[2]));
 
         if ((data[2] & 0xFF) != 0) {
             throw new PassthroughCommandException("Got command error", (data[2] & 0xFF));
@@ -235,7 +384,7 @@ public class ReaderWrapper {
         }
         byte[] data = response.getData();
 
-        if (LOG) log("Status " + (0xFF & data[2]));
+        if (logging) log("Status " + (0xFF & data[2]));
 
         if ((data[2] & 0xFF) != 0) {
             throw new PassthroughCommandException("Got command error", (data[2] & 0xFF));
@@ -250,13 +399,42 @@ public class ReaderWrapper {
 
     public int transmit(int slotNum, byte[] command, int length, byte[] response, int responseLength) throws ReaderException {
 
-        int transmit = reader.transmit(slotNum, command, length, response, responseLength);
+        if (!tapTimes.isEmpty()) {
+            Long tapTime = tapTimes.remove(slotNum);
+            if (tapTime != null) {
+                onFirstApdu(slotNum, System.nanoTime() - tapTime);
+            }
+        }
+
+        TapMetrics metrics = tapMetrics;
+        ApduTraceRecorder recorder = traceRecorder;
+
+        int transmit;
+        if ((metrics != null && metrics.isEnabled()) || (recorder != null && recorder.isEnabled())) {
+            long start = System.nanoTime();
+
+            synchronized (readerLock) {
+                transmit = reader.transmit(slotNum, command, length, response, responseLength);
+            }
+
+            long latency = System.nanoTime() - start;
+            if (metrics != null) {
+                metrics.onApdu(length, transmit, latency);
+            }
+            if (recorder != null) {
+                recorder.record(slotNum, start, latency, command, length, response, Math.min(transmit, responseLength));
+            }
+        } else {
+            synchronized (readerLock) {
+                transmit = reader.transmit(slotNum, command, length, response, responseLength);
+            }
+        }
 
-        if (LOG)
-            log("transmit - slotNum: " + slotNum + "\nrequest: " + Utils.convertBinToASCII(command, 0, length) + " length " + command.length + "\nresponse: " + Utils.convertBinToASCII(response, 0, Math.min(transmit, responseLength)));
+        if (logging)
+            log("transmit - slotNum: " + slotNum + "\nrequest: " + Utils.convertBinToASCII(command, 0, length) + " length " + length + "\nresponse: " + Utils.convertBinToASCII(response, 0, Math.min(transmit, responseLength)));
 
-        if (response.length < transmit) {
-            throw new RuntimeException("Expected result " + responseLength + " <= " + transmit);
+        if (responseLength < transmit) {
+            throw new RuntimeException("Expected result " + transmit + " <= " + responseLength);
         }
 
         return transmit;
@@ -266,7 +444,7 @@ public class ReaderWrapper {
     public int getState(int slotNum) {
         int state = reader.getState(slotNum);
 
-        if (LOG) log("getState " + slotNum + ": " + state);
+        if (logging) log("getState " + slotNum + ": " + state);
 
         return state;
     }
@@ -275,7 +453,7 @@ public class ReaderWrapper {
 
         byte[] atr = reader.getAtr(slotNum);
 
-        if (LOG)
+        if (logging)
             log("getState " + slotNum + ": " + (atr != null ? Utils.convertBinToASCII(atr) : null));
 
         return atr;
@@ -285,11 +463,93 @@ public class ReaderWrapper {
 
         int protocol = reader.getProtocol(slotNum);
 
-        if (LOG) log("getProtocol " + slotNum + ": " + protocol);
+        if (logging) log("getProtocol " + slotNum + ": " + protocol);
 
         return protocol;
     }
 
+    /**
+     * Mark that a tag was detected in a slot. The time until the next APDU is transmitted
+     * to the slot is recorded as the tap-to-first-APDU latency.
+     *
+     * @param slotNum slot number
+     */
+
+    public void markTap(int slotNum) {
+        tapTimes.put(slotNum, System.nanoTime());
+    }
+
+    private synchronized void onFirstApdu(int slotNum, long latency) {
+        tapToFirstApduCount++;
+        tapToFirstApduLast = latency;
+        tapToFirstApduTotal += latency;
+        if (latency > tapToFirstApduMax) {
+            tapToFirstApduMax = latency;
+        }
+
+        if (logging) log("Tap to first APDU in slot " + slotNum + ": " + (latency / 1000) + "us");
+    }
+
+    /**
+     * Get the latest tap-to-first-APDU latency.
+     *
+     * @return latency in nanoseconds
+     */
+
+    public synchronized long getLastTapToFirstApdu() {
+        return tapToFirstApduLast;
+    }
+
+    public synchronized long getMaxTapToFirstApdu() {
+        return tapToFirstApduMax;
+    }
+
+    public synchronized long getAverageTapToFirstApdu() {
+        if (tapToFirstApduCount == 0) {
+            return 0;
+        }
+        return tapToFirstApduTotal / tapToFirstApduCount;
+    }
+
+    public synchronized long getTapToFirstApduCount() {
+        return tapToFirstApduCount;
+    }
+
+    public TapMetrics getTapMetrics() {
+        return tapMetrics;
+    }
+
+    /**
+     * Set the metrics which record the round-trip of each transmitted APDU and control command.
+     *
+     * @param tapMetrics metrics, or null
+     */
+
+    public void setTapMetrics(TapMetrics tapMetrics) {
+        this.tapMetrics = tapMetrics;
+    }
+
+    public ApduTraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Set the recorder for the request and response of each transmitted APDU and control command.
+     *
+     * @param traceRecorder recorder, or null
+     */
+
+    public void setTraceRecorder(ApduTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public synchronized void resetTapToFirstApdu() {
+        tapToFirstApduCount = 0;
+        tapToFirstApduLast = 0;
+        tapToFirstApduMax = 0;
+        tapToFirstApduTotal = 0;
+    }
+
     private void log(String string) {
         Log.d(TAG, string);
     }
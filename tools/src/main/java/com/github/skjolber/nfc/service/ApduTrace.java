@@ -0,0 +1,163 @@
+package com.github.skjolber.nfc.service;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * APDU trace, as written by {@linkplain ApduTraceRecorder}. The binary format is a header followed by records:<br>
+ * <br>
+ * Header: magic (4 bytes, "APDT"), version (1 byte), wall clock time when recording started, in milliseconds (8 bytes).<br>
+ * Record: length of the rest of the record, slot (1 byte), time since recording started in nanoseconds,
+ * round-trip latency in nanoseconds, request length, request, response length, response.<br>
+ * <br>
+ * Lengths and times are unsigned variable length integers, 7 bits per byte with the high bit set on all but the last byte.
+ */
+
+public class ApduTrace {
+
+    public static final int MAGIC = 0x41504454;
+    public static final int VERSION = 1;
+
+    public static class Entry {
+
+        private final int slot;
+        private final long time;
+        private final long latency;
+        private final byte[] request;
+        private final byte[] response;
+
+        public Entry(int slot, long time, long latency, byte[] request, byte[] response) {
+            this.slot = slot;
+            this.time = time;
+            this.latency = latency;
+            this.request = request;
+            this.response = response;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Get the time the request was sent.
+         *
+         * @return nanoseconds since the trace start
+         */
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getLatency() {
+            return latency;
+        }
+
+        public byte[] getRequest() {
+            return request;
+        }
+
+        public byte[] getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Read a trace.
+     *
+     * @param in input, read until end of stream
+     * @return the trace
+     * @throws IOException if the input is not a trace or is truncated
+     */
+
+    public static ApduTrace read(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        if (din.readInt() != MAGIC) {
+            throw new IOException("Not an APDU trace");
+        }
+        int version = din.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported APDU trace version " + version);
+        }
+        long start = din.readLong();
+
+        List<Entry> entries = new ArrayList<Entry>();
+        while (true) {
+            int first = din.read();
+            if (first == -1) {
+                break;
+            }
+            readVarint(din, first); // record length
+
+            int slot = din.readUnsignedByte();
+            long time = readVarint(din, din.readUnsignedByte());
+            long latency = readVarint(din, din.readUnsignedByte());
+
+            byte[] request = new byte[(int) readVarint(din, din.readUnsignedByte())];
+            din.readFully(request);
+            byte[] response = new byte[(int) readVarint(din, din.readUnsignedByte())];
+            din.readFully(response);
+
+            entries.add(new Entry(slot, time, latency, request, response));
+        }
+        return new ApduTrace(start, entries);
+    }
+
+    private static long readVarint(DataInputStream in, int first) throws IOException {
+        long value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    private final long start;
+    private final List<Entry> entries;
+
+    public ApduTrace(long start, List<Entry> entries) {
+        this.start = start;
+        this.entries = entries;
+    }
+
+    /**
+     * Get the trace start time.
+     *
+     * @return wall clock time in milliseconds
+     */
+
+    public long getStart() {
+        return start;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Get the entries for a single slot, i.e. the conversation with a single tag.
+     *
+     * @param slot slot number
+     * @return entries in the order recorded
+     */
+
+    public List<Entry> getEntries(int slot) {
+        List<Entry> result = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            if (entry.getSlot() == slot) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,367 @@
+package com.github.skjolber.nfc.service;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records APDU requests, responses and timing to a ring buffer, in the {@linkplain ApduTrace} record format.
+ * When the buffer is full, the oldest records are dropped. Thread safe.<br>
+ * <br>
+ * The buffer is allocated when the recorder is first enabled. When disabled, {@linkplain #record(int, long, long, byte[], int, byte[], int)}
+ * returns after reading a volatile field.<br>
+ * <br>
+ * Mifare Classic keys and NTAG / Ultralight EV1 passwords are not recorded, see {@linkplain #mask(byte[], int)}.
+ */
+
+public class ApduTraceRecorder {
+
+    public static final int DEFAULT_CAPACITY = 256 * 1024;
+
+    private static final int KEY_LENGTH = 6;
+    private static final int PAGE_LENGTH = 4;
+
+    // PWD page of Ultralight EV1 / NTAG210, Ultralight EV1 / NTAG212, NTAG213, NTAG215 and NTAG216, PACK follows
+    private static final int[] PWD_PAGES = new int[]{0x12, 0x27, 0x2B, 0x85, 0xE5};
+
+    private final int capacity;
+
+    private volatile boolean enabled;
+
+    private byte[] buffer;
+    private int head; // oldest record
+    private int size;
+    private int position; // write position
+
+    private int records;
+    private long dropped;
+
+    private long startTime; // wall clock
+    private long startNanos;
+
+    public ApduTraceRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity ring buffer size in bytes
+     */
+
+    public ApduTraceRecorder(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && buffer == null) {
+            buffer = new byte[capacity];
+
+            clear();
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Record an APDU round-trip.
+     *
+     * @param slot           slot number
+     * @param start          time the request was sent, as in {@linkplain System#nanoTime()}
+     * @param latency        round-trip time in nanoseconds
+     * @param request        request buffer
+     * @param requestLength  request length
+     * @param response       response buffer
+     * @param responseLength response length
+     */
+
+    public void record(int slot, long start, long latency, byte[] request, int requestLength, byte[] response, int responseLength) {
+        if (!enabled) {
+            return;
+        }
+
+        request = mask(request, requestLength);
+
+        synchronized (this) {
+            long time = Math.max(0, start - startNanos);
+
+            int length = 1 + getVarintLength(time) + getVarintLength(latency)
+                    + getVarintLength(requestLength) + requestLength
+                    + getVarintLength(responseLength) + responseLength;
+            int total = getVarintLength(length) + length;
+            if (total > capacity) {
+                dropped++;
+
+                return;
+            }
+
+            while (capacity - size < total) {
+                dropOldest();
+            }
+
+            position = (head + size) % capacity;
+
+            writeVarint(length);
+            write(slot);
+            writeVarint(time);
+            writeVarint(latency);
+            writeVarint(requestLength);
+            write(request, requestLength);
+            writeVarint(responseLength);
+            write(response, responseLength);
+
+            size += total;
+            records++;
+        }
+    }
+
+    /**
+     * Replace key bytes in a command with zeros. Covers the pseudo-APDUs which carry Mifare Classic keys:
+     * load key (FF 82), update binary (FF D6) of a sector trailer and a PN532 authentication or write of
+     * a sector trailer wrapped in direct transmit (FF 00 .. D4 40).<br>
+     * <br>
+     * Also covers NTAG / Ultralight EV1 passwords: PWD_AUTH in direct transmit (FF 00 .. D4 42 1B) and writes
+     * to the PWD and PACK pages, by update binary or WRITE in direct transmit (FF 00 .. D4 42 A2). As the tag type
+     * is not known here, a write to one of these pages is masked for all tag types.
+     *
+     * @param request request buffer
+     * @param length  request length
+     * @return the request, or a masked copy if it holds keys
+     */
+
+    public static byte[] mask(byte[] request, int length) {
+        if (length < 5 || (request[0] & 0xFF) != 0xFF) {
+            return request;
+        }
+
+        int end = Math.min(length, 5 + (request[4] & 0xFF));
+
+        switch (request[1] & 0xFF) {
+            case 0x82: {
+                // load key
+                byte[] masked = copy(request, length);
+                clear(masked, 5, end);
+                return masked;
+            }
+            case 0xD6: {
+                // key A and key B of a sector trailer
+                if (end - 5 == 16 && isTrailer(request[3] & 0xFF)) {
+                    byte[] masked = copy(request, length);
+                    clear(masked, 5, 5 + KEY_LENGTH);
+                    clear(masked, end - KEY_LENGTH, end);
+                    return masked;
+                }
+                // password or password acknowledge page
+                if (end - 5 == PAGE_LENGTH && isPasswordPage(request[3] & 0xFF)) {
+                    byte[] masked = copy(request, length);
+                    clear(masked, 5, end);
+                    return masked;
+                }
+                break;
+            }
+            case 0x00: {
+                if (end < 8 || (request[5] & 0xFF) != 0xD4) {
+                    break;
+                }
+                if ((request[6] & 0xFF) == 0x42) {
+                    // D4 42 command ..
+                    int command = request[7] & 0xFF;
+                    if (command == 0x1B) {
+                        // PWD_AUTH, password follows the command
+                        byte[] masked = copy(request, length);
+                        clear(masked, 8, Math.min(end, 8 + PAGE_LENGTH));
+                        return masked;
+                    }
+                    if (command == 0xA2 && end - 9 == PAGE_LENGTH && isPasswordPage(request[8] & 0xFF)) {
+                        byte[] masked = copy(request, length);
+                        clear(masked, 9, end);
+                        return masked;
+                    }
+                    break;
+                }
+                // D4 40 target command block ..
+                if (end < 10 || (request[6] & 0xFF) != 0x40) {
+                    break;
+                }
+                int command = request[8] & 0xFF;
+                if (command == 0x60 || command == 0x61) {
+                    // authentication, key follows the block number
+                    byte[] masked = copy(request, length);
+                    clear(masked, 10, Math.min(end, 10 + KEY_LENGTH));
+                    return masked;
+                }
+                if (command == 0xA0 && end - 10 == 16 && isTrailer(request[9] & 0xFF)) {
+                    byte[] masked = copy(request, length);
+                    clear(masked, 10, 10 + KEY_LENGTH);
+                    clear(masked, end - KEY_LENGTH, end);
+                    return masked;
+                }
+                break;
+            }
+            default:
+        }
+        return request;
+    }
+
+    private static boolean isTrailer(int block) {
+        if (block < 128) {
+            return (block & 0x03) == 0x03;
+        }
+        return (block & 0x0F) == 0x0F;
+    }
+
+    private static boolean isPasswordPage(int page) {
+        for (int pwd : PWD_PAGES) {
+            if (page == pwd || page == pwd + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] copy(byte[] request, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(request, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static void clear(byte[] request, int from, int to) {
+        for (int i = from; i < to; i++) {
+            request[i] = 0;
+        }
+    }
+
+    private void dropOldest() {
+        int length = 0;
+        int shift = 0;
+        int offset = head;
+        int b;
+        do {
+            b = buffer[offset] & 0xFF;
+            offset = (offset + 1) % capacity;
+
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        int total = getVarintLength(length) + length;
+
+        head = (head + total) % capacity;
+        size -= total;
+        records--;
+        dropped++;
+    }
+
+    private void write(int b) {
+        buffer[position] = (byte) b;
+        position = (position + 1) % capacity;
+    }
+
+    private void write(byte[] data, int length) {
+        int first = Math.min(length, capacity - position);
+        System.arraycopy(data, 0, buffer, position, first);
+        if (first < length) {
+            System.arraycopy(data, first, buffer, 0, length - first);
+        }
+        position = (position + length) % capacity;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    private static int getVarintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Drop all records and restart the trace clock.
+     */
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        records = 0;
+        dropped = 0;
+
+        startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    /**
+     * Get the number of records which were dropped, because the buffer was full.
+     *
+     * @return number of dropped records
+     */
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Write the trace, i.e. the header and the records currently in the buffer.
+     *
+     * @param out output
+     * @throws IOException if the output cannot be written
+     */
+
+    public void writeTo(OutputStream out) throws IOException {
+        long start;
+        byte[] data;
+        synchronized (this) {
+            start = startTime;
+
+            data = new byte[size];
+            if (size > 0) {
+                int first = Math.min(size, capacity - head);
+                System.arraycopy(buffer, head, data, 0, first);
+                System.arraycopy(buffer, 0, data, first, size - first);
+            }
+        }
+
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(ApduTrace.MAGIC);
+        dout.writeByte(ApduTrace.VERSION);
+        dout.writeLong(start);
+        dout.write(data);
+        dout.flush();
+    }
+
+    /**
+     * Export the trace to a file.
+     *
+     * @param file destination, overwritten if it exists
+     * @throws IOException if the file cannot be written
+     */
+
+    public void exportTo(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+}
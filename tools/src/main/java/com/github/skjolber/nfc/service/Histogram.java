@@ -0,0 +1,110 @@
+package com.github.skjolber.nfc.service;
+
+import com.github.skjolber.nfc.NfcMetrics;
+
+/**
+ * Histogram with power-of-two buckets, i.e. bucket n holds values in [2^(n-1), 2^n). Percentiles are
+ * reported as the upper bound of the bucket, capped by the maximum value, so they are accurate within a factor of two.
+ * Recording is constant time and does not allocate. Not thread safe.
+ */
+
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] buckets = new long[BUCKETS];
+
+    private long count;
+    private long total;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+
+        count++;
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        return total / count;
+    }
+
+    /**
+     * Get a percentile.
+     *
+     * @param percentile percentile, from 0 to 100
+     * @return upper bound of the bucket holding the percentile, or 0 if there are no values
+     */
+
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                if (i == 0) {
+                    return 0;
+                }
+                if (i == BUCKETS - 1) {
+                    return max;
+                }
+                return Math.min((1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get a summary, indexed by the {@linkplain NfcMetrics} SUMMARY_ constants.
+     *
+     * @return count, mean, percentiles and max
+     */
+
+    public long[] getSummary() {
+        long[] summary = new long[NfcMetrics.SUMMARY_LENGTH];
+        summary[NfcMetrics.SUMMARY_COUNT] = count;
+        summary[NfcMetrics.SUMMARY_MEAN] = getMean();
+        summary[NfcMetrics.SUMMARY_P50] = getPercentile(50);
+        summary[NfcMetrics.SUMMARY_P90] = getPercentile(90);
+        summary[NfcMetrics.SUMMARY_P99] = getPercentile(99);
+        summary[NfcMetrics.SUMMARY_MAX] = max;
+        return summary;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+}
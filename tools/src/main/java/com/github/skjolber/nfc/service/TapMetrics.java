@@ -0,0 +1,239 @@
+package com.github.skjolber.nfc.service;
+
+import com.github.skjolber.nfc.NfcMetrics;
+
+/**
+ * Metrics for tag taps: APDU count, bytes and round-trip latency, and the time spent in each phase of a tap
+ * (see the PHASE_ constants in {@linkplain NfcMetrics}). Times are in nanoseconds. Thread safe.<br>
+ * <br>
+ * A tap is tracked per thread, from {@linkplain #startTap(int)} to {@linkplain #endTap()}, so that taps in multiple
+ * slots can be in progress at once. APDUs are attributed to the tap in progress on the calling thread, if any.<br>
+ * <br>
+ * When disabled, all methods return after reading a volatile field.
+ */
+
+public class TapMetrics {
+
+    private static class Tap {
+        private final long start;
+
+        private int phase;
+        private long phaseStart;
+        private final long[] phaseTimes = new long[NfcMetrics.PHASES];
+        private final boolean[] entered = new boolean[NfcMetrics.PHASES];
+
+        private long apdus;
+        private long bytes;
+
+        private Tap(int phase, long start) {
+            this.phase = phase;
+            this.start = start;
+            this.phaseStart = start;
+            this.entered[phase] = true;
+        }
+
+        private void phase(int phase, long time) {
+            phaseTimes[this.phase] += time - phaseStart;
+
+            this.phase = phase;
+            this.phaseStart = time;
+            this.entered[phase] = true;
+        }
+    }
+
+    private volatile boolean enabled;
+
+    private final ThreadLocal<Tap> current = new ThreadLocal<Tap>();
+
+    private long apdus;
+    private long bytesSent;
+    private long bytesReceived;
+    private final Histogram apduLatency = new Histogram();
+
+    private final Histogram tapLatency = new Histogram();
+    private final Histogram tapApdus = new Histogram();
+    private final Histogram tapBytes = new Histogram();
+    private final Histogram[] phaseLatency = new Histogram[NfcMetrics.PHASES];
+
+    public TapMetrics() {
+        for (int i = 0; i < phaseLatency.length; i++) {
+            phaseLatency[i] = new Histogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Start a tap on the calling thread. A tap already in progress on the thread is discarded.
+     *
+     * @param phase initial phase
+     */
+
+    public void startTap(int phase) {
+        if (!enabled) {
+            return;
+        }
+        current.set(new Tap(phase, System.nanoTime()));
+    }
+
+    /**
+     * Move the tap in progress on the calling thread to another phase. Entering a phase more than once adds to its time.
+     *
+     * @param phase next phase
+     */
+
+    public void phase(int phase) {
+        if (!enabled) {
+            return;
+        }
+        Tap tap = current.get();
+        if (tap != null) {
+            tap.phase(phase, System.nanoTime());
+        }
+    }
+
+    /**
+     * End the tap in progress on the calling thread, if any, and record it.
+     */
+
+    public void endTap() {
+        if (!enabled) {
+            current.remove();
+
+            return;
+        }
+        Tap tap = current.get();
+        if (tap == null) {
+            return;
+        }
+        current.remove();
+
+        long time = System.nanoTime();
+        tap.phase(tap.phase, time);
+
+        synchronized (this) {
+            tapLatency.record(time - tap.start);
+            tapApdus.record(tap.apdus);
+            tapBytes.record(tap.bytes);
+            for (int i = 0; i < phaseLatency.length; i++) {
+                if (tap.entered[i]) {
+                    phaseLatency[i].record(tap.phaseTimes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record an APDU round-trip.
+     *
+     * @param sent     command length
+     * @param received response length
+     * @param latency  round-trip time
+     */
+
+    public void onApdu(int sent, int received, long latency) {
+        if (!enabled) {
+            return;
+        }
+        Tap tap = current.get();
+        if (tap != null) {
+            tap.apdus++;
+            tap.bytes += sent + received;
+        }
+
+        synchronized (this) {
+            apdus++;
+            bytesSent += sent;
+            bytesReceived += received;
+            apduLatency.record(latency);
+        }
+    }
+
+    public synchronized long getTaps() {
+        return tapLatency.getCount();
+    }
+
+    public synchronized long getApdus() {
+        return apdus;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Get the APDU round-trip latency summary.
+     *
+     * @return array indexed by the SUMMARY_ constants in {@linkplain NfcMetrics}
+     */
+
+    public synchronized long[] getApduLatency() {
+        return apduLatency.getSummary();
+    }
+
+    public synchronized long[] getTapLatency() {
+        return tapLatency.getSummary();
+    }
+
+    public synchronized long[] getTapApdus() {
+        return tapApdus.getSummary();
+    }
+
+    public synchronized long[] getTapBytes() {
+        return tapBytes.getSummary();
+    }
+
+    public synchronized long[] getPhaseLatency(int phase) {
+        return phaseLatency[phase].getSummary();
+    }
+
+    public synchronized void reset() {
+        apdus = 0;
+        bytesSent = 0;
+        bytesReceived = 0;
+        apduLatency.reset();
+
+        tapLatency.reset();
+        tapApdus.reset();
+        tapBytes.reset();
+        for (Histogram histogram : phaseLatency) {
+            histogram.reset();
+        }
+    }
+
+    // latencies as mean/p90/max
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("TapMetrics[taps=").append(tapLatency.getCount());
+        builder.append(", apdus=").append(apdus);
+        builder.append(", sent=").append(bytesSent);
+        builder.append(", received=").append(bytesReceived);
+        append(builder, "apdu", apduLatency);
+        append(builder, "tap", tapLatency);
+        for (int i = 0; i < phaseLatency.length; i++) {
+            append(builder, NfcMetrics.getPhaseName(i), phaseLatency[i]);
+        }
+        builder.append(", apdus/tap=").append(tapApdus.getMean());
+        builder.append(", bytes/tap=").append(tapBytes.getMean());
+        builder.append(']');
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, Histogram histogram) {
+        builder.append(", ").append(name).append("=");
+        builder.append(histogram.getMean() / 1000000).append('/');
+        builder.append(histogram.getPercentile(90) / 1000000).append('/');
+        builder.append(histogram.getMax() / 1000000).append("ms");
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2011-2012 Adrian Stabiszewski, as@nfctools.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nfctools.mf.classic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nfctools.utils.NfcUtils;
+
+/**
+ * Dictionary of known sector keys, with a memo of which key opened each sector of recently seen cards. Cards are
+ * identified by UID, or by some other profile string if the UID is not available. The memo holds a limited number of
+ * cards, evicting the least recently used. Thread safe, so a single dictionary can be shared between taps.
+ */
+
+public class KeyDictionary {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final List<KeyValue> keys = new CopyOnWriteArrayList<KeyValue>();
+	private final Map<String, Map<Integer, KeyValue>> memo;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public KeyDictionary() {
+		this(DEFAULT_CAPACITY, MfClassicConstants.MAD_KEY, MfClassicConstants.NDEF_KEY, MfClassicConstants.TRANSPORT_KEY);
+	}
+
+	public KeyDictionary(final int capacity, KeyValue... keyValues) {
+		this.memo = new LinkedHashMap<String, Map<Integer, KeyValue>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, KeyValue>> eldest) {
+				return size() > capacity;
+			}
+		};
+		for (KeyValue keyValue : keyValues) {
+			addKey(keyValue);
+		}
+	}
+
+	public static String getCardId(byte[] uid) {
+		return NfcUtils.convertBinToASCII(uid);
+	}
+
+	public void addKey(KeyValue keyValue) {
+		if (!keys.contains(keyValue)) {
+			keys.add(keyValue);
+		}
+	}
+
+	public void removeKey(KeyValue keyValue) {
+		keys.remove(keyValue);
+	}
+
+	public List<KeyValue> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * Get the keys to try for a sector, in order: the key which opened the sector the last time the card was seen,
+	 * then the dictionary keys. Counts as a miss if no key is known for the sector.
+	 * 
+	 * @param cardId card id
+	 * @param sector sector
+	 * @return list of keys
+	 */
+
+	public List<KeyValue> getKeys(String cardId, int sector) {
+		KeyValue keyValue = getKey(cardId, sector);
+		if (keyValue == null) {
+			return getFallbackKeys();
+		}
+		List<KeyValue> result = new ArrayList<KeyValue>(keys.size() + 1);
+		result.add(keyValue);
+		for (KeyValue key : keys) {
+			if (!key.equals(keyValue)) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the dictionary keys, for when the memo did not know or open a sector. Counts as a miss.
+	 * 
+	 * @return list of keys
+	 */
+
+	public List<KeyValue> getFallbackKeys() {
+		misses.incrementAndGet();
+		return keys;
+	}
+
+	/**
+	 * Get the key which opened a sector the last time the card was seen. Counts as a hit if known; a lookup
+	 * which finds nothing is not a miss by itself, only falling back to the dictionary keys is.
+	 * 
+	 * @param cardId card id
+	 * @param sector sector
+	 * @return key or null if not known
+	 */
+
+	public KeyValue getKey(String cardId, int sector) {
+		KeyValue keyValue = null;
+		synchronized (memo) {
+			Map<Integer, KeyValue> sectors = memo.get(cardId);
+			if (sectors != null) {
+				keyValue = sectors.get(sector);
+			}
+		}
+		if (keyValue != null) {
+			hits.incrementAndGet();
+		}
+		return keyValue;
+	}
+
+	public void setSuccessfulKey(String cardId, int sector, KeyValue keyValue) {
+		synchronized (memo) {
+			Map<Integer, KeyValue> sectors = memo.get(cardId);
+			if (sectors == null) {
+				sectors = new HashMap<Integer, KeyValue>();
+				memo.put(cardId, sectors);
+			}
+			sectors.put(sector, keyValue);
+		}
+	}
+
+	public void setFailedKey(String cardId, int sector, KeyValue keyValue) {
+		synchronized (memo) {
+			Map<Integer, KeyValue> sectors = memo.get(cardId);
+			if (sectors != null && keyValue.equals(sectors.get(sector))) {
+				sectors.remove(sector);
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (memo) {
+			memo.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (memo) {
+			return memo.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public void resetCounters() {
+		hits.set(0);
+		misses.set(0);
+	}
+}
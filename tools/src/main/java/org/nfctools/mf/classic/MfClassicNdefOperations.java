@@ -15,7 +15,6 @@
  */
 package org.nfctools.mf.classic;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
@@ -73,19 +72,13 @@ public class MfClassicNdefOperations extends AbstractNdefOperations {
 			return lastReadRecords;
 		}
 		else {
-			try {
-				Application application = getApplication();
-				// TODO create TagInputStream for better performance
-				byte[] tlvWrappedNdefMessage = application.read(new KeyValue(Key.A, MfConstants.NDEF_KEY));
-				
-				TypeLengthValueReader reader = new TypeLengthValueReader(
-						new ByteArrayInputStream(tlvWrappedNdefMessage));
-				convertRecords(reader);
-				return lastReadRecords;
-			}
-			catch (IOException e) {
-				throw new NfcException(e);
-			}
+			Application application = getApplication();
+
+			// read sector by sector, stopping at the terminator
+			TypeLengthValueReader reader = new TypeLengthValueReader(
+					application.getInputStream(new KeyValue(Key.A, MfConstants.NDEF_KEY)));
+			convertRecords(reader);
+			return lastReadRecords;
 		}
 	}
 
@@ -169,9 +162,7 @@ public class MfClassicNdefOperations extends AbstractNdefOperations {
 		assertFormatted();
 		Application application = getApplication();
 		
-		byte[] tlvWrappedNdefMessage = application.read(new KeyValue(Key.A, MfConstants.NDEF_KEY));
-		
-		TypeLengthValueReader reader = new TypeLengthValueReader(new ByteArrayInputStream(tlvWrappedNdefMessage));
+		TypeLengthValueReader reader = new TypeLengthValueReader(application.getInputStream(new KeyValue(Key.A, MfConstants.NDEF_KEY)));
 		
 		ByteArrayOutputStream bout = new ByteArrayOutputStream();
 		while (reader.hasNext()) {
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2011-2012 Adrian Stabiszewski, as@nfctools.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nfctools.mf.classic;
+
+import java.util.List;
+
+/**
+ * Source of the keys most likely to open a sector, for reader/writers which remember keys between logins or
+ * cards.
+ */
+
+public interface SectorKeyProvider {
+
+	/**
+	 * Get the key which last opened a sector.
+	 * 
+	 * @param sectorId sector
+	 * @return key, or null if not known
+	 */
+
+	KeyValue getSectorKey(int sectorId);
+
+	/**
+	 * Get the keys to try when none of the likely keys opened a sector.
+	 * 
+	 * @return list of keys, possibly empty
+	 */
+
+	List<KeyValue> getFallbackKeys();
+}
@@ -16,6 +16,8 @@
 package org.nfctools.mf.mad;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.nfctools.mf.MfConstants;
 import org.nfctools.mf.MfException;
@@ -39,6 +41,8 @@ public abstract class AbstractMad implements ApplicationDirectory {
 	protected MemoryLayout memoryLayout;
 	protected MfClassicReaderWriter readerWriter;
 	private boolean readonly;
+	private TrailerBlock madTrailer; // as read from the card
+	private Map<Integer, byte[]> persisted = new HashMap<Integer, byte[]>(); // MAD data on the card, per sector, shared with copies
 
 	protected class Space {
 
@@ -65,22 +69,55 @@ public abstract class AbstractMad implements ApplicationDirectory {
 			System.arraycopy(madBlocks[x].getData(), 0, madData, x * MfConstants.BYTES_PER_BLOCK,
 					MfConstants.BYTES_PER_BLOCK);
 		}
+		persisted.put(sectorId, madData.clone());
 	}
 
+	/**
+	 * Writes the MAD blocks of a sector. If the MAD data on the card is known, only the blocks which have changed are
+	 * written.
+	 */
 	protected void writeMad(byte[] madData, int sectorId, int firstBlockId, TrailerBlock trailerBlock)
 			throws IOException {
-		int blocksToWrite = madData.length / MfConstants.BYTES_PER_BLOCK;
-		DataBlock[] dataBlocks = new DataBlock[blocksToWrite];
+		int blocks = madData.length / MfConstants.BYTES_PER_BLOCK;
+		byte[] previous = persisted.get(sectorId);
+
+		int block = 0;
+		while (block < blocks) {
+			if (!isBlockChanged(madData, previous, block)) {
+				block++;
+				continue;
+			}
+			int end = block + 1;
+			while (end < blocks && isBlockChanged(madData, previous, end)) {
+				end++;
+			}
+
+			DataBlock[] dataBlocks = new DataBlock[end - block];
+			for (int x = 0; x < dataBlocks.length; x++) {
+				byte[] writeBuffer = new byte[MfConstants.BYTES_PER_BLOCK];
+				System.arraycopy(madData, (block + x) * MfConstants.BYTES_PER_BLOCK, writeBuffer, 0,
+						MfConstants.BYTES_PER_BLOCK);
+				dataBlocks[x] = new DataBlock(writeBuffer);
+			}
 
-		for (int x = 0; x < blocksToWrite; x++) {
-			byte[] writeBuffer = new byte[MfConstants.BYTES_PER_BLOCK];
-			System.arraycopy(madData, x * MfConstants.BYTES_PER_BLOCK, writeBuffer, 0, MfConstants.BYTES_PER_BLOCK);
-			dataBlocks[x] = new DataBlock(writeBuffer);
+			MfClassicAccess access = new MfClassicAccess(new KeyValue(Key.B, trailerBlock.getKey(Key.B)), sectorId,
+					firstBlockId + block);
+			readerWriter.writeBlock(access, dataBlocks);
+
+			block = end;
 		}
+		persisted.put(sectorId, madData.clone());
+	}
 
-		MfClassicAccess access = new MfClassicAccess(new KeyValue(Key.B, trailerBlock.getKey(Key.B)), sectorId,
-				firstBlockId);
-		readerWriter.writeBlock(access, dataBlocks);
+	private static boolean isBlockChanged(byte[] madData, byte[] previous, int block) {
+		if (previous == null)
+			return true;
+		int offset = block * MfConstants.BYTES_PER_BLOCK;
+		for (int x = offset; x < offset + MfConstants.BYTES_PER_BLOCK; x++) {
+			if (madData[x] != previous[x])
+				return true;
+		}
+		return false;
 	}
 
 	protected byte createCrc(byte[] madData) {
@@ -129,6 +166,13 @@ public abstract class AbstractMad implements ApplicationDirectory {
 
 	protected abstract void writeMad() throws IOException;
 
+	/**
+	 * Copies the MAD data from another MAD of the same version.
+	 * 
+	 * @param mad
+	 */
+	protected abstract void copyMad(AbstractMad mad);
+
 	protected Space getMaxContinousSpaceForAid(byte[] aid) {
 		Space maxContinousSpace = new Space();
 
@@ -239,36 +283,61 @@ public abstract class AbstractMad implements ApplicationDirectory {
 
 	public static ApplicationDirectory initInstance(MfClassicReaderWriter readerWriter, MadKeyConfig keyConfig)
 			throws IOException {
-		byte[] writeKeyValue = keyConfig == null ? null : keyConfig.getWriteKeyValue();
 		MemoryLayout memoryLayout = readerWriter.getMemoryLayout();
 		MfClassicAccess accessTrailer = new MfClassicAccess(MfClassicConstants.MAD_KEY, 0,
 				memoryLayout.getTrailerBlockNumberForSector(0));
 		TrailerBlock madTrailer = (TrailerBlock)readerWriter.readBlock(accessTrailer)[0];
 
+		AbstractMad mad = newInstance(readerWriter, keyConfig, madTrailer);
+		mad.readMad();
+		return mad;
+	}
+
+	/**
+	 * Returns a copy of this application directory with another key configuration, without accessing the card. Only
+	 * application directories which were read from the card can be copied. The copies share the snapshot of the MAD
+	 * data on the card, so that changed blocks are detected regardless of which copy wrote last.
+	 * 
+	 * @param keyConfig
+	 * @throws IOException
+	 */
+	public ApplicationDirectory copy(MadKeyConfig keyConfig) throws IOException {
+		if (madTrailer == null)
+			throw new IllegalStateException("mad was not read from the card");
+
+		AbstractMad mad = newInstance(readerWriter, keyConfig, madTrailer);
+		mad.copyMad(this);
+		// a write through any copy updates what the others diff against
+		mad.persisted = persisted;
+		return mad;
+	}
+
+	private static AbstractMad newInstance(MfClassicReaderWriter readerWriter, MadKeyConfig keyConfig,
+			TrailerBlock madTrailer) throws IOException {
+		byte[] writeKeyValue = keyConfig == null ? null : keyConfig.getWriteKeyValue();
+
 		if ((madTrailer.getGeneralPurposeByte() & MadConstants.GPB_MAD_AVAILABLE) != 0) {
+			TrailerBlock trailerBlock = madTrailer.clone();
+			AbstractMad mad;
 			if ((madTrailer.getGeneralPurposeByte() & MadConstants.GPB_MAD_V1) == MadConstants.GPB_MAD_V1) {
-				madTrailer.setKey(Key.A, MadConstants.DEFAULT_MAD_KEY);
+				trailerBlock.setKey(Key.A, MadConstants.DEFAULT_MAD_KEY);
 				if (writeKeyValue != null)
-					madTrailer.setKey(Key.B, writeKeyValue);
-				Mad1 mad1 = new Mad1(readerWriter, keyConfig, madTrailer);
-				mad1.readMad();
-				if (writeKeyValue == null)
-					mad1.setReadonly();
-				return mad1;
+					trailerBlock.setKey(Key.B, writeKeyValue);
+				mad = new Mad1(readerWriter, keyConfig, trailerBlock);
 			}
 			else if ((madTrailer.getGeneralPurposeByte() & MadConstants.GPB_MAD_V2) == MadConstants.GPB_MAD_V2) {
-				madTrailer.setKey(Key.A, MadConstants.DEFAULT_MAD_KEY);
+				trailerBlock.setKey(Key.A, MadConstants.DEFAULT_MAD_KEY);
 				if (writeKeyValue != null)
-					madTrailer.setKey(Key.B, writeKeyValue);
-				Mad2 mad = new Mad2(readerWriter, keyConfig, madTrailer);
-				mad.readMad();
-				if (writeKeyValue == null)
-					mad.setReadonly();
-				return mad;
+					trailerBlock.setKey(Key.B, writeKeyValue);
+				mad = new Mad2(readerWriter, keyConfig, trailerBlock);
 			}
 			else {
 				throw new MfException("MAD version not supported");
 			}
+			mad.madTrailer = madTrailer;
+			if (writeKeyValue == null)
+				mad.setReadonly();
+			return mad;
 		}
 		else {
 			throw new MfException("MAD not available");
@@ -16,6 +16,7 @@
 package org.nfctools.mf.mad;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.nfctools.mf.block.TrailerBlock;
 import org.nfctools.mf.classic.KeyValue;
@@ -28,6 +29,8 @@ public interface Application {
 
 	byte[] read(KeyValue keyValue) throws IOException;
 
+	InputStream getInputStream(KeyValue keyValue);
+
 	void write(KeyValue keyValue, byte[] content) throws IOException;
 
 	void updateTrailer(KeyValue keyValue, TrailerBlock trailerBlock) throws IOException;
@@ -16,15 +16,13 @@
 package org.nfctools.mf.mad;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 
 import org.nfctools.NfcException;
 import org.nfctools.mf.MfConstants;
-import org.nfctools.mf.MfLoginException;
 import org.nfctools.mf.block.DataBlock;
-import org.nfctools.mf.block.MfBlock;
 import org.nfctools.mf.block.TrailerBlock;
 import org.nfctools.mf.classic.KeyValue;
 import org.nfctools.mf.classic.MemoryLayout;
@@ -66,27 +64,34 @@ public class ApplicationImpl implements Application {
 
 	@Override
 	public byte[] read(KeyValue keyValue) throws IOException {
-		// TODO create SlotIterator
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(allocatedSize);
-		for (int slot = firstSlot; slot <= lastSlot; slot++) {
-			int sectorId = mad.getSectorIdForSlot(slot);
-			try {
-				readBlockData(keyValue, baos, sectorId);
+		byte[] content = new byte[allocatedSize];
+
+		InputStream in = getInputStream(keyValue);
+		try {
+			int offset = 0;
+			while (offset < content.length) {
+				int read = in.read(content, offset, content.length - offset);
+				if (read == -1) {
+					break;
+				}
+				offset += read;
 			}
-			catch (MfLoginException e) {
-				readBlockData(new KeyValue(keyValue.getKey(), MfConstants.TRANSPORT_KEY), baos, sectorId);
+			if (offset < content.length) {
+				return Arrays.copyOf(content, offset);
 			}
+			return content;
+		}
+		catch (NfcException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw e;
 		}
-		return baos.toByteArray();
 	}
 
-	private void readBlockData(KeyValue keyValue, ByteArrayOutputStream baos, int sectorId) throws IOException {
-		MfClassicAccess access = new MfClassicAccess(keyValue, sectorId, 0,
-				memoryLayout.getDataBlocksPerSector(sectorId));
-		MfBlock[] blocks = readerWriter.readBlock(access);
-		for (MfBlock block : blocks) {
-			baos.write(block.getData());
-		}
+	@Override
+	public InputStream getInputStream(KeyValue keyValue) {
+		return new ApplicationInputStream(readerWriter, mad, keyValue, firstSlot, lastSlot, allocatedSize);
 	}
 
 	@Override
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2011-2012 Adrian Stabiszewski, as@nfctools.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nfctools.mf.mad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.nfctools.NfcException;
+import org.nfctools.mf.MfConstants;
+import org.nfctools.mf.MfLoginException;
+import org.nfctools.mf.block.MfBlock;
+import org.nfctools.mf.classic.KeyValue;
+import org.nfctools.mf.classic.MemoryLayout;
+import org.nfctools.mf.classic.MfClassicAccess;
+import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.mf.classic.SectorKeyProvider;
+
+/**
+ * Input stream over the data blocks of an application. Sectors are logged into and read one at a time, only when
+ * the reader needs more bytes, so that a short TLV does not cost a login into every sector of the application.
+ */
+
+public class ApplicationInputStream extends InputStream {
+
+	private MfClassicReaderWriter readerWriter;
+	private MemoryLayout memoryLayout;
+	private AbstractMad mad;
+	private KeyValue keyValue;
+	/** key which opened the previous sector */
+	private KeyValue lastKeyValue;
+
+	private int nextSlot;
+	private int lastSlot;
+
+	private byte[] currentSector;
+	private int currentByte;
+	private int remaining;
+
+	public ApplicationInputStream(MfClassicReaderWriter readerWriter, AbstractMad mad, KeyValue keyValue,
+			int firstSlot, int lastSlot, int allocatedSize) {
+		this.readerWriter = readerWriter;
+		this.memoryLayout = readerWriter.getMemoryLayout();
+		this.mad = mad;
+		this.keyValue = keyValue;
+		this.nextSlot = firstSlot;
+		this.lastSlot = lastSlot;
+		this.remaining = allocatedSize;
+	}
+
+	private boolean readNextSector() {
+		if (nextSlot > lastSlot) {
+			return false;
+		}
+		int sectorId = mad.getSectorIdForSlot(nextSlot);
+
+		// try the keys most likely to open the sector first, to avoid failed logins
+		List<KeyValue> candidates = new ArrayList<KeyValue>();
+		if (readerWriter instanceof SectorKeyProvider) {
+			candidates.add(((SectorKeyProvider)readerWriter).getSectorKey(sectorId));
+		}
+		candidates.add(lastKeyValue);
+		candidates.add(keyValue);
+		candidates.add(new KeyValue(keyValue.getKey(), MfConstants.TRANSPORT_KEY));
+
+		currentSector = null;
+		try {
+			MfLoginException loginException = readSector(candidates, 0, sectorId);
+			if (currentSector == null) {
+				// none of the likely keys opened the sector, fall back to the dictionary keys
+				int tried = candidates.size();
+				candidates.addAll(getFallbackKeys());
+				if (tried < candidates.size()) {
+					MfLoginException fallbackException = readSector(candidates, tried, sectorId);
+					if (fallbackException != null) {
+						loginException = fallbackException;
+					}
+				}
+			}
+			if (currentSector == null) {
+				throw new NfcException(loginException);
+			}
+		}
+		catch (IOException e) {
+			// do not let the TLV reader mistake a failed read for end of data
+			throw new NfcException(e);
+		}
+		currentByte = 0;
+		nextSlot++;
+		return true;
+	}
+
+	private List<KeyValue> getFallbackKeys() {
+		if (readerWriter instanceof SectorKeyProvider) {
+			return ((SectorKeyProvider)readerWriter).getFallbackKeys();
+		}
+		return Collections.emptyList();
+	}
+
+	private MfLoginException readSector(List<KeyValue> keyValues, int offset, int sectorId) throws IOException {
+		MfLoginException loginException = null;
+		for (int i = offset; i < keyValues.size() && currentSector == null; i++) {
+			if (keyValues.get(i) == null || isTried(keyValues, i)) {
+				continue;
+			}
+			try {
+				currentSector = readSector(keyValues.get(i), sectorId);
+
+				lastKeyValue = keyValues.get(i);
+			}
+			catch (MfLoginException e) {
+				loginException = e;
+			}
+		}
+		return loginException;
+	}
+
+	private static boolean isTried(List<KeyValue> keyValues, int index) {
+		for (int i = 0; i < index; i++) {
+			if (keyValues.get(index).equals(keyValues.get(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] readSector(KeyValue keyValue, int sectorId) throws IOException {
+		int dataBlocks = memoryLayout.getDataBlocksPerSector(sectorId);
+		MfClassicAccess access = new MfClassicAccess(keyValue, sectorId, 0, dataBlocks);
+		MfBlock[] blocks = readerWriter.readBlock(access);
+
+		byte[] sector = new byte[dataBlocks * MfConstants.BYTES_PER_BLOCK];
+		for (int i = 0; i < blocks.length; i++) {
+			System.arraycopy(blocks[i].getData(), 0, sector, i * MfConstants.BYTES_PER_BLOCK,
+					MfConstants.BYTES_PER_BLOCK);
+		}
+		return sector;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return remaining;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining <= 0) {
+			return -1;
+		}
+		if (currentSector == null || currentByte >= currentSector.length) {
+			if (!readNextSector()) {
+				remaining = 0;
+				return -1;
+			}
+		}
+		remaining--;
+		return currentSector[currentByte++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (remaining <= 0) {
+			return -1;
+		}
+		if (currentSector == null || currentByte >= currentSector.length) {
+			if (!readNextSector()) {
+				remaining = 0;
+				return -1;
+			}
+		}
+		int read = Math.min(Math.min(length, remaining), currentSector.length - currentByte);
+
+		System.arraycopy(currentSector, currentByte, buffer, offset, read);
+
+		currentByte += read;
+		remaining -= read;
+
+		return read;
+	}
+}
@@ -70,6 +70,11 @@ public class Mad1 extends AbstractMad {
 		writeTrailer(mad1SectorId, trailerBlock);
 	}
 
+	@Override
+	protected void copyMad(AbstractMad mad) {
+		System.arraycopy(((Mad1)mad).madData, 0, madData, 0, madData.length);
+	}
+
 	protected void updateCrc() {
 		if (isReadonly())
 			throw new IllegalStateException("cannot modify readonly mad");
@@ -77,6 +77,12 @@ public class Mad2 extends Mad1 {
 		writeMad(mad2Data, mad2sectorId, 0, trailerBlock);
 	}
 
+	@Override
+	protected void copyMad(AbstractMad mad) {
+		super.copyMad(mad);
+		System.arraycopy(((Mad2)mad).mad2Data, 0, mad2Data, 0, mad2Data.length);
+	}
+
 	@Override
 	protected byte[] getAid(int aidSlot) {
 		if (aidSlot < super.getNumberOfSlots())
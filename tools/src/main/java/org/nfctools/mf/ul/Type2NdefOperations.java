@@ -27,8 +27,11 @@ import org.nfctools.mf.block.MfBlock;
 import org.nfctools.mf.ndef.AbstractNdefOperations;
 import org.nfctools.mf.tlv.NdefMessageTlv;
 import org.nfctools.mf.tlv.Tlv;
+import org.nfctools.mf.tlv.TlvConstants;
 import org.nfctools.mf.tlv.TypeLengthValueReader;
 import org.nfctools.mf.tlv.TypeLengthValueWriter;
+import org.nfctools.scio.Command;
+import org.nfctools.scio.Response;
 import org.nfctools.tags.TagInputStream;
 import org.nfctools.tags.TagOutputStream;
 
@@ -41,6 +44,11 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 	private MemoryLayout memoryLayout;
 	private MfUlReaderWriter readerWriter;
 	private byte[] uid;
+
+	// shadow of the data pages last read from or written to the tag
+	private boolean differentialWrite = false;
+	private byte[] shadow;
+	private boolean[] shadowPages;
 	
 	public Type2NdefOperations(MemoryLayout memoryLayout, MfUlReaderWriter readerWriter, boolean formatted, boolean writable, byte[] uid) {
 		super(formatted, writable);
@@ -48,6 +56,27 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 		this.readerWriter = readerWriter;
 
 		this.uid = uid;
+
+		int dataPages = memoryLayout.getLastDataPage() - memoryLayout.getFirstDataPage() + 1;
+		this.shadow = new byte[dataPages * memoryLayout.getBytesPerPage()];
+		this.shadowPages = new boolean[dataPages];
+	}
+
+	public boolean isDifferentialWrite() {
+		return differentialWrite;
+	}
+
+	/**
+	 * Toggle differential writes. If enabled, only pages which differ from the last known tag content are written,
+	 * writing stops after the terminator TLV or the end of the last known previous content, whichever comes last,
+	 * and the result is verified by reading back the written range. If disabled (the default), the whole data area
+	 * is written.
+	 * 
+	 * @param differentialWrite true for differential writes
+	 */
+	
+	public void setDifferentialWrite(boolean differentialWrite) {
+		this.differentialWrite = differentialWrite;
 	}
 
 	public byte[] getUid() {
@@ -73,7 +102,7 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 	
 	public byte[] readNdefMessageBytes() {
 		assertFormatted();
-		TypeLengthValueReader reader = new TypeLengthValueReader(new TagInputStream(memoryLayout, readerWriter));
+		TypeLengthValueReader reader = new TypeLengthValueReader(new TagInputStream(memoryLayout, new ShadowReaderWriter()));
 		
 		ByteArrayOutputStream bout = new ByteArrayOutputStream();
 		while (reader.hasNext()) {
@@ -102,7 +131,7 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 			return lastReadRecords;
 		}
 		else {
-			TypeLengthValueReader reader = new TypeLengthValueReader(new TagInputStream(memoryLayout, readerWriter));
+			TypeLengthValueReader reader = new TypeLengthValueReader(new TagInputStream(memoryLayout, new ShadowReaderWriter()));
 			convertRecords(reader);
 			return lastReadRecords;
 		}
@@ -130,6 +159,7 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 		assertWritable();
 		assertFormatted();
 		setLockBytes();
+		clearShadow();
 		writable = false;
 	}
 
@@ -163,15 +193,120 @@ public class Type2NdefOperations extends AbstractNdefOperations {
 		assertWritable();
 		assertFormatted();
 		try {
-			int offset = 0;
-			for (int page = memoryLayout.getFirstDataPage(); page <= memoryLayout.getLastDataPage(); page++) {
-				DataBlock block = new DataBlock(buffer, offset);
-				readerWriter.writeBlock(page, block);
-				offset += memoryLayout.getBytesPerPage();
+			if (differentialWrite) {
+				writeChangedPagesOnTag(buffer);
+			} else {
+				int offset = 0;
+				for (int page = memoryLayout.getFirstDataPage(); page <= memoryLayout.getLastDataPage(); page++) {
+					DataBlock block = new DataBlock(buffer, offset);
+					readerWriter.writeBlock(page, block);
+					updateShadow(page, block.getData());
+					offset += memoryLayout.getBytesPerPage();
+				}
 			}
 		}
 		catch (IOException e) {
 			throw new NfcException(e);
+		} catch (ReaderException e) {
+			throw new NfcException(e);
+		}
+	}
+
+	private void writeChangedPagesOnTag(byte[] buffer) throws IOException, ReaderException {
+		int bytesPerPage = memoryLayout.getBytesPerPage();
+		int firstDataPage = memoryLayout.getFirstDataPage();
+
+		// no need to write anything after the terminator
+		int length = getTerminatorOffset(buffer) + 1;
+		int pages = Math.min(shadowPages.length, (length + bytesPerPage - 1) / bytesPerPage);
+
+		// clear known previous content after the terminator, i.e. the remains of a longer message
+		for (int i = shadowPages.length - 1; i >= pages; i--) {
+			if (shadowPages[i] && !isEqual(buffer, i * bytesPerPage, shadow, i * bytesPerPage, bytesPerPage)) {
+				pages = i + 1;
+				break;
+			}
+		}
+
+		for (int i = 0; i < pages; i++) {
+			if (!shadowPages[i] || !isEqual(buffer, i * bytesPerPage, shadow, i * bytesPerPage, bytesPerPage)) {
+				DataBlock block = new DataBlock(buffer, i * bytesPerPage);
+				readerWriter.writeBlock(firstDataPage + i, block);
+				updateShadow(firstDataPage + i, block.getData());
+			}
+		}
+
+		// verify using a single (batched) read, also catches a stale shadow
+		MfBlock[] blocks = readerWriter.readBlock(firstDataPage, pages);
+		for (int i = 0; i < pages; i++) {
+			byte[] data = blocks[i].getData();
+			if (!isEqual(buffer, i * bytesPerPage, data, 0, bytesPerPage)) {
+				DataBlock block = new DataBlock(buffer, i * bytesPerPage);
+				readerWriter.writeBlock(firstDataPage + i, block);
+
+				MfBlock[] verify = readerWriter.readBlock(firstDataPage + i, 1);
+				if (!isEqual(buffer, i * bytesPerPage, verify[0].getData(), 0, bytesPerPage)) {
+					shadowPages[i] = false;
+
+					throw new NfcException("Verification failed for page " + (firstDataPage + i));
+				}
+			}
+			updateShadow(firstDataPage + i, buffer, i * bytesPerPage);
+		}
+	}
+
+	private static int getTerminatorOffset(byte[] buffer) {
+		int offset = 0;
+		while (offset < buffer.length) {
+			int type = buffer[offset] & 0xFF;
+			if (type == TlvConstants.TERMINATOR_TLV) {
+				return offset;
+			} else if (type == TlvConstants.NULL_TLV) {
+				offset++;
+			} else {
+				if (offset + 1 >= buffer.length) {
+					break;
+				}
+				int length = buffer[offset + 1] & 0xFF;
+				if (length == 0xFF) {
+					if (offset + 3 >= buffer.length) {
+						break;
+					}
+					length = ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+					offset += 4 + length;
+				} else {
+					offset += 2 + length;
+				}
+			}
+		}
+		// no terminator, i.e. full data area
+		return buffer.length - 1;
+	}
+
+	private static boolean isEqual(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[aOffset + i] != b[bOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void updateShadow(int page, byte[] data) {
+		updateShadow(page, data, 0);
+	}
+
+	private void updateShadow(int page, byte[] data, int offset) {
+		int index = page - memoryLayout.getFirstDataPage();
+		if (index >= 0 && index < shadowPages.length) {
+			System.arraycopy(data, offset, shadow, index * memoryLayout.getBytesPerPage(), memoryLayout.getBytesPerPage());
+			shadowPages[index] = true;
+		}
+	}
+
+	private void clearShadow() {
+		for (int i = 0; i < shadowPages.length; i++) {
+			shadowPages[i] = false;
 		}
 	}
 
@@ -203,4 +338,48 @@ public class Type2NdefOperations extends AbstractNdefOperations {
             throw new NfcException(e);
         }
     }
+
+	/**
+	 * Reader writer which records pages read into the shadow.
+	 */
+
+	private class ShadowReaderWriter implements MfUlReaderWriter {
+
+		@Override
+		public byte[] transmit(byte[] data) throws ReaderException {
+			return readerWriter.transmit(data);
+		}
+
+		@Override
+		public Response transmit(Command command) throws ReaderException {
+			return readerWriter.transmit(command);
+		}
+
+		@Override
+		public MfBlock[] readBlock(int startPage, int pagesToRead) throws IOException, ReaderException {
+			MfBlock[] blocks = readerWriter.readBlock(startPage, pagesToRead);
+			for (int i = 0; i < blocks.length; i++) {
+				updateShadow(startPage + i, blocks[i].getData());
+			}
+			return blocks;
+		}
+
+		@Override
+		public void writeBlock(int startPage, MfBlock... mfBlock) throws IOException {
+			readerWriter.writeBlock(startPage, mfBlock);
+			for (int i = 0; i < mfBlock.length; i++) {
+				updateShadow(startPage + i, mfBlock[i].getData());
+			}
+		}
+
+		@Override
+		public int getMaxPagesPerRead() {
+			return readerWriter.getMaxPagesPerRead();
+		}
+
+		@Override
+		public byte[] transmitPassthrough(byte[] data) throws ReaderException {
+			return readerWriter.transmitPassthrough(data);
+		}
+	}
 }
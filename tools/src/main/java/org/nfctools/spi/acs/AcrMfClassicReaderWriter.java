@@ -16,6 +16,8 @@
 package org.nfctools.spi.acs;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import org.nfctools.api.ApduTag;
 import org.nfctools.api.TagInfo;
@@ -27,11 +29,13 @@ import org.nfctools.mf.block.BlockResolver;
 import org.nfctools.mf.block.MfBlock;
 import org.nfctools.mf.block.TrailerBlock;
 import org.nfctools.mf.classic.Key;
+import org.nfctools.mf.classic.KeyDictionary;
 import org.nfctools.mf.classic.KeyValue;
 import org.nfctools.mf.classic.MemoryLayout;
 import org.nfctools.mf.classic.MfClassicAccess;
 import org.nfctools.mf.classic.MfClassicConstants;
 import org.nfctools.mf.classic.MfClassicReaderWriter;
+import org.nfctools.mf.classic.SectorKeyProvider;
 import org.nfctools.mf.mad.AbstractMad;
 import org.nfctools.mf.mad.ApplicationDirectory;
 import org.nfctools.mf.mad.MadConstants;
@@ -41,18 +45,60 @@ import org.nfctools.scio.Response;
 
 import android.util.Log;
 
-public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
+public class AcrMfClassicReaderWriter implements MfClassicReaderWriter, SectorKeyProvider {
 
 	private static final String TAG = AcrMfClassicReaderWriter.class.getName();
-	
+
 	private TagInfo tagInfo;
 	private ApduTag apduTag;
 	private MemoryLayout memoryLayout;
-	private LoginKeyHandler loginKeyHandler = new LoginKeyHandler();
+	private LoginKeyHandler loginKeyHandler;
+	private KeyDictionary keyDictionary;
+	private String cardId;
+	private AbstractMad applicationDirectory; // as read from the card, until the MAD sectors are written
 
 	public AcrMfClassicReaderWriter(ApduTag apduTag, MemoryLayout memoryLayout) {
+		this(apduTag, memoryLayout, LoginKeyHandler.DEFAULT_KEY_SLOTS);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param apduTag tag
+	 * @param memoryLayout memory layout
+	 * @param keyDictionary dictionary of keys to try, and memo of keys which worked for previously seen cards
+	 */
+
+	public AcrMfClassicReaderWriter(ApduTag apduTag, MemoryLayout memoryLayout, KeyDictionary keyDictionary) {
+		this(apduTag, memoryLayout, keyDictionary, LoginKeyHandler.DEFAULT_KEY_SLOTS);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param apduTag tag
+	 * @param memoryLayout memory layout
+	 * @param keySlots number of volatile key locations supported by the reader
+	 */
+
+	public AcrMfClassicReaderWriter(ApduTag apduTag, MemoryLayout memoryLayout, int keySlots) {
+		this(apduTag, memoryLayout, null, keySlots);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param apduTag tag
+	 * @param memoryLayout memory layout
+	 * @param keyDictionary dictionary of keys to try, and memo of keys which worked for previously seen cards
+	 * @param keySlots number of volatile key locations supported by the reader
+	 */
+
+	public AcrMfClassicReaderWriter(ApduTag apduTag, MemoryLayout memoryLayout, KeyDictionary keyDictionary, int keySlots) {
 		this.apduTag = apduTag;
 		this.memoryLayout = memoryLayout;
+		this.keyDictionary = keyDictionary;
+		this.loginKeyHandler = new LoginKeyHandler(keySlots);
 	}
 
 	@Override
@@ -79,6 +125,9 @@ public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
 
 	@Override
 	public void writeBlock(MfClassicAccess access, MfBlock... mfBlock) throws IOException {
+		if (isMadSector(access.getSector())) {
+			applicationDirectory = null;
+		}
 		loginIntoSector(access);
 		for (int currentBlock = 0; currentBlock < mfBlock.length; currentBlock++) {
 			int blockNumber = memoryLayout.getBlockNumber(access.getSector(), access.getBlock()) + currentBlock;
@@ -97,6 +146,10 @@ public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
 		}
 	}
 
+	private static boolean isMadSector(int sectorId) {
+		return sectorId == 0 || sectorId == 0x10;
+	}
+
 	@Override
 	public MemoryLayout getMemoryLayout() {
 		return memoryLayout;
@@ -147,17 +200,103 @@ public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
 */
 		Response authResponse = apduTag.transmit(auth);
 		if (authResponse.isFailure()) {
-			loginKeyHandler.resetCurrentKeys();
+			loginKeyHandler.setFailedLogin(access);
+			if (keyDictionary != null && cardId != null) {
+				keyDictionary.setFailedKey(cardId, access.getSector(), access.getKeyValue());
+			}
 			throw new MfLoginException("Login failed. Sector: " + access.getSector() + ", Block: " + access.getBlock()
 					+ " Key: " + access.getKeyValue().getKey().name() + ", Response: " + authResponse);
 		}
 		else {
 			loginKeyHandler.setSuccessfulLogin(access);
+			if (keyDictionary != null && cardId != null) {
+				keyDictionary.setSuccessfulKey(cardId, access.getSector(), access.getKeyValue());
+			}
 		}
 	}
 
+	/**
+	 * Get the key which last opened a sector of this tag, or which opened it the last time the card was seen.
+	 * 
+	 * @param sectorId sector
+	 * @return key, or null if not known
+	 */
+
+	@Override
+	public KeyValue getSectorKey(int sectorId) {
+		KeyValue keyValue = loginKeyHandler.getSectorKey(sectorId);
+		if (keyValue == null && keyDictionary != null && cardId != null) {
+			keyValue = keyDictionary.getKey(cardId, sectorId);
+		}
+		return keyValue;
+	}
+
+	/**
+	 * Get the dictionary keys to fall back to for a sector, the key memoized for this card first.
+	 * 
+	 * @param sectorId sector
+	 * @return list of keys, empty if there is no dictionary
+	 */
+
+	private List<KeyValue> getDictionaryKeys(int sectorId) {
+		if (keyDictionary == null) {
+			return Collections.emptyList();
+		}
+		if (cardId == null) {
+			return keyDictionary.getKeys();
+		}
+		return keyDictionary.getKeys(cardId, sectorId);
+	}
+
+	/**
+	 * Get the dictionary keys, for when the memo did not know or open a sector.
+	 * 
+	 * @return list of keys, empty if there is no dictionary
+	 */
+
+	@Override
+	public List<KeyValue> getFallbackKeys() {
+		if (keyDictionary == null) {
+			return Collections.emptyList();
+		}
+		return keyDictionary.getFallbackKeys();
+	}
+
+	public KeyDictionary getKeyDictionary() {
+		return keyDictionary;
+	}
+
+	public void setKeyDictionary(KeyDictionary keyDictionary) {
+		this.keyDictionary = keyDictionary;
+	}
+
+	/**
+	 * Set the id used for looking up keys in the key dictionary, if the UID is already known. Otherwise
+	 * the UID is taken from the manufacturer block when the tag info is read.
+	 * 
+	 * @param cardId card id
+	 */
+
+	public void setCardId(String cardId) {
+		this.cardId = cardId;
+	}
+
+	/**
+	 * Get the id used for looking up keys in the key dictionary, i.e. the UID as set or read from the manufacturer
+	 * block. Keys are not memoized while the id is unknown.
+	 * 
+	 * @return card id, or null if not known
+	 */
+
+	public String getCardId() {
+		return cardId;
+	}
+
 	@Override
 	public boolean hasApplicationDirectory() throws IOException {
+		if (applicationDirectory != null) {
+			return true;
+		}
 		try {
 			MfClassicAccess access = new MfClassicAccess(MfClassicConstants.MAD_KEY, 0,
 					memoryLayout.getTrailerBlockNumberForSector(0));
@@ -190,7 +329,10 @@ public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
 
 	/**
 	 * Returns the application directory in read-write mode. If the card does not have an application directory a
-	 * MfException is thrown.
+	 * MfException is thrown.<br>
+	 * <br>
+	 * The application directory is read from the card once, and then returned as a copy until the MAD sectors are
+	 * written.
 	 * 
 	 * @param card
 	 * @param readerWriter
@@ -198,16 +340,35 @@ public class AcrMfClassicReaderWriter implements MfClassicReaderWriter {
 	 */
 	@Override
 	public ApplicationDirectory getApplicationDirectory(MadKeyConfig keyConfig) throws IOException {
-		return AbstractMad.initInstance(this, keyConfig);
+		if (applicationDirectory == null) {
+			applicationDirectory = (AbstractMad)AbstractMad.initInstance(this, keyConfig);
+		}
+		return applicationDirectory.copy(keyConfig);
 	}
 
 	@Override
 	public TagInfo getTagInfo() throws IOException {
 		if (tagInfo == null) {
 			byte[] id = new byte[4];
-			MfBlock[] block = readManuBlockWithMultiKeys(MfClassicConstants.MAD_KEY, MfClassicConstants.TRANSPORT_KEY);
-			if (block != null)
+			MfBlock[] block;
+			if (keyDictionary != null) {
+				List<KeyValue> keys = getDictionaryKeys(0);
+				block = readManuBlockWithMultiKeys(keys.toArray(new KeyValue[keys.size()]));
+			}
+			else {
+				block = readManuBlockWithMultiKeys(MfClassicConstants.MAD_KEY, MfClassicConstants.TRANSPORT_KEY);
+			}
+			if (block != null) {
 				System.arraycopy(block[0].getData(), 0, id, 0, 4);
+				if (cardId == null) {
+					// key the memo on the UID without a separate get data command
+					cardId = KeyDictionary.getCardId(id);
+					KeyValue keyValue = loginKeyHandler.getSectorKey(0);
+					if (keyDictionary != null && keyValue != null) {
+						keyDictionary.setSuccessfulKey(cardId, 0, keyValue);
+					}
+				}
+			}
 			tagInfo = new TagInfo(apduTag.getTagType(), id);
 		}
 		return tagInfo;
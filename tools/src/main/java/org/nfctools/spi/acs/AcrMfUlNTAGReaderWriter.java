@@ -21,12 +21,22 @@ public class AcrMfUlNTAGReaderWriter  implements MfUlReaderWriter {
     private NfcNtag ntag;
     private int version;
 
-    private int maxTransceiveLength = 253;
+    /** default max response length for the PN532-style InCommunicateThru passthrough used by the ACS readers */
+    public static final int DEFAULT_MAX_TRANSCEIVE_LENGTH = 253;
+
+    private static final int PAGE_SIZE = 4;
+
+    private int maxTransceiveLength;
 
     public AcrMfUlNTAGReaderWriter(ApduTag tag, NfcNtag ntag, int version) {
+        this(tag, ntag, version, DEFAULT_MAX_TRANSCEIVE_LENGTH);
+    }
+
+    public AcrMfUlNTAGReaderWriter(ApduTag tag, NfcNtag ntag, int version, int maxTransceiveLength) {
         this.tag = tag;
         this.ntag = ntag;
         this.version = version;
+        this.maxTransceiveLength = maxTransceiveLength;
     }
 
     public byte[] transmit(byte[] data) throws ReaderException {
@@ -42,21 +52,23 @@ public class AcrMfUlNTAGReaderWriter  implements MfUlReaderWriter {
         MfBlock[] returnBlocks = new MfBlock[pagesToRead];
 
         int pagesPerRead = getMaxPagesPerRead();
-        int pageSize = 4;
 
         int reads = pagesToRead / pagesPerRead;
         if(pagesToRead % pagesPerRead != 0) {
             reads++;
         }
         for (int i = 0; i < reads; i++) {
+            int firstPage = startPage + i * pagesPerRead;
             int range = Math.min(pagesPerRead, pagesToRead - (i * pagesPerRead));
 
-            byte[] data = ntag.fastRead(startPage + i * pagesPerRead, startPage + i * pagesPerRead + range);
+            // end address is inclusive
+            byte[] data = ntag.fastRead(firstPage, firstPage + range - 1);
+            if(data.length < range * PAGE_SIZE) {
+                throw new MfException("Expected " + (range * PAGE_SIZE) + " bytes reading from page " + firstPage + ", got " + data.length);
+            }
 
             for(int k = 0; k < range; k++) {
-                byte[] block = new byte[pageSize];
-                System.arraycopy(data, k * pageSize, block, 0, pageSize);
-                returnBlocks[(i * pageSize) + k] = new DataBlock(block);
+                returnBlocks[(i * pagesPerRead) + k] = new DataBlock(data, k * PAGE_SIZE);
             }
         }
 
@@ -89,7 +101,7 @@ public class AcrMfUlNTAGReaderWriter  implements MfUlReaderWriter {
         command. Nevertheless, receive buffer of the NFC device must be able to handle the
         requested amount of data as there is no chaining possibility.
         */
-        return maxTransceiveLength / 4 - 4;
+        return maxTransceiveLength / PAGE_SIZE - 4;
     }
 
     @Override
@@ -17,6 +17,7 @@ package org.nfctools.spi.acs;
 
 import java.io.IOException;
 
+import org.nfctools.NfcException;
 import org.nfctools.api.ApduTag;
 import org.nfctools.mf.MfException;
 import org.nfctools.mf.block.MfBlock;
@@ -29,19 +30,37 @@ import android.util.Log;
 
 import com.acs.smartcard.ReaderException;
 
-import custom.java.CommandAPDU;
-import custom.java.ResponseAPDU;
-
 public class AcrMfUlReaderWriter implements MfUlReaderWriter {
 
     private static final String TAG = AcrMfUlReaderWriter.class.getName();
 
+    /** READ_BINARY returns at most 16 bytes, i.e. four pages, per command */
+    public static final int MAX_PAGES_PER_READ = 4;
+
+    private static final int PAGE_SIZE = 4;
+
 	private ApduTag tag;
 
+    private int pagesPerRead;
+
 	public AcrMfUlReaderWriter(ApduTag tag) {
-		this.tag = tag;
+		this(tag, MAX_PAGES_PER_READ);
 	}
 
+    /**
+     * Constructor
+     *
+     * @param tag tag
+     * @param pagesPerRead number of pages to request per READ_BINARY command, between 1 and {@linkplain #MAX_PAGES_PER_READ}.
+     */
+    public AcrMfUlReaderWriter(ApduTag tag, int pagesPerRead) {
+        if(pagesPerRead < 1 || pagesPerRead > MAX_PAGES_PER_READ) {
+            throw new IllegalArgumentException("Expected 1 to " + MAX_PAGES_PER_READ + " pages per read, got " + pagesPerRead);
+        }
+        this.tag = tag;
+        this.pagesPerRead = pagesPerRead;
+    }
+
     public byte[] transmit(byte[] data) throws ReaderException {
 	    return tag.transmit(data);
     }
@@ -54,41 +73,25 @@ public class AcrMfUlReaderWriter implements MfUlReaderWriter {
 	public MfBlock[] readBlock(int startPage, int pagesToRead) throws IOException {
 		MfBlock[] returnBlocks = new MfBlock[pagesToRead];
 
-        /*
-        // max 4 pages per read using this command
-		int reads = pagesToRead / 4;
-		if(pagesToRead % 4 != 0) {
-			reads++;
-		}
-        Log.d(TAG, "Read " + pagesToRead  + " pages in " + reads + " reads");
-		for (int i = 0; i < reads; i++) {
-			int range = Math.min(4, pagesToRead - (i * 4));
-			//Command readBlock = new Command(Apdu.INS_READ_BINARY, 0x00, startPage + i * 4, range * 4);
-
-            Log.d(TAG, "Read from page " + (startPage + i * 4) + " for " + (range * 4) + " bytes");
+		int currentPage = 0;
+		while (currentPage < pagesToRead) {
+			int range = Math.min(pagesPerRead, pagesToRead - currentPage);
 
-			CommandAPDU readBlock = new CommandAPDU(Apdu.CLS_PTS, Apdu.INS_READ_BINARY, 0x00, startPage + i * 4, range * 4);
+			if (range > 1) {
+				if (readBlocks(startPage + currentPage, range, returnBlocks, currentPage)) {
+					currentPage += range;
 
-			ResponseAPDU readBlockResponse = new ResponseAPDU(tag.transmit(readBlock.getBytes()));
+					continue;
+				}
+				// reader does not support multi-page reads; fall back to single page reads for the rest of the session
+				Log.d(TAG, "Multi-page read of " + range + " pages failed, fall back to single page reads");
 
-			if (readBlockResponse.isFailure()) {
-				throw new MfException("Reading " + range + " blocks failed. Page: " + (startPage + i * 4) + ", Response: " + readBlockResponse);
-			}
-
-			byte[] data = readBlockResponse.getData();
-
-			for(int k = 0; k < range; k++) {
-				byte[] block = new byte[4];
-				System.arraycopy(data, k * 4, block, 0, 4);
-				returnBlocks[(i * 4) + k] = new DataBlock(block);
+				pagesPerRead = 1;
 			}
-		}
-		*/
 
-		for (int currentPage = 0; currentPage < pagesToRead; currentPage++) {
 			int pageNumber = startPage + currentPage;
 
-			Command readBlock = new Command(Apdu.INS_READ_BINARY, 0x00, pageNumber, 4);
+			Command readBlock = new Command(Apdu.INS_READ_BINARY, 0x00, pageNumber, PAGE_SIZE);
 			Response readBlockResponse = tag.transmit(readBlock);
 			
 			if (readBlockResponse.isFailure()) {
@@ -96,10 +99,38 @@ public class AcrMfUlReaderWriter implements MfUlReaderWriter {
 			}
 			
 			returnBlocks[currentPage] = new DataBlock(readBlockResponse.getData());
+
+			currentPage++;
 		}
 		return returnBlocks;
 	}
 
+    private boolean readBlocks(int pageNumber, int range, MfBlock[] returnBlocks, int offset) {
+        Command readBlock = new Command(Apdu.INS_READ_BINARY, 0x00, pageNumber, range * PAGE_SIZE);
+        Response readBlockResponse;
+        try {
+            readBlockResponse = tag.transmit(readBlock);
+        } catch (NfcException e) {
+            Log.d(TAG, "Problem reading " + range + " pages from page " + pageNumber, e);
+
+            return false;
+        }
+
+        if (!readBlockResponse.isSuccess()) {
+            return false;
+        }
+
+        byte[] data = readBlockResponse.getData();
+        if (data == null || data.length < range * PAGE_SIZE) {
+            return false;
+        }
+
+        for (int k = 0; k < range; k++) {
+            returnBlocks[offset + k] = new DataBlock(data, k * PAGE_SIZE);
+        }
+        return true;
+    }
+
 	@Override
 	public void writeBlock(int startPage, MfBlock... mfBlock) throws IOException {
 		for (int currentBlock = 0; currentBlock < mfBlock.length; currentBlock++) {
@@ -117,7 +148,7 @@ public class AcrMfUlReaderWriter implements MfUlReaderWriter {
 
     @Override
     public int getMaxPagesPerRead() {
-        return 1;
+        return pagesPerRead;
     }
 
     @Override
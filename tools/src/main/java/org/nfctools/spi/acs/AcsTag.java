@@ -25,6 +25,7 @@ import org.nfctools.scio.Response;
 
 import android.util.Log;
 
+import com.acs.smartcard.ReaderException;
 import com.github.skjolber.nfc.command.ReaderWrapper;
 import com.github.skjolber.nfc.command.Utils;
 
@@ -35,9 +36,14 @@ import custom.java.ResponseAPDU;
 public class AcsTag extends Tag implements ApduTag {
 
 	private static final String TAG = AcsTag.class.getName();
+
+	private static final int MAX_SHORT_DATA_LENGTH = 255;
 	
 	private ReaderWrapper reader;
 	private int slot;
+
+	// request buffer for short APDUs, guarded by the reader's response buffer for the slot
+	private final byte[] request = new byte[5 + MAX_SHORT_DATA_LENGTH];
 	
 	public AcsTag(TagType tagType, byte[] generalBytes, ReaderWrapper reader, int slot) {
 		super(tagType, generalBytes);
@@ -69,43 +75,98 @@ public class AcsTag extends Tag implements ApduTag {
 	@Override
 	public Response transmit(Command command) {
 		try {
-			CommandAPDU commandAPDU = null;
-			if (command.isDataOnly()) {
-				commandAPDU = new CommandAPDU(0xff, 0, 0, 0, command.getData(), command.getOffset(),
-						command.getLength());
-			}
-			else if (command.hasData()) {
-				commandAPDU = new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(),
-						command.getData());
+			int dataLength = command.hasData() ? (command.isDataOnly() ? command.getLength() : command.getData().length) : 0;
+			if (dataLength > MAX_SHORT_DATA_LENGTH || (!command.hasData() && command.getLength() > 256)) {
+				// extended length
+				return transmit(toCommandAPDU(command));
 			}
-			else {
-				commandAPDU = new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(),
-						command.getLength());
-			}
-			byte[] out = commandAPDU.getBytes();
-			
-			//Log.d(TAG, "Request: " + Utils.toHexString(out));
 
-			byte[] in = reader.transmit(slot, out);
-			
-			//Log.d(TAG, "Response: " + Utils.toHexString(in));
-			
-			ResponseAPDU responseAPDU = new ResponseAPDU(in);
-			return new Response(responseAPDU.getSW1(), responseAPDU.getSW2(), responseAPDU.getData());
+			byte[] response = reader.getResponseBuffer(slot);
+			synchronized (response) {
+				int length = toShortApdu(command, request);
+				
+				int read = reader.transmit(slot, request, length, response, response.length);
+				if (read < 2) {
+					throw new IllegalArgumentException("apdu must be at least 2 bytes long");
+				}
+				byte[] data = new byte[read - 2];
+				System.arraycopy(response, 0, data, 0, data.length);
+
+				return new Response(response[read - 2] & 0xFF, response[read - 1] & 0xFF, data);
+			}
 		}
 		catch (Exception e) {
 			throw new NfcException(e);
 		}
 	}
 
+	/**
+	 * Encode a short APDU, as {@linkplain CommandAPDU} would.
+	 * 
+	 * @return the APDU length
+	 */
+
+	private static int toShortApdu(Command command, byte[] apdu) {
+		if (command.isDataOnly()) {
+			apdu[0] = (byte)0xFF;
+			apdu[1] = 0;
+			apdu[2] = 0;
+			apdu[3] = 0;
+		}
+		else {
+			apdu[0] = (byte)Apdu.CLS_PTS;
+			apdu[1] = (byte)command.getInstruction();
+			apdu[2] = (byte)command.getP1();
+			apdu[3] = (byte)command.getP2();
+		}
+		if (command.hasData()) {
+			int offset = command.isDataOnly() ? command.getOffset() : 0;
+			int length = command.isDataOnly() ? command.getLength() : command.getData().length;
+			if (length == 0) {
+				return 4;
+			}
+			apdu[4] = (byte)length;
+			System.arraycopy(command.getData(), offset, apdu, 5, length);
+			return 5 + length;
+		}
+		if (command.getLength() == 0) {
+			return 4;
+		}
+		apdu[4] = (byte)command.getLength(); // 256 is encoded as 0
+		return 5;
+	}
+
+	private Response transmit(CommandAPDU commandAPDU) throws ReaderException {
+		byte[] in = reader.transmit(slot, commandAPDU.getBytes());
+
+		ResponseAPDU responseAPDU = new ResponseAPDU(in);
+		return new Response(responseAPDU.getSW1(), responseAPDU.getSW2(), responseAPDU.getData());
+	}
+
+	private static CommandAPDU toCommandAPDU(Command command) {
+		if (command.isDataOnly()) {
+			return new CommandAPDU(0xff, 0, 0, 0, command.getData(), command.getOffset(), command.getLength());
+		}
+		else if (command.hasData()) {
+			return new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(),
+					command.getData());
+		}
+		return new CommandAPDU(Apdu.CLS_PTS, command.getInstruction(), command.getP1(), command.getP2(),
+				command.getLength());
+	}
+
 
 	@Override
 	public byte[] transmit(byte[] request) {
-		Log.d(TAG, "Raw request: " + Utils.toHexString(request));
+		if (ReaderWrapper.isLogging()) {
+			Log.d(TAG, "Raw request: " + Utils.toHexString(request));
+		}
 		try {
 			byte[] response =  reader.transmit(slot, request);
 			
-			Log.d(TAG, "Raw response: " + Utils.toHexString(response));
+			if (ReaderWrapper.isLogging()) {
+				Log.d(TAG, "Raw response: " + Utils.toHexString(response));
+			}
 
 			return response;
 		} catch (Exception e) {
@@ -1,23 +1,41 @@
 package org.nfctools.spi.acs;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.nfctools.mf.classic.KeyValue;
 import org.nfctools.mf.classic.MfClassicAccess;
 
 public class LoginKeyHandler {
 
+	/** number of volatile key locations in the ACR122U / ACR1252U / ACR1255U readers */
+	public static final int DEFAULT_KEY_SLOTS = 2;
+
 	/** current logged in key */
 	private KeyValue authenticatedKeyValue;
 	/** current logged in sector */
 	private int authenticatedSector = -1;
 	/** keys loaded into the reader */
-	private MfClassicAccess[] loadedAuthenticationKeys = new MfClassicAccess[2];
-	/**
-	 * next key position to be loaded. Rotate the key loading so that we always have the two last keys loaded into the
-	 * reader
-	 */
-	private int nextAuthenticationKeyPosition = 0;
+	private MfClassicAccess[] loadedAuthenticationKeys;
+	/** last use of each loaded key, for replacing the least recently used key */
+	private long[] loadedAuthenticationKeysUsage;
+	/** use counter */
+	private long usage = 0;
+	/** key which last opened each sector */
+	private Map<Integer, KeyValue> sectorKeys = new HashMap<Integer, KeyValue>();
+
+	public LoginKeyHandler() {
+		this(DEFAULT_KEY_SLOTS);
+	}
+
+	public LoginKeyHandler(int keySlots) {
+		if (keySlots < 1) {
+			throw new IllegalArgumentException("Expected at least one key slot");
+		}
+		this.loadedAuthenticationKeys = new MfClassicAccess[keySlots];
+		this.loadedAuthenticationKeysUsage = new long[keySlots];
+	}
 
 	public void resetCurrentKeys() {
 		authenticatedKeyValue = null;
@@ -27,18 +45,49 @@ public class LoginKeyHandler {
 	public void setSuccessfulLogin(MfClassicAccess access) {
 		authenticatedKeyValue = access.getKeyValue();
 		authenticatedSector = access.getSector();
+
+		sectorKeys.put(access.getSector(), access.getKeyValue());
+	}
+
+	public void setFailedLogin(MfClassicAccess access) {
+		resetCurrentKeys();
+
+		KeyValue keyValue = sectorKeys.get(access.getSector());
+		if (keyValue != null && keyValue.equals(access.getKeyValue())) {
+			sectorKeys.remove(access.getSector());
+		}
+	}
+
+	/**
+	 * Get the key which last opened a sector.
+	 * 
+	 * @param sector sector
+	 * @return key, or null if no successful login into the sector
+	 */
+
+	public KeyValue getSectorKey(int sector) {
+		return sectorKeys.get(sector);
 	}
 
 	public void rememberKey(MfClassicAccess access) {
 		// this key is not loaded, load it into reader now
-		// use rotating key location so that the last two keys are the ones loaded into the reader
+		// replace the least recently used key, so that the most used keys stay loaded in the reader
 		int index = getNextKeyPosition();
 		loadedAuthenticationKeys[index] = access;
-		nextAuthenticationKeyPosition++;
+		loadedAuthenticationKeysUsage[index] = ++usage;
 	}
 
 	public int getNextKeyPosition() {
-		return nextAuthenticationKeyPosition % loadedAuthenticationKeys.length;
+		int index = 0;
+		for (int i = 0; i < loadedAuthenticationKeys.length; i++) {
+			if (loadedAuthenticationKeys[i] == null) {
+				return i;
+			}
+			if (loadedAuthenticationKeysUsage[i] < loadedAuthenticationKeysUsage[index]) {
+				index = i;
+			}
+		}
+		return index;
 	}
 
 	public int getPreviouslyLoadedKeyIndex(MfClassicAccess access) {
@@ -48,6 +97,7 @@ public class LoginKeyHandler {
 				if (Arrays.equals(access.getKeyValue().getKeyValue(), loadedAuthenticationKeys[i].getKeyValue()
 						.getKeyValue())) {
 					index = i;
+					loadedAuthenticationKeysUsage[i] = ++usage;
 					break;
 				}
 			}
@@ -59,4 +109,4 @@ public class LoginKeyHandler {
 		return authenticatedSector != -1 && authenticatedSector == access.getSector() && authenticatedKeyValue != null
 				&& authenticatedKeyValue.equals(access.getKeyValue());
 	}
-}
\ No newline at end of file
+}
@@ -24,6 +24,7 @@ import java.io.InputStream;
 
 import org.nfctools.NfcException;
 import org.nfctools.mf.block.MfBlock;
+import org.nfctools.mf.tlv.TlvConstants;
 import org.nfctools.mf.ul.MemoryLayout;
 import org.nfctools.mf.ul.MfUlReaderWriter;
 
@@ -31,6 +32,17 @@ public class TagInputStream extends InputStream {
 
     private static final String TAG = TagInputStream.class.getName();
 
+    /** pages to read while positioned at a TLV header, i.e. a single READ_BINARY */
+    private static final int HEADER_PAGES = 4;
+
+    // states for tracking the TLV structure of the consumed bytes
+    private static final int TLV_TYPE = 0;
+    private static final int TLV_LENGTH = 1;
+    private static final int TLV_LENGTH_HIGH = 2;
+    private static final int TLV_LENGTH_LOW = 3;
+    private static final int TLV_VALUE = 4;
+    private static final int TLV_TERMINATED = 5;
+
 	private MemoryLayout memoryLayout;
 	private MfUlReaderWriter readerWriter;
 
@@ -38,6 +50,9 @@ public class TagInputStream extends InputStream {
 	private int currentPage;
 	private int currentByte;
 
+	private int tlvState = TLV_TYPE;
+	private int tlvRemaining;
+
 	public TagInputStream(MemoryLayout memoryLayout, MfUlReaderWriter readerWriter) {
 		this.memoryLayout = memoryLayout;
 		this.readerWriter = readerWriter;
@@ -46,11 +61,13 @@ public class TagInputStream extends InputStream {
 
 	private void readNextBlock() {
 		try {
-            //Log.d(TAG, "Read page " + currentPage);
+            int pagesToRead = Math.min(getReadAheadPages(), getRemainigPages());
+
+            //Log.d(TAG, "Read page " + currentPage + "-" + (currentPage + pagesToRead - 1));
 
-            MfBlock[] blocks = readerWriter.readBlock(currentPage, 1);
-			currentBlock = blocks[0].getData();
-			currentPage++;
+            MfBlock[] blocks = readerWriter.readBlock(currentPage, pagesToRead);
+			currentBlock = toBytes(blocks);
+			currentPage += pagesToRead;
 			currentByte = 0;
 		}
 		catch (IOException e) {
@@ -60,8 +77,81 @@ public class TagInputStream extends InputStream {
         }
     }
 
+    /**
+     * Number of pages to read next. Within a TLV value, read the rest of the value plus the type
+     * of the next TLV (normally the terminator) at once. Otherwise read a few pages, so that the next
+     * TLV header can be decoded.
+     *
+     * @return number of pages
+     */
+
+    private int getReadAheadPages() {
+        int bytesPerPage = memoryLayout.getBytesPerPage();
+        if(tlvState == TLV_VALUE) {
+            return (tlvRemaining + 1 + bytesPerPage - 1) / bytesPerPage;
+        }
+        return Math.max(1, Math.min(readerWriter.getMaxPagesPerRead(), HEADER_PAGES));
+    }
+
+    private void track(byte[] buffer, int offset, int length) {
+        int limit = offset + length;
+        while(offset < limit) {
+            switch(tlvState) {
+                case TLV_TYPE : {
+                    int type = buffer[offset] & 0xFF;
+                    if(type == TlvConstants.TERMINATOR_TLV) {
+                        tlvState = TLV_TERMINATED;
+                    } else if(type != TlvConstants.NULL_TLV) {
+                        tlvState = TLV_LENGTH;
+                    }
+                    offset++;
+                    break;
+                }
+                case TLV_LENGTH : {
+                    int size = buffer[offset] & 0xFF;
+                    if(size == 0xFF) {
+                        tlvState = TLV_LENGTH_HIGH;
+                    } else {
+                        tlvRemaining = size;
+                        tlvState = size > 0 ? TLV_VALUE : TLV_TYPE;
+                    }
+                    offset++;
+                    break;
+                }
+                case TLV_LENGTH_HIGH : {
+                    tlvRemaining = (buffer[offset] & 0xFF) << 8;
+                    tlvState = TLV_LENGTH_LOW;
+                    offset++;
+                    break;
+                }
+                case TLV_LENGTH_LOW : {
+                    tlvRemaining |= buffer[offset] & 0xFF;
+                    tlvState = tlvRemaining > 0 ? TLV_VALUE : TLV_TYPE;
+                    offset++;
+                    break;
+                }
+                case TLV_VALUE : {
+                    int skip = Math.min(tlvRemaining, limit - offset);
+                    tlvRemaining -= skip;
+                    if(tlvRemaining == 0) {
+                        tlvState = TLV_TYPE;
+                    }
+                    offset += skip;
+                    break;
+                }
+                default : {
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
 	public int available() throws IOException {
+		if (tlvState == TLV_TERMINATED) {
+			// do not read past the terminator
+			return 0;
+		}
 		if (currentBlock == null) {
 			return memoryLayout.getMaxSize();
 		}
@@ -72,52 +162,24 @@ public class TagInputStream extends InputStream {
 
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException {
-
-        // flush buffered data first
-        if(currentByte < currentBlock.length) {
-            int remainder = currentBlock.length - currentByte;
-
-            int read = Math.min(remainder, length);
-
-            System.arraycopy(currentBlock, currentByte, buffer, offset, read);
-
-            currentByte += read;
-
-            return read;
+        if(length == 0) {
+            return 0;
         }
-
-        int remainigPages = getRemainigPages();
-        if(remainigPages <= 0) {
-            return -1;
+        if (currentBlock == null || currentByte >= currentBlock.length) {
+            if(tlvState == TLV_TERMINATED || getRemainigPages() <= 0) {
+                return -1;
+            }
+            readNextBlock();
         }
-        int readLength = Math.min(length, available());
 
-        int requestedPages = readLength / memoryLayout.getBytesPerPage();
-        if(readLength % memoryLayout.getBytesPerPage() != 0) {
-            requestedPages++;
-        }
+        int read = Math.min(currentBlock.length - currentByte, length);
 
-        int pagesToRead = Math.min(requestedPages, remainigPages);
+        System.arraycopy(currentBlock, currentByte, buffer, offset, read);
+        track(currentBlock, currentByte, read);
 
-        try {
-            //Log.d(TAG, "Read page " + currentPage + "-" + (currentPage + pagesToRead - 1));
-            MfBlock[] mfBlocks = readerWriter.readBlock(currentPage, pagesToRead);
+        currentByte += read;
 
-            currentBlock = new byte[mfBlocks.length * memoryLayout.getBytesPerPage()];
-            for(int i = 0; i < mfBlocks.length; i++) {
-                System.arraycopy(mfBlocks[i].getData(), 0, currentBlock, i * memoryLayout.getBytesPerPage(), memoryLayout.getBytesPerPage());
-            }
-
-            currentByte = 0;
-            currentPage += pagesToRead;
-
-            return read(buffer, offset, length);
-        }
-        catch (IOException e) {
-            throw new NfcException(e);
-        } catch (ReaderException e) {
-            throw new NfcException(e);
-        }
+        return read;
     }
 
     @Override
@@ -129,10 +191,23 @@ public class TagInputStream extends InputStream {
 				return -1;
 		}
 
+		track(currentBlock, currentByte, 1);
+
 		byte returnByte = currentBlock[currentByte++];
 		return returnByte & 0xFF;
 	}
 
+    private byte[] toBytes(MfBlock[] mfBlocks) {
+        if(mfBlocks.length == 1) {
+            return mfBlocks[0].getData();
+        }
+        byte[] bytes = new byte[mfBlocks.length * memoryLayout.getBytesPerPage()];
+        for(int i = 0; i < mfBlocks.length; i++) {
+            System.arraycopy(mfBlocks[i].getData(), 0, bytes, i * memoryLayout.getBytesPerPage(), memoryLayout.getBytesPerPage());
+        }
+        return bytes;
+    }
+
     public int getRemainigPages() {
         return (memoryLayout.getLastDataPage() - currentPage + 1);
     }
@@ -0,0 +1,88 @@
+package com.github.skjolber.nfc.service;
+
+import com.github.skjolber.nfc.NfcMetrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TapMetricsTest {
+
+    @Test
+    public void histogramPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getMean());
+        assertEquals(100, histogram.getMax());
+
+        // within a factor of two
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 50 && p50 < 100);
+        assertEquals(100, histogram.getPercentile(99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void disabled() {
+        TapMetrics metrics = new TapMetrics();
+
+        metrics.startTap(NfcMetrics.PHASE_POWER);
+        metrics.onApdu(5, 18, 1000);
+        metrics.endTap();
+
+        assertEquals(0, metrics.getTaps());
+        assertEquals(0, metrics.getApdus());
+    }
+
+    @Test
+    public void phases() {
+        TapMetrics metrics = new TapMetrics();
+        metrics.setEnabled(true);
+
+        metrics.startTap(NfcMetrics.PHASE_POWER);
+        metrics.onApdu(5, 18, 1000);
+        metrics.phase(NfcMetrics.PHASE_NDEF);
+        metrics.onApdu(5, 18, 3000);
+        metrics.onApdu(5, 18, 2000);
+        metrics.phase(NfcMetrics.PHASE_BROADCAST);
+        metrics.endTap();
+
+        // not within a tap
+        metrics.onApdu(5, 2, 1000);
+
+        assertEquals(1, metrics.getTaps());
+        assertEquals(4, metrics.getApdus());
+        assertEquals(20, metrics.getBytesSent());
+        assertEquals(56, metrics.getBytesReceived());
+
+        assertEquals(3, metrics.getTapApdus()[NfcMetrics.SUMMARY_MAX]);
+        assertEquals(69, metrics.getTapBytes()[NfcMetrics.SUMMARY_MAX]);
+        assertEquals(3000, metrics.getApduLatency()[NfcMetrics.SUMMARY_MAX]);
+        assertEquals(1750, metrics.getApduLatency()[NfcMetrics.SUMMARY_MEAN]);
+
+        // phases which were not entered are not recorded
+        assertEquals(1, metrics.getPhaseLatency(NfcMetrics.PHASE_POWER)[NfcMetrics.SUMMARY_COUNT]);
+        assertEquals(0, metrics.getPhaseLatency(NfcMetrics.PHASE_IDENTIFY)[NfcMetrics.SUMMARY_COUNT]);
+        assertEquals(1, metrics.getPhaseLatency(NfcMetrics.PHASE_NDEF)[NfcMetrics.SUMMARY_COUNT]);
+
+        long[] tap = metrics.getTapLatency();
+        long phases = 0;
+        for (int phase = 0; phase < NfcMetrics.PHASES; phase++) {
+            phases += metrics.getPhaseLatency(phase)[NfcMetrics.SUMMARY_MAX];
+        }
+        assertEquals(tap[NfcMetrics.SUMMARY_MAX], phases);
+
+        metrics.reset();
+        assertEquals(0, metrics.getTaps());
+        assertEquals(0, metrics.getApdus());
+    }
+}